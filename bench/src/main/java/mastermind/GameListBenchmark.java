@@ -0,0 +1,99 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * GameListBenchmark
+ *
+ * This class measures GameLobbyManager.getGameListJson() with 10 to 10000
+ * games open:
+ *   cached   nothing changed since the last call, the snapshot is reused
+ *   rebuilt  the list is marked changed, so the array is put together
+ *            again from every game's cached JSON
+ *   changed  a player joins and leaves one game first, so that game's
+ *            JSON is written again too
+ */
+
+package mastermind;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameListBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int sessions;
+
+    private GameLobbyManager lobby;
+    private GameSession changing;
+    private ClientHandler joiner;
+
+    @Setup
+    public void setUp() {
+        lobby = new GameLobbyManager();
+        String first = null;
+        for (int i = 0; i < sessions; i++) {
+            String id = lobby.createGame("Game " + i, 2 + i % 3, null);
+            if (first == null) {
+                first = id;
+            }
+        }
+        changing = lobby.getSession(first);
+        ClientTransport discard = new ClientTransport() {
+            @Override
+            public void outboundReady() {
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public void abort() {
+            }
+        };
+        // A player who stays, so the game is not removed when the other
+        // one leaves
+        changing.addPlayer("p1", new ClientHandler(lobby, discard));
+        joiner = new ClientHandler(lobby, discard);
+        lobby.getGameListJson();
+    }
+
+    @TearDown
+    public void tearDown() {
+        lobby.shutdown();
+    }
+
+    @Benchmark
+    public String cached() {
+        return lobby.getGameListJson();
+    }
+
+    @Benchmark
+    public String rebuilt() {
+        lobby.publishGameList();
+        return lobby.getGameListJson();
+    }
+
+    @Benchmark
+    public String changed() {
+        // Joining then leaving marks the game changed twice; the list is
+        // built once, on the read
+        changing.addPlayer("p2", joiner);
+        changing.removePlayer("p2");
+        return lobby.getGameListJson();
+    }
+}
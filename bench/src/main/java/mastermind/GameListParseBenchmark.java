@@ -0,0 +1,52 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * GameListParseBenchmark
+ *
+ * This class measures the client side of the game list: LobbyPanel's
+ * parseGames(), which every GAME_LIST message goes through, on the JSON
+ * the server sends for 10 to 10000 games.
+ */
+
+package mastermind;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GameListParseBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int sessions;
+
+    private String json;
+
+    @Setup
+    public void setUp() {
+        GameLobbyManager lobby = new GameLobbyManager();
+        for (int i = 0; i < sessions; i++) {
+            lobby.createGame("Game " + i, 2 + i % 3, null);
+        }
+        json = lobby.getGameListJson();
+        lobby.shutdown();
+    }
+
+    @Benchmark
+    public List<LobbyPanel.GameInfo> parseGames() {
+        return LobbyPanel.parseGames(json);
+    }
+}
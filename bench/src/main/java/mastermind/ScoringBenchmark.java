@@ -0,0 +1,64 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * ScoringBenchmark
+ *
+ * This class measures GameState.evaluateGuess() against secrets with
+ * different color patterns: all different, one pair, two pairs, three of
+ * a kind and one color. Repeated colors are the case the white-peg count
+ * has to get right, so they are worth timing on their own. evaluate() is
+ * measured too, for the packed path without the int[] result.
+ */
+
+package mastermind;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoringBenchmark {
+    // Guesses scored in turn, from no match to an exact one
+    private static final String[] GUESSES = {"YYOO", "BGRP", "PRGB", "BBGG", "GBPR", "OBBY", "RRRR", "BGRY"};
+
+    @Param({"BGRP", "BBGR", "BBGG", "BBBG", "BBBB"})
+    public String secret;
+
+    private GameState state;
+    private int[] packed;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        state = new GameState(secret);
+        packed = new int[GUESSES.length];
+        for (int i = 0; i < GUESSES.length; i++) {
+            packed[i] = CodeSpace.STANDARD.encode(GUESSES[i]);
+        }
+    }
+
+    @Benchmark
+    public int[] evaluateGuess() {
+        next = (next + 1) & (GUESSES.length - 1);
+        return state.evaluateGuess(GUESSES[next]);
+    }
+
+    @Benchmark
+    public int evaluatePacked() {
+        next = (next + 1) & (GUESSES.length - 1);
+        return state.evaluate(packed[next]);
+    }
+}
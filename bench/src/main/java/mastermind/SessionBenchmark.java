@@ -0,0 +1,107 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * SessionBenchmark
+ *
+ * This class measures GameSession.processGuess() in a game of N players:
+ * the lock, scoring, narrowing the player's candidates and the
+ * GUESS_RESULT, CODES_REMAINING and TURN_UPDATE broadcasts. Each player is
+ * a ClientHandler whose transport throws its queued messages away, so the
+ * cost of encoding and queueing them is counted but no socket is.
+ *
+ * The secret is fixed and no guess matches it, so every game runs to its
+ * guess limit; the game is then set up again, which is counted in the
+ * timings but spread over N * GameConfiguration.guessNumber guesses.
+ */
+
+package mastermind;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionBenchmark {
+    private static final int SECRET = CodeSpace.STANDARD.encode("BGRP");
+    // None of these is BGRP
+    private static final String[] GUESSES = {"YYOO", "BGPR", "GBRY", "RRGG"};
+
+    @Param({"2", "4", "8"})
+    public int players;
+
+    private GameLobbyManager lobby;
+    private ClientHandler[] handlers;
+    private GameSession sesh;
+    private int games;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        lobby = new GameLobbyManager();
+        handlers = new ClientHandler[players];
+        for (int i = 0; i < players; i++) {
+            DiscardTransport transport = new DiscardTransport();
+            handlers[i] = new ClientHandler(lobby, transport);
+            transport.handler = handlers[i];
+        }
+        newGame();
+    }
+
+    @TearDown
+    public void tearDown() {
+        lobby.shutdown();
+    }
+
+    private void newGame() {
+        sesh = new GameSession("g" + ++games, "bench", players, lobby);
+        for (int i = 0; i < players; i++) {
+            sesh.addPlayer("p" + (i + 1), handlers[i]);
+        }
+        sesh.restoreStart(SECRET);
+    }
+
+    @Benchmark
+    public void processGuess() {
+        if (sesh.getFinished()) {
+            newGame();
+        }
+        next = (next + 1) & (GUESSES.length - 1);
+        sesh.processGuess(sesh.getCurrentPlayer(), GUESSES[next]);
+    }
+
+    /**
+     * Drains a handler's queue as soon as anything is put in it
+     */
+    private static class DiscardTransport implements ClientTransport {
+        private final byte[][] batch = new byte[64][];
+        ClientHandler handler;
+
+        @Override
+        public void outboundReady() {
+            while (handler.drainOutbound(batch) > 0) {
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void abort() {
+        }
+    }
+}
@@ -23,6 +23,9 @@ javac -d ../bin ../src/*.java
 
 # Check if compilation was successful
 if [ $? -eq 0 ]; then
+    # Bundle the precomputed feedback table so the server starts without building it
+    echo "Writing feedback table..."
+    java -cp ../bin FeedbackTable ../bin
     echo ""
     echo "✓ Build successful!"
     echo ""
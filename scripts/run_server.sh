@@ -16,15 +16,22 @@ fi
 # Default port
 PORT=8080
 
-# Check for port argument
-if [ $# -eq 1 ]; then
+# Default mode: threads (one thread per client), virtual (one virtual thread
+# per client, Java 21+) or nio (selector reactors)
+MODE=threads
+
+# Check for port and mode arguments
+if [ $# -ge 1 ]; then
     PORT=$1
 fi
+if [ $# -ge 2 ]; then
+    MODE=$2
+fi
 
-echo "Starting server on port $PORT..."
+echo "Starting server on port $PORT ($MODE mode)..."
 echo "Press Ctrl+C to stop the server"
 echo ""
 
 # Run the server
 cd ../bin
-java MastermindServer $PORT
+java MastermindServer $PORT $MODE
@@ -0,0 +1,43 @@
+#!/bin/bash
+# ECE422C - Mastermind Multiplayer Lab - Bot Swarm Launch Script
+
+echo "========================================="
+echo "   Mastermind Bot Swarm"
+echo "========================================="
+echo ""
+
+# Check if bin directory exists
+if [ ! -d "../bin" ]; then
+    echo "Error: ../bin directory not found."
+    echo "Please run ./build.sh first."
+    exit 1
+fi
+
+# Defaults: a server on this machine, 100 bots for 30 seconds
+HOST=localhost
+PORT=8080
+BOTS=100
+SECONDS_TO_RUN=30
+
+if [ $# -ge 1 ]; then
+    HOST=$1
+fi
+if [ $# -ge 2 ]; then
+    PORT=$2
+fi
+if [ $# -ge 3 ]; then
+    BOTS=$3
+fi
+if [ $# -ge 4 ]; then
+    SECONDS_TO_RUN=$4
+fi
+
+# Each bot holds a socket open
+ulimit -n $((BOTS + 1024)) 2>/dev/null
+
+echo "Running $BOTS bots against $HOST:$PORT for $SECONDS_TO_RUN seconds..."
+echo "Set options with JAVA_OPTS, e.g. JAVA_OPTS=-Dmastermind.swarm.thinkMs=100"
+echo ""
+
+cd ../bin
+java $JAVA_OPTS BotSwarm $HOST $PORT $BOTS $SECONDS_TO_RUN
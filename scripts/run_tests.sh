@@ -16,7 +16,7 @@ fi
 # Compile test files if needed
 echo "Compiling test files..."
 #javac -d ../bin -cp ../bin test/*.java
-javac -d ../bin -cp ../bin ../test/GameStateTest.java
+javac -d ../bin -cp ../bin ../test/GameStateTest.java ../test/KnuthSolverTest.java ../test/ProtocolTest.java ../test/SessionMailboxTest.java ../test/PersistenceTest.java ../test/MetricsTest.java
 
 if [ $? -ne 0 ]; then
     echo ""
@@ -30,6 +30,36 @@ echo ""
 
 # Run the tests
 cd ../bin
-java GameStateTest
+java GameStateTest || exit 1
+
+echo ""
+echo "Running KnuthSolver tests..."
+echo ""
+
+java KnuthSolverTest || exit 1
+
+echo ""
+echo "Running Protocol tests..."
+echo ""
+
+java ProtocolTest || exit 1
+
+echo ""
+echo "Running SessionMailbox tests..."
+echo ""
+
+java SessionMailboxTest || exit 1
+
+echo ""
+echo "Running Persistence tests..."
+echo ""
+
+java PersistenceTest || exit 1
+
+echo ""
+echo "Running Metrics tests..."
+echo ""
+
+java MetricsTest
 
 exit $?
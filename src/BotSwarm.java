@@ -0,0 +1,711 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * BotSwarm
+ *
+ * This class is a load generator: thousands of headless bots that play on
+ * a running MastermindServer over real sockets, to find the connection and
+ * message rates where it starts to slow down.
+ *
+ * Each bot does what a player in MastermindApp does: HELLO and CONNECT,
+ * then CREATE_GAME and JOIN_GAME (one bot in every `players` opens games,
+ * the others JOIN_GAME on their seats), plays its turns, chats now and
+ * then, and leaves when the game is over, sometimes before. Some bots
+ * also disconnect after a game and come back as a new connection.
+ * Messages go out as text lines or, after HELLO:2, as binary frames,
+ * through the same WireProtocol conversions MastermindClient uses.
+ *
+ * It records, end to end as the bot sees them:
+ *   connect  socket opened to CONNECTED
+ *   result   GUESS sent to its GUESS_RESULT
+ *   turn     GUESS sent to the TURN_UPDATE that follows it
+ *   chat     CHAT sent to the bot's own CHAT_MESSAGE
+ *   lag      how late the bots' own timers fire
+ * and prints throughput and percentiles every few seconds and at the end.
+ * A growing lag means the swarm itself is saturated and the other numbers
+ * measure it, not the server; add threads or a second machine.
+ *
+ * The bots are driven by a few selector threads, so a swarm costs little
+ * more than its sockets. Large swarms need a raised open-file limit
+ * (ulimit -n) on both sides, e.g.
+ *
+ *   java MastermindServer 8080 nio
+ *   java -Dmastermind.swarm.thinkMs=100 BotSwarm localhost 8080 5000 60
+ *
+ * Arguments: host, port, bots, seconds
+ * Options (-Dmastermind.swarm.NAME):
+ *   players     players per game (default 2)
+ *   thinkMs     mean pause before each guess and between games (default 500)
+ *   strategy    random or solver, Knuth's minimax on the results so far
+ *               (default random)
+ *   chatPerMin  chat messages per bot per minute in a game (default 2)
+ *   leaveChance chance a bot leaves a game before it ends (default 0.05)
+ *   churn       chance a bot disconnects and reconnects after a game
+ *               (default 0.1)
+ *   protocol    HELLO version, 1 for text or 2 for binary (default 2)
+ *   threads     selector threads (default half the processors, up to 4)
+ *   rampPerSec  new connections per second at the start (default 500)
+ *   reportMs    progress line interval (default 5000)
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class BotSwarm {
+    private static final int PLAYERS = Integer.getInteger("mastermind.swarm.players", 2);
+    private static final long THINK_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("mastermind.swarm.thinkMs", 500));
+    private static final boolean SOLVER = "solver".equals(System.getProperty("mastermind.swarm.strategy", "random"));
+    private static final double CHAT_PER_MIN = Double.parseDouble(System.getProperty("mastermind.swarm.chatPerMin", "2"));
+    private static final double LEAVE_CHANCE = Double.parseDouble(System.getProperty("mastermind.swarm.leaveChance", "0.05"));
+    private static final double CHURN = Double.parseDouble(System.getProperty("mastermind.swarm.churn", "0.1"));
+    private static final int PROTOCOL = Integer.getInteger("mastermind.swarm.protocol", WireProtocol.VERSION);
+    private static final int THREADS = Integer.getInteger("mastermind.swarm.threads",
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+    private static final int RAMP_PER_SEC = Integer.getInteger("mastermind.swarm.rampPerSec", 500);
+    private static final long REPORT_MS = Long.getLong("mastermind.swarm.reportMs", 5000);
+    // A bot gives up on a game that has not filled or moved for this long
+    private static final long STALL_NANOS = TimeUnit.SECONDS.toNanos(15);
+    // Wait before trying again after a refused or dropped connection
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private static final CodeSpace SPACE = CodeSpace.STANDARD;
+    private static final CodeScorer SCORER = CodeScorer.forSpace(SPACE);
+
+    // Games opened by a bot that still need players, one entry per seat
+    private static final ConcurrentLinkedQueue<String> OPEN_SEATS = new ConcurrentLinkedQueue<>();
+
+    // Whole-run latencies in nanoseconds
+    private static final LatencyHistogram connectLatency = new LatencyHistogram();
+    private static final LatencyHistogram resultLatency = new LatencyHistogram();
+    private static final LatencyHistogram turnLatency = new LatencyHistogram();
+    private static final LatencyHistogram chatLatency = new LatencyHistogram();
+    private static final LatencyHistogram timerLag = new LatencyHistogram();
+    // The same for the current progress line, replaced after each one
+    private static volatile LatencyHistogram intervalResult = new LatencyHistogram();
+    private static volatile LatencyHistogram intervalTurn = new LatencyHistogram();
+    private static volatile LatencyHistogram intervalLag = new LatencyHistogram();
+
+    private static final LongAdder connected = new LongAdder();
+    private static final LongAdder guesses = new LongAdder();
+    private static final LongAdder chats = new LongAdder();
+    private static final LongAdder gamesStarted = new LongAdder();
+    private static final LongAdder gamesFinished = new LongAdder();
+    private static final LongAdder gamesLeft = new LongAdder();
+    private static final LongAdder stalls = new LongAdder();
+    private static final LongAdder errors = new LongAdder();
+    private static final LongAdder dropped = new LongAdder();
+    private static final LongAdder refused = new LongAdder();
+    private static final LongAdder messagesIn = new LongAdder();
+    private static final LongAdder messagesOut = new LongAdder();
+    private static final LongAdder bytesIn = new LongAdder();
+    private static final LongAdder bytesOut = new LongAdder();
+
+    private static InetSocketAddress address;
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int bots = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        address = new InetSocketAddress(host, port);
+
+        System.out.println("BotSwarm: " + bots + " bots on " + host + ":" + port + " for " + seconds + " s, "
+                + PLAYERS + " players per game, " + (SOLVER ? "solver" : "random") + " guesses, protocol "
+                + PROTOCOL + ", " + THREADS + " threads");
+        long start = System.nanoTime();
+        List<Driver> drivers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            drivers.add(new Driver(t));
+        }
+        for (int i = 0; i < bots; i++) {
+            // Connections start RAMP_PER_SEC a second, spread over the drivers
+            long due = start + i * 1_000_000_000L / Math.max(1, RAMP_PER_SEC);
+            drivers.get(i % THREADS).bots.add(new Bot(i, due));
+        }
+        for (Driver driver : drivers) {
+            driver.start();
+        }
+
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long[] last = counters();
+        long lastTime = start;
+        while (System.nanoTime() < end) {
+            Thread.sleep(Math.max(1, Math.min(REPORT_MS, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()))));
+            long now = System.nanoTime();
+            long[] current = counters();
+            LatencyHistogram result = intervalResult;
+            LatencyHistogram turn = intervalTurn;
+            LatencyHistogram lag = intervalLag;
+            intervalResult = new LatencyHistogram();
+            intervalTurn = new LatencyHistogram();
+            intervalLag = new LatencyHistogram();
+            double elapsed = (now - lastTime) / 1e9;
+            System.out.printf("%5ds bots=%d guesses/s=%.0f msgsIn/s=%.0f msgsOut/s=%.0f"
+                            + " result us p50=%d p99=%d turn us p99=%d lag us p99=%d errors=%d dropped=%d%n",
+                    TimeUnit.NANOSECONDS.toSeconds(now - start), connected.sum(),
+                    (current[0] - last[0]) / elapsed, (current[1] - last[1]) / elapsed,
+                    (current[2] - last[2]) / elapsed, result.getPercentile(50) / 1000,
+                    result.getPercentile(99) / 1000, turn.getPercentile(99) / 1000, lag.getPercentile(99) / 1000,
+                    errors.sum(), dropped.sum());
+            last = current;
+            lastTime = now;
+        }
+
+        for (Driver driver : drivers) {
+            driver.running = false;
+            driver.selector.wakeup();
+        }
+        for (Driver driver : drivers) {
+            driver.join(5000);
+        }
+        report(System.nanoTime() - start);
+    }
+
+    private static long[] counters() {
+        return new long[]{guesses.sum(), messagesIn.sum(), messagesOut.sum()};
+    }
+
+    private static void report(long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.println();
+        System.out.printf("run %.1f s: %d guesses (%.0f/s), %d messages in (%.0f/s), %d out (%.0f/s)%n", seconds,
+                guesses.sum(), guesses.sum() / seconds, messagesIn.sum(), messagesIn.sum() / seconds,
+                messagesOut.sum(), messagesOut.sum() / seconds);
+        System.out.printf("bytes in %d, out %d; games started %d, finished %d; left early %d, stalled %d%n",
+                bytesIn.sum(), bytesOut.sum(), gamesStarted.sum(), gamesFinished.sum(), gamesLeft.sum(),
+                stalls.sum());
+        System.out.println("chats " + chats.sum() + ", errors " + errors.sum() + ", dropped connections "
+                + dropped.sum() + ", refused connects " + refused.sum());
+        System.out.println("connect us " + connectLatency.format(1000));
+        System.out.println("result  us " + resultLatency.format(1000));
+        System.out.println("turn    us " + turnLatency.format(1000));
+        System.out.println("chat    us " + chatLatency.format(1000));
+        System.out.println("lag     us " + timerLag.format(1000));
+    }
+
+    /**
+     * One selector thread and the bots it drives
+     */
+    private static class Driver extends Thread {
+        final Selector selector;
+        final List<Bot> bots = new ArrayList<>();
+        final SplittableRandom random;
+        // Not thread safe, so one per driver
+        final KnuthSolver solver = SOLVER ? new KnuthSolver(SPACE) : null;
+        volatile boolean running = true;
+
+        Driver(int index) throws IOException {
+            super("BotSwarm-" + index);
+            this.selector = Selector.open();
+            this.random = new SplittableRandom(index);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(5);
+                    long now = System.nanoTime();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        ((Bot) key.attachment()).ready(this, key, now);
+                    }
+                    now = System.nanoTime();
+                    for (Bot bot : bots) {
+                        bot.tick(this, now);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println(getName() + " stopped: " + e.getMessage());
+            } finally {
+                for (Bot bot : bots) {
+                    bot.close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        /**
+         * @return A pause averaging mean nanoseconds, exponentially
+         *         distributed like independent arrivals
+         */
+        long pause(double mean) {
+            return (long) (-Math.log(1 - random.nextDouble()) * mean);
+        }
+    }
+
+    private enum State {
+        OFFLINE, HELLO, CONNECTING, LOBBY, CREATING, JOINING, WAITING, PLAYING
+    }
+
+    /**
+     * One bot and its connection
+     */
+    private static class Bot {
+        final int id;
+        final String name;
+        State state = State.OFFLINE;
+        SocketChannel channel;
+        SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        ByteBuffer out = ByteBuffer.allocate(256);
+        boolean binary;
+        // Bytes of a line or frame too long for the buffer, still to skip;
+        // -1 skips up to the next newline
+        long skipping;
+        // The last frame was TEXT_MORE, so the next one is the rest of a long
+        // line. Only game lists get that long, and bots ignore them.
+        boolean continued;
+
+        // Next scheduled action (connect, create or join, guess), chat and
+        // stall check, or Long.MAX_VALUE
+        long due;
+        long chatDue = Long.MAX_VALUE;
+        long deadline = Long.MAX_VALUE;
+
+        long connectStarted;
+        String playerId;
+        String gameId;
+        int gamesCreated;
+        // One bot in PLAYERS opens games, the others take their seats
+        final boolean creator;
+        boolean myTurn;
+        int guessCount;
+        int leaveAfter;
+        int lastGuess;
+        CandidateSet candidates;
+        // When the GUESS waiting for its result and turn update went out, or 0
+        long guessSent;
+        boolean resultSeen;
+        final ArrayDeque<Long> chatsSent = new ArrayDeque<>();
+
+        Bot(int id, long due) {
+            this.id = id;
+            this.name = "bot" + id;
+            this.creator = id % PLAYERS == 0;
+            this.due = due;
+        }
+
+        /**
+         * Runs whatever is scheduled for now
+         */
+        void tick(Driver driver, long now) {
+            if (now >= deadline) {
+                stalls.increment();
+                leaveGame(driver, now);
+            }
+            if (now >= chatDue) {
+                chat(driver, now);
+            }
+            if (now >= due) {
+                timerLag.record(now - due);
+                intervalLag.record(now - due);
+                due = Long.MAX_VALUE;
+                act(driver, now);
+            }
+        }
+
+        private void act(Driver driver, long now) {
+            switch (state) {
+                case OFFLINE:
+                    open(driver, now);
+                    break;
+                case LOBBY:
+                    if (creator) {
+                        deadline = now + STALL_NANOS;
+                        state = State.CREATING;
+                        send("CREATE_GAME:" + name + "-" + ++gamesCreated + ":" + PLAYERS);
+                        break;
+                    }
+                    String seat = OPEN_SEATS.poll();
+                    if (seat != null) {
+                        deadline = now + STALL_NANOS;
+                        state = State.JOINING;
+                        send("JOIN_GAME:" + seat);
+                    } else {
+                        // Look again in a moment
+                        due = now + driver.pause(THINK_NANOS);
+                    }
+                    break;
+                case PLAYING:
+                    if (myTurn) {
+                        guess(driver, now);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void open(Driver driver, long now) {
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                boolean done = channel.connect(address);
+                key = channel.register(driver.selector, done ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+                connectStarted = now;
+                in.clear();
+                out.clear();
+                binary = false;
+                skipping = 0;
+                continued = false;
+                state = State.HELLO;
+                send("HELLO:" + PROTOCOL + ":lobby-delta");
+            } catch (IOException e) {
+                refused.increment();
+                drop(now);
+            }
+        }
+
+        private void guess(Driver driver, long now) {
+            if (guessCount >= leaveAfter) {
+                gamesLeft.increment();
+                leaveGame(driver, now);
+                return;
+            }
+            lastGuess = SOLVER ? driver.solver.nextGuess(candidates) : driver.random.nextInt(SPACE.size());
+            myTurn = false;
+            guessCount++;
+            guessSent = now;
+            resultSeen = false;
+            guesses.increment();
+            send("GUESS:" + gameId + ":" + SPACE.decode(lastGuess));
+        }
+
+        private void chat(Driver driver, long now) {
+            chatDue = now + driver.pause(60e9 / CHAT_PER_MIN);
+            chatsSent.addLast(now);
+            chats.increment();
+            send("CHAT:" + gameId + ":hello from " + name);
+        }
+
+        /**
+         * Leaves the current game, and sometimes the server too
+         */
+        private void leaveGame(Driver driver, long now) {
+            if (gameId != null) {
+                send("LEAVE_GAME:" + gameId);
+            }
+            gameId = null;
+            guessSent = 0;
+            myTurn = false;
+            chatsSent.clear();
+            chatDue = Long.MAX_VALUE;
+            deadline = Long.MAX_VALUE;
+            if (driver.random.nextDouble() < CHURN) {
+                close();
+                state = State.OFFLINE;
+            } else {
+                state = State.LOBBY;
+            }
+            due = now + driver.pause(THINK_NANOS);
+        }
+
+        /**
+         * Handles the selector saying the socket can connect, read or write
+         */
+        void ready(Driver driver, SelectionKey key, long now) {
+            try {
+                if (key.isValid() && key.isConnectable() && channel.finishConnect()) {
+                    interest();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read(driver, now);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    flush();
+                }
+            } catch (IOException e) {
+                if (state == State.HELLO) {
+                    refused.increment();
+                } else {
+                    dropped.increment();
+                }
+                drop(now);
+            }
+        }
+
+        private void read(Driver driver, long now) throws IOException {
+            int n = channel.read(in);
+            if (n < 0) {
+                throw new IOException("closed by server");
+            }
+            bytesIn.add(n);
+            in.flip();
+            byte[] buf = in.array();
+            int pos = 0;
+            int limit = in.limit();
+            while (pos < limit && channel != null) {
+                if (skipping > 0) {
+                    int skip = (int) Math.min(skipping, limit - pos);
+                    skipping -= skip;
+                    pos += skip;
+                } else if (skipping < 0) {
+                    int newline = indexOf(buf, pos, limit);
+                    pos = newline < 0 ? limit : newline + 1;
+                    skipping = newline < 0 ? -1 : 0;
+                } else if (binary) {
+                    long frame = WireProtocol.header(buf, pos, limit);
+                    if (frame < 0) {
+                        break;
+                    }
+                    int body = pos + (int) (frame >>> 32);
+                    int length = (int) frame;
+                    if (body + length > limit) {
+                        // Waits for the opcode, so the skipped frame's is known
+                        if (body + length - pos > buf.length && body < limit) {
+                            continued = buf[body] == WireProtocol.TEXT_MORE;
+                            skipping = body + length - limit;
+                            pos = limit;
+                        }
+                        break;
+                    }
+                    String message = continued || buf[body] == WireProtocol.TEXT_MORE ? null
+                            : WireProtocol.decodeServerFrame(buf, body, length);
+                    continued = buf[body] == WireProtocol.TEXT_MORE;
+                    pos = body + length;
+                    if (message != null) {
+                        handle(driver, message, now);
+                    }
+                } else {
+                    int newline = indexOf(buf, pos, limit);
+                    if (newline < 0) {
+                        if (pos == 0 && limit == buf.length) {
+                            // A line longer than the buffer, nothing the bot reads
+                            skipping = -1;
+                            pos = limit;
+                        }
+                        break;
+                    }
+                    int end = newline > pos && buf[newline - 1] == '\r' ? newline - 1 : newline;
+                    String message = new String(buf, pos, end - pos, StandardCharsets.UTF_8);
+                    pos = newline + 1;
+                    handle(driver, message, now);
+                }
+            }
+            if (channel == null) {
+                return;
+            }
+            in.position(pos);
+            in.compact();
+        }
+
+        private static int indexOf(byte[] buf, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (buf[i] == '\n') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Reacts to one server message, in version 1 text form
+         */
+        private void handle(Driver driver, String message, long now) {
+            messagesIn.increment();
+            int colon = message.indexOf(':');
+            String command = colon < 0 ? message : message.substring(0, colon);
+            switch (command) {
+                case "GAME_LIST":
+                case "GAME_SNAPSHOT":
+                case "GAME_ADDED":
+                case "GAME_UPDATED":
+                case "GAME_REMOVED":
+                    // Lobby updates, often long and never needed here
+                    return;
+                default:
+                    break;
+            }
+            String[] parts = message.split(":", -1);
+            switch (command) {
+                case "HELLO":
+                    for (String part : parts) {
+                        if (part.equals(WireProtocol.BINARY_FEATURE)) {
+                            binary = true;
+                        }
+                    }
+                    state = State.CONNECTING;
+                    send("CONNECT:" + name);
+                    break;
+                case "CONNECTED":
+                    playerId = parts[1];
+                    connectLatency.record(now - connectStarted);
+                    connected.increment();
+                    state = State.LOBBY;
+                    due = now + driver.pause(THINK_NANOS);
+                    break;
+                case "GAME_CREATED":
+                    for (int i = 1; i < PLAYERS; i++) {
+                        OPEN_SEATS.add(parts[1]);
+                    }
+                    state = State.JOINING;
+                    send("JOIN_GAME:" + parts[1]);
+                    break;
+                case "GAME_JOINED":
+                    gameId = parts[1];
+                    state = State.WAITING;
+                    myTurn = false;
+                    guessCount = 0;
+                    leaveAfter = driver.random.nextDouble() < LEAVE_CHANCE
+                            ? 1 + driver.random.nextInt(GameConfiguration.guessNumber) : Integer.MAX_VALUE;
+                    candidates = SOLVER ? CandidateSet.all(SPACE) : null;
+                    deadline = now + STALL_NANOS;
+                    chatDue = CHAT_PER_MIN > 0 ? now + driver.pause(60e9 / CHAT_PER_MIN) : Long.MAX_VALUE;
+                    break;
+                case "GAME_STARTED":
+                    if (parts[1].equals(gameId)) {
+                        state = State.PLAYING;
+                        deadline = now + STALL_NANOS;
+                        if (creator) {
+                            gamesStarted.increment();
+                        }
+                    }
+                    break;
+                case "GUESS_RESULT":
+                    if (parts[1].equals(gameId)) {
+                        deadline = now + STALL_NANOS;
+                        if (guessSent != 0 && !resultSeen) {
+                            resultSeen = true;
+                            long latency = now - guessSent;
+                            resultLatency.record(latency);
+                            intervalResult.record(latency);
+                            if (candidates != null) {
+                                int black = Integer.parseInt(parts[parts.length - 2]);
+                                int white = Integer.parseInt(parts[parts.length - 1]);
+                                candidates.retain(SCORER, lastGuess, CodeSpace.packScore(black, white));
+                            }
+                        }
+                    }
+                    break;
+                case "TURN_UPDATE":
+                    if (parts[1].equals(gameId)) {
+                        deadline = now + STALL_NANOS;
+                        state = State.PLAYING;
+                        if (guessSent != 0) {
+                            long latency = now - guessSent;
+                            turnLatency.record(latency);
+                            intervalTurn.record(latency);
+                            guessSent = 0;
+                        }
+                        if (parts[2].equals(playerId) && !myTurn) {
+                            myTurn = true;
+                            due = now + driver.pause(THINK_NANOS);
+                        }
+                    }
+                    break;
+                case "GAME_WON":
+                case "GAME_OVER":
+                    if (parts[1].equals(gameId)) {
+                        if (creator) {
+                            gamesFinished.increment();
+                        }
+                        leaveGame(driver, now);
+                    }
+                    break;
+                case "CHAT_MESSAGE":
+                    if (parts[1].equals(gameId) && parts[2].equals(name) && !chatsSent.isEmpty()) {
+                        chatLatency.record(now - chatsSent.removeFirst());
+                    }
+                    break;
+                case "ERROR":
+                    errors.increment();
+                    if (state == State.CREATING || state == State.JOINING) {
+                        deadline = Long.MAX_VALUE;
+                        // The game filled up or went away; try another
+                        state = State.LOBBY;
+                        due = now + driver.pause(THINK_NANOS);
+                    } else if (guessSent != 0 && !resultSeen) {
+                        guessSent = 0;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void send(String message) {
+            if (channel == null) {
+                return;
+            }
+            byte[] bytes = binary ? WireProtocol.encodeClientMessage(message)
+                    : (message + "\n").getBytes(StandardCharsets.UTF_8);
+            if (out.remaining() < bytes.length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes.length));
+                out.flip();
+                bigger.put(out);
+                out = bigger;
+            }
+            out.put(bytes);
+            messagesOut.increment();
+            try {
+                if (channel.isConnected()) {
+                    flush();
+                }
+            } catch (IOException e) {
+                dropped.increment();
+                drop(System.nanoTime());
+            }
+        }
+
+        private void flush() throws IOException {
+            out.flip();
+            bytesOut.add(channel.write(out));
+            out.compact();
+            interest();
+        }
+
+        private void interest() {
+            key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        /**
+         * Forgets a broken connection and reconnects after a pause
+         */
+        private void drop(long now) {
+            close();
+            gameId = null;
+            guessSent = 0;
+            myTurn = false;
+            chatsSent.clear();
+            chatDue = Long.MAX_VALUE;
+            deadline = Long.MAX_VALUE;
+            state = State.OFFLINE;
+            due = now + RETRY_NANOS;
+        }
+
+        void close() {
+            if (channel == null) {
+                return;
+            }
+            if (state.compareTo(State.LOBBY) >= 0) {
+                connected.decrement();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            channel = null;
+            key = null;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * CandidateSet
+ *
+ * This class is a bitset of packed codes that are still possible.
+ * Bit i is set when code i (see CodeSpace) is consistent with every
+ * guess result seen so far. The number of set bits is kept up to date
+ * so count() is O(1).
+ */
+
+import java.util.Arrays;
+
+public final class CandidateSet {
+    private final CodeSpace space;
+    private final long[] words;
+    private int count;
+
+    private CandidateSet(CodeSpace space, long[] words, int count) {
+        this.space = space;
+        this.words = words;
+        this.count = count;
+    }
+
+    /**
+     * Creates a set holding every code in the space
+     *
+     * @param space The code space
+     * @return A full candidate set
+     */
+    public static CandidateSet all(CodeSpace space) {
+        int size = space.size();
+        long[] words = new long[(size + 63) >>> 6];
+        Arrays.fill(words, -1L);
+        int tail = size & 63;
+        if (tail != 0) {
+            words[words.length - 1] = (1L << tail) - 1;
+        }
+        return new CandidateSet(space, words, size);
+    }
+
+    /**
+     * @return An independent copy of this set
+     */
+    public CandidateSet copy() {
+        return new CandidateSet(space, words.clone(), count);
+    }
+
+    /**
+     * Removes every code that would not have produced the given score
+     *
+     * @param scorer Scores pairs of codes from this set's space
+     * @param guess  Packed guess that was played
+     * @param score  Packed score it received
+     * @return Number of codes still possible
+     */
+    public int retain(CodeScorer scorer, int guess, int score) {
+        if (scorer instanceof FeedbackTable) {
+            return retain((FeedbackTable) scorer, guess, score);
+        }
+        int remaining = 0;
+        for (int w = 0; w < words.length; w++) {
+            long word = words[w];
+            long kept = word;
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                if (scorer.score((w << 6) + bit, guess) != score) {
+                    kept &= ~(1L << bit);
+                }
+            }
+            words[w] = kept;
+            remaining += Long.bitCount(kept);
+        }
+        count = remaining;
+        return remaining;
+    }
+
+    /**
+     * Same as retain(CodeScorer, ...) but in one pass over the guess's table
+     * row: each word is ANDed with the table's match mask, no per-code branch
+     */
+    private int retain(FeedbackTable table, int guess, int score) {
+        int remaining = 0;
+        for (int w = 0; w < words.length; w++) {
+            long kept = words[w];
+            if (kept != 0) {
+                kept &= table.matchMask(guess, score, w << 6);
+                words[w] = kept;
+                remaining += Long.bitCount(kept);
+            }
+        }
+        count = remaining;
+        return remaining;
+    }
+
+    /**
+     * @param code Packed code
+     * @return true if the code is still possible
+     */
+    public boolean contains(int code) {
+        return (words[code >>> 6] & (1L << code)) != 0;
+    }
+
+    /**
+     * Finds the next candidate at or after a code, for iterating:
+     * for (int c = set.next(0); c >= 0; c = set.next(c + 1))
+     *
+     * @param from Packed code to start at
+     * @return The next candidate, or -1 if there is none
+     */
+    public int next(int from) {
+        int w = from >>> 6;
+        if (w >= words.length) {
+            return -1;
+        }
+        long word = words[w] & (-1L << from);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    /**
+     * Copies the candidates into an int array, smallest code first
+     *
+     * @param into Destination, must hold at least count() entries
+     * @return Number of codes written
+     */
+    public int toArray(int[] into) {
+        int n = 0;
+        for (int c = next(0); c >= 0; c = next(c + 1)) {
+            into[n++] = c;
+        }
+        return n;
+    }
+
+    /**
+     * Appends this set to a frame in whichever form is shorter: a u8 0 for
+     * every code, 1 with a varint count and the codes as varints, or 2 with
+     * the raw bit words
+     */
+    void writeTo(WireProtocol.Writer out) {
+        if (count == space.size()) {
+            out.u8(0);
+        } else if (count * 2 < words.length * 8) {
+            out.u8(1).varint(count);
+            for (int c = next(0); c >= 0; c = next(c + 1)) {
+                out.varint(c);
+            }
+        } else {
+            out.u8(2);
+            for (long word : words) {
+                out.i64(word);
+            }
+        }
+    }
+
+    /**
+     * Reads a set written by writeTo(). The count is taken from the bits
+     * read, not from the data, so repeated codes cannot make it wrong.
+     *
+     * @throws IllegalArgumentException if the set is malformed
+     */
+    static CandidateSet readFrom(CodeSpace space, WireProtocol.Reader in) {
+        int kind = in.u8();
+        if (kind == 0) {
+            return all(space);
+        }
+        int size = space.size();
+        long[] words = new long[(size + 63) >>> 6];
+        if (kind == 1) {
+            int listed = in.varint();
+            if (listed < 0 || listed > size) {
+                throw new IllegalArgumentException("bad code count " + listed);
+            }
+            for (int i = 0; i < listed; i++) {
+                int code = in.varint();
+                if (code < 0 || code >= size) {
+                    throw new IllegalArgumentException("bad code " + code);
+                }
+                words[code >>> 6] |= 1L << code;
+            }
+        } else if (kind == 2) {
+            for (int w = 0; w < words.length; w++) {
+                words[w] = in.i64();
+            }
+            // Bits past the last code are not codes
+            int tail = size & 63;
+            if (tail != 0) {
+                words[words.length - 1] &= (1L << tail) - 1;
+            }
+        } else {
+            throw new IllegalArgumentException("bad candidate set kind " + kind);
+        }
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return new CandidateSet(space, words, count);
+    }
+
+    /**
+     * @return Number of codes still possible
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return The code space this set covers
+     */
+    public CodeSpace getSpace() {
+        return space;
+    }
+}
@@ -13,21 +13,90 @@
  * ESTIMATED TIME: 3-4 hours
  */
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 
 public class ClientHandler implements Runnable {
+    // Messages written per flush by the thread-mode writer
+    private static final int WRITE_BATCH = 64;
+    private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    // STATS is refused unless the server is started with this set
+    private static final String ADMIN_TOKEN = System.getProperty("mastermind.adminToken");
+
+    // Writers for handlers created without an executor of their own
+    private static final ExecutorService DEFAULT_WRITERS = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ClientWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final Socket socket;
     private final GameLobbyManager lobby;
-    private PrintWriter out;
-    private BufferedReader in;
+    private final ServerMetrics metrics;
+    private final ClientTransport transport;
+    private final Executor writers;
+    private final OutboundQueue outbound = new OutboundQueue();
+    private final AtomicBoolean disconnected = new AtomicBoolean(false);
+    private OutputStream out;
+    private InputStream in;
+    private LineReader reader;
     private String playerId;
     private String playerName;
     private volatile boolean running = true;
+    // Set by HELLO:1:lobby-delta, see LobbyPublisher
+    private volatile boolean lobbyDeltas = false;
+    // Set once HELLO:2 is answered, see WireProtocol
+    private volatile boolean binary = false;
+    // Dropped-update count when this client last got a full lobby state
+    private long lobbyDroppedSeen = 0;
+    // The game this client joined last, so GUESS and CHAT can find it by
+    // comparing bytes instead of building a String key
+    private volatile GameSession currentGame;
 
     public ClientHandler(Socket socket, GameLobbyManager lobby) {
+        this(socket, lobby, DEFAULT_WRITERS);
+    }
+
+    /**
+     * @param socket  The client's socket
+     * @param lobby   The lobby manager
+     * @param writers Runs the task that drains this client's outbound queue
+     */
+    public ClientHandler(Socket socket, GameLobbyManager lobby, Executor writers) {
         this.socket = socket;
         this.lobby = lobby;
+        this.metrics = lobby.getMetrics();
+        this.transport = null;
+        this.writers = writers;
+        metrics.connectionOpened();
+        FlightEvents.connection("connect", null, metrics.getConnections());
+    }
+
+    /**
+     * Creates a handler whose connection is managed elsewhere (NioServer).
+     * Lines are pushed in through handleLine() and replies go out through
+     * the transport, so run() is not used.
+     * 
+     * @param lobby     The lobby manager
+     * @param transport Where this client's outgoing messages are written
+     */
+    public ClientHandler(GameLobbyManager lobby, ClientTransport transport) {
+        this.socket = null;
+        this.lobby = lobby;
+        this.metrics = lobby.getMetrics();
+        this.transport = transport;
+        this.writers = null;
+        metrics.connectionOpened();
+        FlightEvents.connection("connect", null, metrics.getConnections());
     }
 
     @Override
@@ -48,17 +117,19 @@ public class ClientHandler implements Runnable {
      * Initialize the input and output streams for this client connection.
      * 
      * Steps:
-     * 1. Create a PrintWriter from socket.getOutputStream() with auto-flush enabled
-     * 2. Create a BufferedReader from socket.getInputStream() wrapped in
-     * InputStreamReader
+     * 1. Create a BufferedOutputStream from socket.getOutputStream(); it is
+     * only written by the outbound queue's writer (see writeQueued)
+     * 2. Create a LineReader over socket.getInputStream(); lines are parsed
+     * in its buffer without decoding them to Strings
      * 
      * Hint: Use the socket object that was passed in the constructor
      */
     private void setupStreams() throws IOException {
-        // Initialized 'out' as a PrintWriter with auto-flush
-        out = new PrintWriter(socket.getOutputStream(), true);
-        // Initialized 'in' as a BufferedReader
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        // Initialized 'out' as a buffered stream, flushed once per batch
+        out = new BufferedOutputStream(socket.getOutputStream(), WRITE_BUFFER_SIZE);
+        // Initialized 'in' and the reader that frames its lines
+        in = socket.getInputStream();
+        reader = new LineReader(in, READ_BUFFER_SIZE, MAX_LINE_LENGTH);
     }
 
     /**
@@ -74,10 +145,10 @@ public class ClientHandler implements Runnable {
      * 
      * Steps:
      * 1. Loop while 'running' is true
-     * 2. Read a line from 'in' (use readLine())
-     * 3. If line is null, break the loop (client disconnected)
+     * 2. Advance the LineReader to the next line
+     * 3. If there is none, break the loop (client disconnected)
      * 4. Split the message on the first ':' to get command and data
-     * 5. Use a switch statement to route to handler methods
+     * 5. Use a switch statement to route to handler methods (see handleLine)
      * 
      * Commands to handle:
      * - HELLO: handleHello(data)
@@ -89,44 +160,193 @@ public class ClientHandler implements Runnable {
      * - GUESS: handleGuess(data)
      * - CHAT: handleChat(data)
      * - DISCONNECT: break the loop
+     * - RESUME: handleResume(data)
+     * - STATS: handleStats(data)
      */
     private void handleClientMessages() throws IOException {
         while (running) {
-            String str = in.readLine();
-            if (str == null) {
-                break;
-            }
-            String command;
-            String data;
-            if (str.indexOf(':') == -1) {
-                command = str;
-                data = "";
+            if (binary) {
+                if (!reader.nextFrame()) {
+                    break;
+                }
+                handleFrame(reader.buffer(), reader.lineStart(), reader.lineLength());
             } else {
-                command = str.substring(0, str.indexOf(':'));
-                data = str.substring(str.indexOf(':') + 1);
+                if (!reader.next()) {
+                    break;
+                }
+                handleLine(reader.buffer(), reader.lineStart(), reader.lineLength());
             }
-            //If and Else statements so only one runs
-            if ("HELLO".equals(command)) {
-                handleHello(data);
-            } else if ("CONNECT".equals(command)) {
-                handleConnect(data);
-            } else if ("GET_GAMES".equals(command)) {
+        }
+
+    }
+
+    /**
+     * Parses one protocol line and routes it to its handler
+     * 
+     * The line is parsed where it lies: the command token is looked up in
+     * ProtocolCommand's table and handlers get the data as a range of the
+     * same buffer. Strings are only made for rare commands and for names
+     * that have to be stored.
+     * 
+     * @param buf Buffer holding the line, only valid during this call
+     * @param off Start of the line
+     * @param len Length of the line without its terminator
+     */
+    void handleLine(byte[] buf, int off, int len) {
+        metrics.messageIn(len + 1);
+        dispatchLine(buf, off, len);
+    }
+
+    /**
+     * Runs the command on a line, timing its handler
+     */
+    private void dispatchLine(byte[] buf, int off, int len) {
+        int end = off + len;
+        int colon = indexOf(buf, off, end, (byte) ':');
+        int commandEnd = colon < 0 ? end : colon;
+        int data = colon < 0 ? end : colon + 1;
+        ProtocolCommand command = ProtocolCommand.lookup(buf, off, commandEnd - off);
+        if (command == null) {
+            return;
+        }
+        FlightEvents.CommandEvent event = new FlightEvents.CommandEvent();
+        event.begin();
+        long started = System.nanoTime();
+        switch (command) {
+            case HELLO:
+                handleHello(text(buf, data, end));
+                break;
+            case CONNECT:
+                handleConnect(text(buf, data, end));
+                break;
+            case GET_GAMES:
                 handleGetGames();
-            } else if ("CREATE_GAME".equals(command)) {
-                handleCreateGame(data);
-            } else if ("JOIN_GAME".equals(command)) {
-                handleJoinGame(data);
-            } else if ("LEAVE_GAME".equals(command)) {
-                handleLeaveGame(data);
-            } else if ("GUESS".equals(command)) {
-                handleGuess(data);
-            } else if ("CHAT".equals(command)) {
-                handleChat(data);
-            } else if ("DISCONNECT".equals(command)) {
-                running = false;
+                break;
+            case CREATE_GAME:
+                handleCreateGame(text(buf, data, end));
+                break;
+            case JOIN_GAME:
+                handleJoinGame(text(buf, data, end));
+                break;
+            case LEAVE_GAME:
+                handleLeaveGame(text(buf, data, end));
+                break;
+            case GUESS:
+                handleGuess(buf, data, end);
+                break;
+            case CHAT:
+                handleChat(buf, data, end);
+                break;
+            case DISCONNECT:
+                handleDisconnect();
+                break;
+            case RESUME:
+                handleResume(text(buf, data, end));
+                break;
+            case STATS:
+                handleStats(text(buf, data, end));
+                break;
+            default:
+                break;
+        }
+        metrics.commandHandled(command, System.nanoTime() - started);
+        commitCommandEvent(event, command, end - data);
+    }
+
+    /**
+     * Routes one binary frame (protocol version 2) to its handler. The
+     * frame carries the same commands as the text lines, with ids and
+     * guesses already in numeric form.
+     * 
+     * @param buf Buffer holding the frame, only valid during this call
+     * @param off Start of the frame body (the opcode)
+     * @param len Length of the body
+     */
+    void handleFrame(byte[] buf, int off, int len) {
+        metrics.messageIn(len);
+        WireProtocol.Reader r = new WireProtocol.Reader(buf, off + 1, off + len);
+        FlightEvents.CommandEvent event = new FlightEvents.CommandEvent();
+        event.begin();
+        long started = System.nanoTime();
+        try {
+            switch (buf[off]) {
+                case WireProtocol.CONNECT:
+                    handleConnect(r.utf8Rest());
+                    break;
+                case WireProtocol.GET_GAMES:
+                    handleGetGames();
+                    break;
+                case WireProtocol.CREATE_GAME: {
+                    int players = r.u8();
+                    handleCreateGame(r.utf8Rest() + ":" + players);
+                    break;
+                }
+                case WireProtocol.JOIN_GAME:
+                    handleJoinGame(WireProtocol.gameIdString(r.i64()));
+                    break;
+                case WireProtocol.LEAVE_GAME:
+                    handleLeaveGame(WireProtocol.gameIdString(r.i64()));
+                    break;
+                case WireProtocol.GUESS: {
+                    GameSession sesh = findSession(r.i64());
+                    int code = r.varint();
+                    if (sesh != null) {
+                        int guess = code >= 0 && code < CodeSpace.STANDARD.size() ? code : CodeSpace.INVALID;
+                        sesh.execute(() -> sesh.processGuess(playerId, guess));
+                    }
+                    break;
+                }
+                case WireProtocol.CHAT: {
+                    GameSession sesh = findSession(r.i64());
+                    int start = skipSpaces(buf, r.position(), r.end());
+                    int end = trimSpaces(buf, start, r.end());
+                    if (sesh != null && start < end) {
+                        chat(sesh, buf, start, end);
+                    }
+                    break;
+                }
+                case WireProtocol.DISCONNECT:
+                    handleDisconnect();
+                    break;
+                case WireProtocol.TEXT:
+                    // Timed by dispatchLine
+                    dispatchLine(buf, off + 1, len - 1);
+                    break;
+                default:
+                    break;
             }
+            ProtocolCommand command = WireProtocol.command(buf[off]);
+            if (command != null) {
+                metrics.commandHandled(command, System.nanoTime() - started);
+                commitCommandEvent(event, command, len - 1);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Bad frame from " + playerName + ": " + e.getMessage());
+            handleDisconnect();
         }
+    }
 
+    private void commitCommandEvent(FlightEvents.CommandEvent event, ProtocolCommand command, int payloadBytes) {
+        if (event.shouldCommit()) {
+            event.command = command.name();
+            event.payloadBytes = payloadBytes;
+            event.playerId = playerId;
+            event.commit();
+        }
+    }
+
+    private void handleDisconnect() {
+        running = false;
+        if (transport != null) {
+            transport.close();
+        }
+    }
+
+    /**
+     * @return true once this client speaks the binary protocol
+     */
+    boolean isBinary() {
+        return binary;
     }
 
     /**
@@ -135,7 +355,7 @@ public class ClientHandler implements Runnable {
      * Handle the initial connection handshake.
      * 
      * Steps:
-     * 1. Generate a unique player ID (use "p" + System.currentTimeMillis())
+     * 1. Get a unique player ID from the lobby (lobby.newPlayerId())
      * 2. Store the player name from the data parameter
      * 3. Register this client with the lobby manager
      * 4. Send a "CONNECTED:playerId" message back to the client
@@ -148,10 +368,11 @@ public class ClientHandler implements Runnable {
             playerName = "Player";
         }
         //Use this.variable to ensure that the proper thing is being changed
-        this.playerId = "p" + System.currentTimeMillis();
+        this.playerId = lobby.newPlayerId();
         this.playerName = playerName;
         lobby.addPlayer(playerId, playerName, this);
-        sendMessage("CONNECTED:" + playerId);
+        long id = IdAllocator.parsePlayerId(playerId);
+        sendMessage("CONNECTED:" + playerId, () -> WireProtocol.connected(id));
 
     }
 
@@ -165,9 +386,12 @@ public class ClientHandler implements Runnable {
      * 2. Send it to the client with format "GAME_LIST:jsonData"
      */
     private void handleGetGames() {
-        // Getting game list to send to lobby
-        String list = lobby.getGameListJson();
-        sendMessage("GAME_LIST:" + list);
+        if (lobbyDeltas) {
+            lobby.sendGameSnapshot(this);
+            return;
+        }
+        // The cached snapshot already holds the encoded GAME_LIST line
+        sendFrame(lobby.getGameListSnapshot().getGameListLine(), false);
     }
 
     /**
@@ -214,7 +438,8 @@ public class ClientHandler implements Runnable {
                 return;
             }
 
-            sendMessage("GAME_CREATED:" + gID);
+            long id = IdAllocator.parseGameId(gID);
+            sendMessage("GAME_CREATED:" + gID, () -> WireProtocol.gameCreated(id));
         } catch (Exception e) {
             sendMessage("ERROR:Failed to create game");
         }
@@ -257,6 +482,17 @@ public class ClientHandler implements Runnable {
             return;
         }
 
+        GameSession target = lobby.getSession(gameId);
+        if (target == null) {
+            sendMessage("ERROR:Failed to join game");
+            return;
+        }
+        // The rest runs as one command of the game (see SessionMailbox)
+        String id = gameId;
+        target.execute(() -> joinGame(id));
+    }
+
+    private void joinGame(String gameId) {
         boolean check = lobby.joinGame(gameId, playerId);
         if (check == false) {
             sendMessage("ERROR:Failed to join game");
@@ -269,15 +505,76 @@ public class ClientHandler implements Runnable {
             return;
         }
 
+        currentGame = sesh;
         List<String> names = sesh.getPlayerNames();
         sendMessage("GAME_JOINED:" + gameId + ":" + names);
+        // Kept by the client to take the seat back with RESUME after a restart
+        Long token = sesh.getResumeToken(playerId);
+        if (token != null) {
+            sendMessage("RESUME_TOKEN:" + gameId + ":" + Long.toUnsignedString(token));
+        }
         sesh.broadcast("PLAYER_JOINED:" + gameId + ":" + playerName, null);
+        // Only a resumed player joins a game already running
+        String turn = sesh.getCurrentPlayer();
+        if (turn != null) {
+            long game = sesh.getNumericId();
+            long player = IdAllocator.parsePlayerId(turn);
+            sendMessage("TURN_UPDATE:" + gameId + ":" + turn, () -> WireProtocol.turnUpdate(game, player));
+        }
         if (sesh.canStart()) {
             sesh.startGame();
         }
 
     }
 
+    /**
+     * Takes back a seat in a game recovered after a server restart. The
+     * connection continues under the player's old id.
+     * 
+     * Data format: "gameId:playerId:token", the id from before the restart
+     * and the seat's RESUME_TOKEN from when it joined
+     * Replies "RESUMED:gameId:playerId", then the usual GAME_JOINED
+     */
+    private void handleResume(String data) {
+        String[] parts = data == null ? new String[0] : data.split(":");
+        GameSession sesh = parts.length != 3 ? null : lobby.getSession(parts[0].trim());
+        String oldId = sesh == null ? null : parts[1].trim();
+        long token;
+        try {
+            token = sesh == null ? 0 : Long.parseUnsignedLong(parts[2].trim());
+        } catch (NumberFormatException e) {
+            sesh = null;
+            token = 0;
+        }
+        if (playerId == null || sesh == null || !lobby.resumePlayer(playerId, oldId, token, sesh, this)) {
+            sendMessage("ERROR:Failed to resume game");
+            return;
+        }
+        playerId = oldId;
+        String gameId = sesh.getGameId();
+        sendMessage("RESUMED:" + gameId + ":" + playerId);
+        sesh.execute(() -> joinGame(gameId));
+    }
+
+    /**
+     * Sends the server's counters and latencies, one "STATS:" line each,
+     * ending with "STATS:END". Only for clients that give the admin token
+     * (-Dmastermind.adminToken); without one configured STATS is off.
+     * 
+     * Data format: the admin token
+     */
+    private void handleStats(String token) {
+        if (ADMIN_TOKEN == null || token == null || !MessageDigest.isEqual(
+                ADMIN_TOKEN.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8))) {
+            sendMessage("ERROR:Not allowed");
+            return;
+        }
+        for (String line : lobby.getStatsReport()) {
+            sendMessage("STATS:" + line);
+        }
+        sendMessage("STATS:END");
+    }
+
     /**
      * TODO 7: Leave Game Handler (20 minutes)
      * 
@@ -303,8 +600,11 @@ public class ClientHandler implements Runnable {
         if (sesh == null) {
             return;
         }
-        sesh.removePlayer(playerId);
-        sesh.broadcast("PLAYER_LEFT:" + gameId + ":" + playerName, null);
+        if (sesh == currentGame) {
+            currentGame = null;
+        }
+        // Through the lobby so its player-to-game index forgets the game too
+        lobby.leaveGame(playerId, gameId);
     }
 
     /**
@@ -320,25 +620,25 @@ public class ClientHandler implements Runnable {
      * 2. Get the GameSession from the lobby
      * 3. If session exists, call session.processGuess(playerId, guess)
      */
-    private void handleGuess(String data) {
-        if (data == null) {
-            return;
-        }
-        int index = data.indexOf(':');
+    private void handleGuess(byte[] buf, int off, int end) {
+        int index = indexOf(buf, off, end, (byte) ':');
         if (index == -1) {
             return;
         }
-        String gID = data.substring(0, index).trim(); //Trim so there's no blank space
-        String guess = data.substring(index + 1).trim(); //Trim so there's no blank space
-        if (gID.isEmpty() || guess.isEmpty()) {
+        int idStart = skipSpaces(buf, off, index);
+        int idEnd = trimSpaces(buf, idStart, index);
+        int guessStart = skipSpaces(buf, index + 1, end);
+        int guessEnd = trimSpaces(buf, guessStart, end);
+        if (idStart == idEnd || guessStart == guessEnd) {
             return;
         }
 
-        GameSession sesh = lobby.getSession(gID);
+        GameSession sesh = findSession(buf, idStart, idEnd);
         if (sesh == null) {
             return;
         }
-        sesh.processGuess(playerId, guess);
+        int guess = CodeSpace.STANDARD.encode(buf, guessStart, guessEnd - guessStart);
+        sesh.execute(() -> sesh.processGuess(playerId, guess));
     }
 
     /**
@@ -354,35 +654,163 @@ public class ClientHandler implements Runnable {
      * 3. If session exists, broadcast "CHAT_MESSAGE:gameId:playerName:message" to
      * all players
      */
-    private void handleChat(String data) {
-        // TODO: Parse gameId and message
-
-        // TODO: Broadcast chat message to all players in the game
-        if (data == null) {
-            return;
-        }
-        int index = data.indexOf(':');
+    private void handleChat(byte[] buf, int off, int end) {
+        int index = indexOf(buf, off, end, (byte) ':');
         if (index == -1) {
             return;
         }
-        String gID = data.substring(0, index).trim(); //Trim so there's no blank space
-        String message = data.substring(index + 1).trim(); //Trim so there's no blank space
-        if (gID.isEmpty() || message.isEmpty()) {
+        int idStart = skipSpaces(buf, off, index);
+        int idEnd = trimSpaces(buf, idStart, index);
+        int messageStart = skipSpaces(buf, index + 1, end);
+        int messageEnd = trimSpaces(buf, messageStart, end);
+        if (idStart == idEnd || messageStart == messageEnd) {
             return;
         }
 
-        GameSession sesh = lobby.getSession(gID);
+        GameSession sesh = findSession(buf, idStart, idEnd);
         if (sesh == null) { // Null Check Just in Case
             return;
         }
-        sesh.broadcast("CHAT_MESSAGE:" + gID + ":" + playerName + ":" + message, null);
+        chat(sesh, buf, messageStart, messageEnd);
+    }
+
+    /**
+     * Broadcasts the chat message in buf[messageStart, messageEnd)
+     */
+    private void chat(GameSession sesh, byte[] buf, int messageStart, int messageEnd) {
+        // Encode the broadcast once and copy the message bytes straight in
+        byte[] prefix = ("CHAT_MESSAGE:" + sesh.getGameId() + ":" + playerName + ":")
+                .getBytes(StandardCharsets.UTF_8);
+        int messageLength = messageEnd - messageStart;
+        byte[] line = new byte[prefix.length + messageLength + 1];
+        System.arraycopy(prefix, 0, line, 0, prefix.length);
+        System.arraycopy(buf, messageStart, line, prefix.length, messageLength);
+        line[line.length - 1] = '\n';
+        // The frame takes the message from line, buf is reused meanwhile
+        byte[] name = playerName.getBytes(StandardCharsets.UTF_8);
+        long gameId = sesh.getNumericId();
+        EncodedMessage message = EncodedMessage.ofLines(line,
+                () -> WireProtocol.chatMessage(gameId, name, line, prefix.length, messageLength));
+        sesh.execute(() -> sesh.broadcastFrame(message, null));
+    }
+
+    /**
+     * Finds a game by the id in buf[start, end). The game this client is in
+     * is matched byte by byte; any other id is parsed in place and looked up
+     * in the lobby.
+     */
+    private GameSession findSession(byte[] buf, int start, int end) {
+        GameSession sesh = currentGame;
+        if (sesh != null && equalsAscii(sesh.getGameId(), buf, start, end)) {
+            return sesh;
+        }
+        long id = IdAllocator.parseGameId(buf, start, end);
+        return id == IdAllocator.INVALID ? null : lobby.getSession(id);
+    }
+
+    /**
+     * Finds a game by its numeric id, see findSession(byte[], int, int)
+     */
+    private GameSession findSession(long id) {
+        GameSession sesh = currentGame;
+        if (sesh != null && sesh.getNumericId() == id) {
+            return sesh;
+        }
+        return lobby.getSession(id);
+    }
+
+    private static int indexOf(byte[] buf, int from, int end, byte b) {
+        for (int i = from; i < end; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Same characters as String.trim()
+    private static int skipSpaces(byte[] buf, int from, int end) {
+        while (from < end && (buf[from] & 0xFF) <= ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimSpaces(byte[] buf, int start, int end) {
+        while (end > start && (buf[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean equalsAscii(String s, byte[] buf, int start, int end) {
+        if (s.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != buf[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String text(byte[] buf, int start, int end) {
+        return new String(buf, start, end - start, StandardCharsets.UTF_8);
     }
 
     /**
      * Handles the initial HELLO message (version check)
+     * 
+     * Data format: "version[:feature...]". The reply echoes the version and
+     * the features this server accepted.
      */
-    private void handleHello(String version) {
-        sendMessage("HELLO:" + version);
+    private void handleHello(String data) {
+        String[] parts = data.split(":");
+        boolean useBinary = false;
+        try {
+            useBinary = Integer.parseInt(parts[0].trim()) >= WireProtocol.VERSION;
+        } catch (NumberFormatException ignored) {
+        }
+        StringBuilder reply = new StringBuilder("HELLO:");
+        if (useBinary) {
+            reply.append(WireProtocol.VERSION).append(':').append(WireProtocol.BINARY_FEATURE);
+        } else {
+            reply.append(parts[0]);
+        }
+        for (int i = 1; i < parts.length; i++) {
+            if ("lobby-delta".equals(parts[i])) {
+                lobbyDeltas = true;
+                reply.append(":lobby-delta");
+            }
+        }
+        sendMessage(reply.toString());
+        // The answer itself is the last text line
+        binary = useBinary;
+    }
+
+    /**
+     * @return true if this client asked for GAME_ADDED/UPDATED/REMOVED
+     *         instead of full game lists
+     */
+    boolean wantsLobbyDeltas() {
+        return lobbyDeltas;
+    }
+
+    /**
+     * Checks whether lobby updates were dropped for this client since it
+     * last got a full lobby state, and records that it is getting one now.
+     * Only called by the LobbyPublisher, under its lock.
+     * 
+     * @return true if the client's lobby view may be missing changes
+     */
+    boolean takeLobbyResync() {
+        long dropped = outbound.getDropped();
+        if (dropped == lobbyDroppedSeen) {
+            return false;
+        }
+        lobbyDroppedSeen = dropped;
+        return true;
     }
 
     /**
@@ -405,11 +833,7 @@ public class ClientHandler implements Runnable {
 
         // TODO: Close all streams and socket
 
-        running = false;
-        if (playerId != null) { 
-            lobby.removePlayer(playerId);
-
-        }
+        disconnected();
 
         try { //Have to try catch on IO stream just to ensure the program doesn't crash on exit
             if (in != null) {
@@ -431,17 +855,162 @@ public class ClientHandler implements Runnable {
             }
         } catch (IOException ignored) {
         }
+    }
+
+    /**
+     * Takes this client out of the lobby once its connection is gone.
+     * Safe to call more than once; only the first call does anything.
+     */
+    void disconnected() {
+        running = false;
+        if (!disconnected.compareAndSet(false, true)) {
+            return;
+        }
+        metrics.connectionClosed();
+        FlightEvents.connection("disconnect", playerId, metrics.getConnections());
+        if (playerId != null) { 
+            lobby.removePlayer(playerId);
 
+        }
         System.out.println("Client disconnected: " + playerName);
     }
 
     /**
      * Sends a message to this client
+     * 
+     * The message is queued and written by this client's writer, so the
+     * caller never waits on the network.
      */
     public void sendMessage(String message) {
-        if (out != null) {
-            out.println(message);
+        enqueue(binary ? WireProtocol.encodeServerMessage(message) : encode(message), false);
+    }
+
+    /**
+     * Sends a message that has a frame of its own in the binary protocol
+     * 
+     * @param message The version 1 text
+     * @param frame   Builds the same message as a frame, or returns null if
+     *                it does not fit in one (see WireProtocol)
+     */
+    public void sendMessage(String message, Supplier<byte[]> frame) {
+        byte[] encoded = binary ? frame.get() : encode(message);
+        if (encoded == null) {
+            encoded = WireProtocol.encodeServerMessage(message);
         }
+        enqueue(encoded, false);
+    }
+
+    /**
+     * Sends a lobby update (GAME_LIST). If this client is reading too slowly
+     * it may be dropped in favour of a newer one.
+     */
+    public void sendLobbyUpdate(String message) {
+        enqueue(binary ? WireProtocol.encodeServerMessage(message) : encode(message), true);
+    }
+
+    /**
+     * Queues a message shared with other clients, in this client's protocol
+     * 
+     * @param droppable true for lobby updates, see OutboundQueue
+     */
+    void send(EncodedMessage message, boolean droppable) {
+        enqueue(binary ? message.frames() : message.lines(), droppable);
+    }
+
+    /**
+     * Queues an already encoded message. The same frame may be given to many
+     * clients, it is never modified. Binary clients get each line wrapped in
+     * a TEXT frame.
+     * 
+     * @param frame     UTF-8 bytes of the message including the line terminator
+     * @param droppable true for lobby updates, see OutboundQueue
+     */
+    void sendFrame(byte[] frame, boolean droppable) {
+        enqueue(binary ? WireProtocol.framesFromText(frame) : frame, droppable);
+    }
+
+    private void enqueue(byte[] frame, boolean droppable) {
+        if (!running) {
+            return;
+        }
+        metrics.messageOut(frame.length);
+        if (InstrumentedLock.ENABLED) {
+            InstrumentedLock.noteSend(frame.length);
+        }
+        switch (outbound.offer(frame, droppable)) {
+            case WAKE_WRITER:
+                if (transport != null) {
+                    transport.outboundReady();
+                } else {
+                    writers.execute(this::writeQueued);
+                }
+                break;
+            case OVERFLOW:
+                disconnectSlowConsumer();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Lets the NIO reactor drain this client's queue
+     * 
+     * @see OutboundQueue#drainTo(byte[][])
+     */
+    int drainOutbound(byte[][] batch) {
+        return outbound.drainTo(batch);
+    }
+
+    /**
+     * Thread-mode writer: writes queued messages in batches, one flush per
+     * batch, until the queue is empty
+     */
+    private void writeQueued() {
+        byte[][] batch = new byte[WRITE_BATCH][];
+        try {
+            int n;
+            while ((n = outbound.drainTo(batch)) > 0) {
+                for (int i = 0; i < n; i++) {
+                    out.write(batch[i]);
+                    batch[i] = null;
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The reader notices the broken socket and cleans up
+            running = false;
+            outbound.clear();
+            closeSocket();
+        }
+    }
+
+    /**
+     * Drops a client whose outbound queue overflowed so it cannot hold up
+     * the games and lobby broadcasts it is part of
+     */
+    private void disconnectSlowConsumer() {
+        System.err.println("Disconnecting slow client: " + playerName);
+        running = false;
+        outbound.clear();
+        if (transport != null) {
+            transport.abort();
+        } else {
+            closeSocket();
+        }
+    }
+
+    private void closeSocket() {
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static byte[] encode(String message) {
+        return (message + "\n").getBytes(StandardCharsets.UTF_8);
     }
 
      /**
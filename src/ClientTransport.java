@@ -0,0 +1,26 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * ClientTransport
+ *
+ * The network side of a client connection that is not owned by the
+ * ClientHandler itself (see NioServer). Outgoing messages wait in the
+ * handler's OutboundQueue; the transport drains it with
+ * ClientHandler.drainOutbound(). All methods may be called from any thread
+ * and must not block on the network.
+ */
+
+public interface ClientTransport {
+    /**
+     * Called when a message was queued and no writer is draining the queue
+     */
+    void outboundReady();
+
+    /**
+     * Closes the connection once queued messages have been written
+     */
+    void close();
+
+    /**
+     * Closes the connection right away, discarding queued messages
+     */
+    void abort();
+}
@@ -0,0 +1,29 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * CodeScorer
+ *
+ * Scores a pair of packed codes (see CodeSpace). Implemented by CodeSpace,
+ * which computes the score, and FeedbackTable, which looks it up.
+ */
+
+public interface CodeScorer {
+    /**
+     * @param secret Packed secret code
+     * @param guess  Packed guess
+     * @return Packed score, (black << 4) | white
+     */
+    int score(int secret, int guess);
+
+    /**
+     * Picks the fastest scorer for a board: the precomputed FeedbackTable for
+     * the standard board when it is enabled, otherwise the space itself
+     *
+     * @param space The board
+     * @return A scorer for that board
+     */
+    static CodeScorer forSpace(CodeSpace space) {
+        if (space == CodeSpace.STANDARD && FeedbackTable.standard() != null) {
+            return FeedbackTable.standard();
+        }
+        return space;
+    }
+}
@@ -0,0 +1,249 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * CodeSpace
+ *
+ * This class packs Mastermind codes into a single int and scores them
+ * without allocating.
+ *
+ * A code is stored as its index in the code space: each peg is a color
+ * index (0 .. colors-1) and the pegs are read as the digits of a base-colors
+ * number, first peg most significant. For the standard 4-peg / 6-color game
+ * that gives the dense range 0 .. 1295, which doubles as an array index.
+ *
+ * A score is packed as (black << 4) | white.
+ */
+
+public final class CodeSpace implements CodeScorer {
+    // Returned by encode() when a string is not a valid code
+    public static final int INVALID = -1;
+
+    // The board described by GameConfiguration
+    public static final CodeSpace STANDARD =
+            new CodeSpace(GameConfiguration.pegNumber, GameConfiguration.colors);
+
+    private final int pegs;
+    private final int colors;
+    private final int size;
+    private final char[] symbols;
+    private final byte[] symbolIndex = new byte[128];
+
+    /**
+     * Creates a code space using the given color symbols
+     *
+     * @param pegs   Number of pegs per code (1 - 15)
+     * @param colors Color symbols, one character each (1 - 16 colors)
+     */
+    public CodeSpace(int pegs, String[] colors) {
+        this(pegs, toSymbols(colors));
+    }
+
+    /**
+     * Creates a code space with the given number of colors. The first colors
+     * reuse GameConfiguration's letters, any extra ones get spare letters.
+     *
+     * @param pegs       Number of pegs per code (1 - 15)
+     * @param colorCount Number of colors (1 - 16)
+     */
+    public CodeSpace(int pegs, int colorCount) {
+        this(pegs, defaultSymbols(colorCount));
+    }
+
+    private CodeSpace(int pegs, char[] symbols) {
+        // Counts are kept in 4-bit fields of a long while scoring
+        if (pegs < 1 || pegs > 15) {
+            throw new IllegalArgumentException("pegs must be between 1 and 15: " + pegs);
+        }
+        if (symbols.length < 1 || symbols.length > 16) {
+            throw new IllegalArgumentException("colors must be between 1 and 16: " + symbols.length);
+        }
+        long total = 1;
+        for (int i = 0; i < pegs; i++) {
+            total *= symbols.length;
+            if (total > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("code space too large: " + symbols.length + "^" + pegs);
+            }
+        }
+        this.pegs = pegs;
+        this.colors = symbols.length;
+        this.size = (int) total;
+        this.symbols = symbols;
+
+        java.util.Arrays.fill(symbolIndex, (byte) -1);
+        for (int i = 0; i < symbols.length; i++) {
+            char c = symbols[i];
+            if (c >= 128 || symbolIndex[c] != -1) {
+                throw new IllegalArgumentException("bad color symbol: " + c);
+            }
+            symbolIndex[c] = (byte) i;
+        }
+    }
+
+    /**
+     * Scores a guess against a secret
+     *
+     * Exact matches are counted directly. Every other peg bumps a per-color
+     * count for its side, packed 4 bits per color into a long, and the white
+     * pegs are the sum of the smaller count for each color.
+     *
+     * @param secret Packed secret code
+     * @param guess  Packed guess
+     * @return Packed score, see blacks() and whites()
+     */
+    @Override
+    public int score(int secret, int guess) {
+        int black = 0;
+        long secretCounts = 0;
+        long guessCounts = 0;
+
+        for (int i = 0; i < pegs; i++) {
+            int s = secret % colors;
+            int g = guess % colors;
+            secret /= colors;
+            guess /= colors;
+            if (s == g) {
+                black++;
+            } else {
+                secretCounts += 1L << (s << 2);
+                guessCounts += 1L << (g << 2);
+            }
+        }
+
+        int white = 0;
+        while (secretCounts != 0 && guessCounts != 0) {
+            int s = (int) (secretCounts & 0xF);
+            int g = (int) (guessCounts & 0xF);
+            white += Math.min(s, g);
+            secretCounts >>>= 4;
+            guessCounts >>>= 4;
+        }
+        return packScore(black, white);
+    }
+
+    /**
+     * Packs a code string such as "BGRP"
+     *
+     * @param code The code string
+     * @return The packed code, or INVALID if the length or a color is wrong
+     */
+    public int encode(CharSequence code) {
+        if (code == null || code.length() != pegs) {
+            return INVALID;
+        }
+        int packed = 0;
+        for (int i = 0; i < pegs; i++) {
+            char c = code.charAt(i);
+            int index = c < 128 ? symbolIndex[c] : -1;
+            if (index < 0) {
+                return INVALID;
+            }
+            packed = packed * colors + index;
+        }
+        return packed;
+    }
+
+    /**
+     * Packs a code given as ASCII bytes, e.g. straight from a network buffer
+     *
+     * @param buf Buffer holding the code
+     * @param off Start of the code
+     * @param len Length of the code in bytes
+     * @return The packed code, or INVALID if the length or a color is wrong
+     */
+    public int encode(byte[] buf, int off, int len) {
+        if (len != pegs) {
+            return INVALID;
+        }
+        int packed = 0;
+        for (int i = 0; i < pegs; i++) {
+            int c = buf[off + i];
+            int index = c >= 0 ? symbolIndex[c] : -1;
+            if (index < 0) {
+                return INVALID;
+            }
+            packed = packed * colors + index;
+        }
+        return packed;
+    }
+
+    /**
+     * Turns a packed code back into its string form
+     *
+     * @param code Packed code
+     * @return The code string, e.g. "BGRP"
+     */
+    public String decode(int code) {
+        char[] chars = new char[pegs];
+        for (int i = pegs - 1; i >= 0; i--) {
+            chars[i] = symbols[code % colors];
+            code /= colors;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return Number of pegs per code
+     */
+    public int getPegs() {
+        return pegs;
+    }
+
+    /**
+     * @return Number of colors
+     */
+    public int getColors() {
+        return colors;
+    }
+
+    /**
+     * @return Number of distinct codes (colors ^ pegs)
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The packed score for a winning guess
+     */
+    public int winningScore() {
+        return packScore(pegs, 0);
+    }
+
+    public static int packScore(int black, int white) {
+        return (black << 4) | white;
+    }
+
+    public static int blacks(int score) {
+        return score >>> 4;
+    }
+
+    public static int whites(int score) {
+        return score & 0xF;
+    }
+
+    private static char[] toSymbols(String[] colors) {
+        char[] symbols = new char[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            symbols[i] = colors[i].charAt(0);
+        }
+        return symbols;
+    }
+
+    private static char[] defaultSymbols(int colorCount) {
+        if (colorCount < 1 || colorCount > 16) {
+            throw new IllegalArgumentException("colors must be between 1 and 16: " + colorCount);
+        }
+        String used = String.join("", GameConfiguration.colors);
+        char[] symbols = new char[colorCount];
+        char next = 'A';
+        for (int i = 0; i < colorCount; i++) {
+            if (i < GameConfiguration.colors.length) {
+                symbols[i] = GameConfiguration.colors[i].charAt(0);
+            } else {
+                while (used.indexOf(next) >= 0) {
+                    next++;
+                }
+                symbols[i] = next++;
+            }
+        }
+        return symbols;
+    }
+}
@@ -0,0 +1,326 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * ConcurrentLongMap
+ *
+ * This class is a thread-safe map from primitive long keys to objects.
+ *
+ * Keys are spread over a fixed number of segments. Each segment is an
+ * open-addressing hash table (linear probing, tombstones for removals)
+ * guarded by a StampedLock. Lookups are optimistic reads: they probe
+ * without locking and only fall back to the read lock if a writer touched
+ * the segment meanwhile. A lookup therefore costs a multiply, a few array
+ * reads and a long comparison, with no boxing, String hashing or equals().
+ *
+ * Null values are not allowed. Iteration is done on snapshots (values()),
+ * so callers may modify the map while walking the result.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+
+public class ConcurrentLongMap<V> {
+    private static final int SEGMENTS = 16;
+    private static final int INITIAL_CAPACITY = 16;
+    // Marks a removed slot so probing continues past it
+    private static final Object TOMBSTONE = new Object();
+
+    @SuppressWarnings("unchecked")
+    private final Segment<V>[] segments = (Segment<V>[]) new Segment<?>[SEGMENTS];
+
+    public ConcurrentLongMap() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>();
+        }
+    }
+
+    public V get(long key) {
+        long h = hash(key);
+        return segmentFor(h).get(key, h);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return The previous value, or null
+     */
+    public V put(long key, V value) {
+        long h = hash(key);
+        return segmentFor(h).put(key, h, value, false);
+    }
+
+    /**
+     * @return The existing value (which is kept), or null if the value was added
+     */
+    public V putIfAbsent(long key, V value) {
+        long h = hash(key);
+        return segmentFor(h).put(key, h, value, true);
+    }
+
+    /**
+     * @return The removed value, or null
+     */
+    public V remove(long key) {
+        long h = hash(key);
+        return segmentFor(h).remove(key, h, null);
+    }
+
+    /**
+     * Removes the key only while it maps to the given value
+     *
+     * @return true if it was removed
+     */
+    public boolean remove(long key, V value) {
+        long h = hash(key);
+        return segmentFor(h).remove(key, h, value) != null;
+    }
+
+    /**
+     * Removes every entry whose value matches. The predicate runs under a
+     * segment's write lock and must not use this map.
+     *
+     * @return Number of entries removed
+     */
+    public int removeIf(Predicate<? super V> filter) {
+        int removed = 0;
+        for (Segment<V> segment : segments) {
+            removed += segment.removeIf(filter);
+        }
+        return removed;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return A snapshot of the values, in no particular order
+     */
+    public List<V> values() {
+        List<V> result = new ArrayList<>();
+        for (Segment<V> segment : segments) {
+            segment.addValuesTo(result);
+        }
+        return result;
+    }
+
+    // Fibonacci hashing; the top bits pick the segment, the rest the slot
+    private static long hash(long key) {
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    private Segment<V> segmentFor(long h) {
+        return segments[(int) (h >>> 60) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Keys and values of one segment, replaced as a whole on resize so a
+     * reader never sees arrays of different sizes
+     */
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+        }
+    }
+
+    private static final class Segment<V> {
+        private final StampedLock lock = new StampedLock();
+        private volatile Table table = new Table(INITIAL_CAPACITY);
+        private int size = 0;
+        // Live entries plus tombstones
+        private int used = 0;
+
+        V get(long key, long h) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                Object value = find(table, key, h);
+                if (lock.validate(stamp)) {
+                    return unwrap(value);
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return unwrap(find(table, key, h));
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        V put(long key, long h, V value, boolean onlyIfAbsent) {
+            if (value == null) {
+                throw new NullPointerException("null value");
+            }
+            long stamp = lock.writeLock();
+            try {
+                Table t = table;
+                int mask = t.keys.length - 1;
+                int free = -1;
+                for (int i = slot(h, mask); ; i = (i + 1) & mask) {
+                    Object existing = t.values[i];
+                    if (existing == null) {
+                        if (free < 0) {
+                            free = i;
+                            used++;
+                        }
+                        break;
+                    }
+                    if (existing == TOMBSTONE) {
+                        if (free < 0) {
+                            free = i;
+                        }
+                    } else if (t.keys[i] == key) {
+                        if (!onlyIfAbsent) {
+                            t.values[i] = value;
+                        }
+                        return unwrap(existing);
+                    }
+                }
+                t.keys[free] = key;
+                t.values[free] = value;
+                size++;
+                if (used * 4 > t.keys.length * 3) {
+                    resize();
+                }
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        V remove(long key, long h, V expected) {
+            long stamp = lock.writeLock();
+            try {
+                Table t = table;
+                int mask = t.keys.length - 1;
+                for (int i = slot(h, mask); ; i = (i + 1) & mask) {
+                    Object existing = t.values[i];
+                    if (existing == null) {
+                        return null;
+                    }
+                    if (existing != TOMBSTONE && t.keys[i] == key) {
+                        if (expected != null && existing != expected) {
+                            return null;
+                        }
+                        t.values[i] = TOMBSTONE;
+                        size--;
+                        return unwrap(existing);
+                    }
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int removeIf(Predicate<? super V> filter) {
+            long stamp = lock.writeLock();
+            try {
+                Table t = table;
+                int removed = 0;
+                for (int i = 0; i < t.values.length; i++) {
+                    V value = unwrap(t.values[i]);
+                    if (value != null && filter.test(value)) {
+                        t.values[i] = TOMBSTONE;
+                        removed++;
+                    }
+                }
+                size -= removed;
+                return removed;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void addValuesTo(List<V> result) {
+            long stamp = lock.readLock();
+            try {
+                for (Object value : table.values) {
+                    V v = unwrap(value);
+                    if (v != null) {
+                        result.add(v);
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * Rehashes live entries into a table sized for them, dropping
+         * tombstones. Called with the write lock held.
+         */
+        private void resize() {
+            Table old = table;
+            int capacity = INITIAL_CAPACITY;
+            while (size * 2 > capacity) {
+                capacity <<= 1;
+            }
+            Table t = new Table(capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < old.values.length; i++) {
+                Object value = old.values[i];
+                if (value != null && value != TOMBSTONE) {
+                    int j = slot(hash(old.keys[i]), mask);
+                    while (t.values[j] != null) {
+                        j = (j + 1) & mask;
+                    }
+                    t.keys[j] = old.keys[i];
+                    t.values[j] = value;
+                }
+            }
+            used = size;
+            table = t;
+        }
+
+        /**
+         * Probes for a key. Bounded by the table size so a read racing a
+         * writer cannot spin; the caller validates the result.
+         */
+        private static Object find(Table t, long key, long h) {
+            int mask = t.keys.length - 1;
+            int i = slot(h, mask);
+            for (int n = 0; n <= mask; n++) {
+                Object value = t.values[i];
+                if (value == null) {
+                    return null;
+                }
+                if (value != TOMBSTONE && t.keys[i] == key) {
+                    return value;
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int slot(long h, int mask) {
+            return (int) (h >>> 32) & mask;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <V> V unwrap(Object value) {
+            return value == TOMBSTONE ? null : (V) value;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * ConnectionScalingBenchmark
+ *
+ * This class compares server modes as the number of connected clients grows.
+ *
+ * For every mode and client count it starts a MastermindServer in this JVM,
+ * connects that many clients (HELLO + CONNECT) and then measures:
+ * - idle: JVM thread count and heap in use once everyone is connected
+ * - active: every client sends GET_GAMES at a fixed rate for a while, and
+ *   the round-trip time of each reply is recorded
+ *
+ * The clients are driven by a single selector thread so they add almost no
+ * threads of their own; the heap figure does include their small buffers.
+ * Large counts need a raised open-file limit (ulimit -n) and enough local
+ * ports, and are best run with a generous heap, e.g.
+ *
+ *   java -Xmx4g ConnectionScalingBenchmark threads,virtual,nio 1000,10000,50000 10 1
+ *
+ * Arguments: modes, client counts, active seconds, requests per client per second
+ */
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class ConnectionScalingBenchmark {
+    private static final int PORT = 9500;
+    private static final byte[] GET_GAMES = "GET_GAMES\n".getBytes(StandardCharsets.US_ASCII);
+
+    public static void main(String[] args) throws Exception {
+        String[] modes = (args.length > 0 ? args[0] : "threads,virtual,nio").split(",");
+        String[] counts = (args.length > 1 ? args[1] : "1000,10000,50000").split(",");
+        int activeSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        double rate = args.length > 3 ? Double.parseDouble(args[3]) : 1.0;
+
+        System.out.printf("%-8s %8s %10s %8s %10s %10s %10s %10s %10s%n", "mode", "clients",
+                "connect ms", "threads", "heap MB", "replies/s", "p50 ms", "p99 ms", "max ms");
+        for (String modeName : modes) {
+            MastermindServer.Mode mode = MastermindServer.Mode.valueOf(modeName.trim().toUpperCase());
+            for (String count : counts) {
+                run(mode, Integer.parseInt(count.trim()), activeSeconds, rate);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void run(MastermindServer.Mode mode, int clients, int activeSeconds, double rate)
+            throws Exception {
+        MastermindServer server = new MastermindServer(PORT, mode);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException e) {
+                System.err.println("Server error: " + e.getMessage());
+            }
+        }, "BenchmarkServer");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        Selector selector = Selector.open();
+        List<Client> all = new ArrayList<>();
+        try {
+            awaitListening();
+
+            // Connect everyone and wait for every CONNECTED reply
+            long start = System.nanoTime();
+            for (int i = 0; i < clients; i++) {
+                Client client = Client.open(selector, i);
+                all.add(client);
+                client.send(("HELLO:1\nCONNECT:bench" + i + "\n").getBytes(StandardCharsets.US_ASCII));
+                if (i % 500 == 499) {
+                    pump(selector, 0);
+                }
+            }
+            int connected = 0;
+            while (connected < clients) {
+                pump(selector, 1000);
+                connected = 0;
+                for (Client client : all) {
+                    if (client.connected) {
+                        connected++;
+                    }
+                }
+            }
+            long connectMillis = (System.nanoTime() - start) / 1_000_000;
+
+            // Idle footprint
+            System.gc();
+            Thread.sleep(500);
+            int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+            long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+
+            // Active phase: a steady stream of GET_GAMES requests
+            long[] latencies = new long[1 << 16];
+            int recorded = 0;
+            long replies = 0;
+            long intervalNanos = (long) (1_000_000_000L / rate);
+            long activeStart = System.nanoTime();
+            long end = activeStart + activeSeconds * 1_000_000_000L;
+            for (Client client : all) {
+                // Spread the first request of each client across one interval
+                client.nextSend = activeStart + (long) (Math.random() * intervalNanos);
+            }
+            while (System.nanoTime() < end) {
+                long now = System.nanoTime();
+                for (Client client : all) {
+                    if (now >= client.nextSend) {
+                        client.pending.addLast(now);
+                        client.send(GET_GAMES);
+                        client.nextSend += intervalNanos;
+                    }
+                }
+                pump(selector, 1);
+                for (Client client : all) {
+                    while (client.completed.size() > 0) {
+                        long latency = client.completed.removeFirst();
+                        replies++;
+                        if (recorded == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, recorded * 2);
+                        }
+                        latencies[recorded++] = latency;
+                    }
+                }
+            }
+            double seconds = (System.nanoTime() - activeStart) / 1e9;
+
+            Arrays.sort(latencies, 0, recorded);
+            System.out.printf("%-8s %8d %10d %8d %10.1f %10.0f %10.2f %10.2f %10.2f%n",
+                    server.getMode().name().toLowerCase(), clients, connectMillis, threads,
+                    heap / (1024.0 * 1024.0), replies / seconds,
+                    percentile(latencies, recorded, 0.50), percentile(latencies, recorded, 0.99),
+                    percentile(latencies, recorded, 1.0));
+        } catch (IOException e) {
+            System.err.println(server.getMode() + " with " + clients + " clients failed after "
+                    + all.size() + " connections: " + e.getMessage()
+                    + " (check ulimit -n and the local port range)");
+        } finally {
+            for (Client client : all) {
+                client.channel.close();
+            }
+            selector.close();
+            server.stop();
+            serverThread.join(5000);
+            // Let the server notice the closed sockets before the next run
+            Thread.sleep(1000);
+        }
+    }
+
+    /**
+     * Waits until the server thread has bound its port
+     */
+    private static void awaitListening() throws IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                SocketChannel.open(new InetSocketAddress("127.0.0.1", PORT)).close();
+                return;
+            } catch (IOException e) {
+                if (attempt == 100) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    /**
+     * Does one round of client I/O: flushes queued requests and reads replies
+     */
+    private static void pump(Selector selector, long timeoutMillis) throws IOException {
+        if (timeoutMillis == 0) {
+            selector.selectNow();
+        } else {
+            selector.select(timeoutMillis);
+        }
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            Client client = (Client) key.attachment();
+            if (key.isValid() && key.isConnectable()) {
+                client.finishConnect();
+            }
+            if (key.isValid() && key.isReadable()) {
+                client.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                client.flush();
+            }
+        }
+    }
+
+    private static double percentile(long[] sorted, int count, double p) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(count - 1, Math.ceil(p * count) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * One benchmark client, driven by the shared selector
+     */
+    private static class Client {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(4096);
+        ByteBuffer out = ByteBuffer.allocate(256);
+        final ArrayDeque<Long> pending = new ArrayDeque<>();
+        final ArrayDeque<Long> completed = new ArrayDeque<>();
+        boolean connected;
+        long nextSend;
+
+        private Client(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        static Client open(Selector selector, int id) throws IOException {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            boolean done = channel.connect(new InetSocketAddress("127.0.0.1", PORT));
+            SelectionKey key = channel.register(selector, done ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT);
+            Client client = new Client(channel, key);
+            key.attach(client);
+            return client;
+        }
+
+        void finishConnect() throws IOException {
+            if (channel.finishConnect()) {
+                key.interestOps(out.position() > 0
+                        ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+            }
+        }
+
+        void send(byte[] bytes) throws IOException {
+            if (out.remaining() < bytes.length) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes.length));
+                out.flip();
+                bigger.put(out);
+                out = bigger;
+            }
+            out.put(bytes);
+            if (channel.isConnected()) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            out.flip();
+            channel.write(out);
+            out.compact();
+            key.interestOps(out.position() > 0
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        /**
+         * Reads replies; only the start of each line matters here
+         */
+        void read() throws IOException {
+            int n = channel.read(in);
+            if (n < 0) {
+                throw new IOException("server closed a connection");
+            }
+            in.flip();
+            int lineStart = 0;
+            for (int i = 0; i < in.limit(); i++) {
+                if (in.get(i) == '\n') {
+                    onLine(lineStart);
+                    lineStart = i + 1;
+                }
+            }
+            if (lineStart == 0 && in.limit() == in.capacity()) {
+                // A line longer than the buffer, nothing in it is needed
+                in.clear();
+                return;
+            }
+            in.position(lineStart);
+            in.compact();
+        }
+
+        private void onLine(int start) {
+            if (startsWith(start, "CONNECTED")) {
+                connected = true;
+            } else if (startsWith(start, "GAME_LIST") && !pending.isEmpty()) {
+                completed.addLast(System.nanoTime() - pending.removeFirst());
+            }
+        }
+
+        private boolean startsWith(int start, String prefix) {
+            if (in.limit() - start < prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (in.get(start + i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * EncodedMessage
+ *
+ * This class is one server message on its way to many clients, encoded at
+ * most once per protocol: the version 1 line for text clients and the
+ * WireProtocol frames for binary ones. Each form is built the first time a
+ * client needs it and then shared, so a broadcast costs one encoding rather
+ * than one per player.
+ *
+ * A message with an opcode of its own comes with a function that builds
+ * its frame from the values it was made from; anything else goes to binary
+ * clients as TEXT frames.
+ *
+ * Not thread safe: a broadcast builds it and hands it out on one thread.
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+public final class EncodedMessage {
+    // The message without terminator, or null when built from lines
+    private final String message;
+    // Builds the typed frame, or null to send TEXT frames
+    private final Supplier<byte[]> framer;
+    private byte[] lines;
+    private byte[] frames;
+
+    private EncodedMessage(String message, byte[] lines, Supplier<byte[]> framer) {
+        this.message = message;
+        this.lines = lines;
+        this.framer = framer;
+    }
+
+    /**
+     * @param message A version 1 message, without line terminator
+     */
+    public static EncodedMessage of(String message) {
+        return new EncodedMessage(message, null, null);
+    }
+
+    /**
+     * @param message A version 1 message, without line terminator
+     * @param framer  Builds the same message as a frame (see WireProtocol),
+     *                or returns null if it does not fit in one
+     */
+    public static EncodedMessage of(String message, Supplier<byte[]> framer) {
+        return new EncodedMessage(message, null, framer);
+    }
+
+    /**
+     * @param lines UTF-8 bytes of one or more lines, each with its
+     *              terminator; shared, never modified
+     */
+    public static EncodedMessage ofLines(byte[] lines) {
+        return new EncodedMessage(null, lines, null);
+    }
+
+    /**
+     * @param line   UTF-8 bytes of one line with its terminator; shared,
+     *               never modified
+     * @param framer As for of(message, framer)
+     */
+    public static EncodedMessage ofLines(byte[] line, Supplier<byte[]> framer) {
+        return new EncodedMessage(null, line, framer);
+    }
+
+    /**
+     * @return The message as text lines; shared, do not modify
+     */
+    public byte[] lines() {
+        if (lines == null) {
+            lines = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+        return lines;
+    }
+
+    /**
+     * @return The message as binary frames; shared, do not modify
+     */
+    public byte[] frames() {
+        if (frames == null) {
+            frames = framer != null ? framer.get() : null;
+        }
+        if (frames == null) {
+            frames = message != null ? WireProtocol.encodeServerMessage(message)
+                    : WireProtocol.framesFromText(lines);
+        }
+        return frames;
+    }
+}
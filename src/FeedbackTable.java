@@ -0,0 +1,181 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * FeedbackTable
+ *
+ * This class precomputes the score of every (secret, guess) pair of a small
+ * code space so a score becomes a single array load.
+ *
+ * The table is a byte[size * size] indexed by secret * size + guess, each
+ * entry holding the packed score from CodeSpace. For the standard 4-peg /
+ * 6-color board that is 1296 * 1296 bytes (about 1.6 MB).
+ *
+ * The standard table is created on first use. It is read from the resource
+ * file feedback-4x6.bin when it is on the classpath (build_script.sh writes
+ * it with this class's main method), otherwise it is computed. Run the server
+ * with -Dmastermind.feedbackTable=false to score without a table.
+ */
+
+import java.io.*;
+
+public final class FeedbackTable implements CodeScorer {
+    // Largest code space we are willing to table (the table is size^2 bytes)
+    public static final int MAX_CODES = 4096;
+
+    private static final int MAGIC = 0x4D4D4654; // "MMFT"
+
+    private final CodeSpace space;
+    private final int size;
+    private final byte[] scores;
+
+    private FeedbackTable(CodeSpace space, byte[] scores) {
+        this.space = space;
+        this.size = space.size();
+        this.scores = scores;
+    }
+
+    // Holder idiom: the standard table is built the first time it is needed
+    private static class Standard {
+        static final FeedbackTable TABLE = Boolean.parseBoolean(
+                System.getProperty("mastermind.feedbackTable", "true"))
+                ? loadOrBuild(CodeSpace.STANDARD) : null;
+    }
+
+    /**
+     * Gets the table for the standard board
+     *
+     * @return The shared table, or null if tables are turned off
+     */
+    public static FeedbackTable standard() {
+        return Standard.TABLE;
+    }
+
+    /**
+     * Looks up a score
+     *
+     * @param secret Packed secret code
+     * @param guess  Packed guess
+     * @return Packed score, same as space.score(secret, guess)
+     */
+    @Override
+    public int score(int secret, int guess) {
+        return scores[secret * size + guess] & 0xFF;
+    }
+
+    /**
+     * Finds which of 64 consecutive codes would give a guess a certain score.
+     * Scoring is symmetric, so this reads one contiguous run of the guess's
+     * row with no branches, which keeps the loop simple enough to vectorize.
+     *
+     * @param guess Packed guess
+     * @param score Packed score to match
+     * @param from  First code to check
+     * @return Bit i is set when code from + i scores the same (codes past the
+     *         end of the space are never set)
+     */
+    public long matchMask(int guess, int score, int from) {
+        int base = guess * size + from;
+        int count = Math.min(64, size - from);
+        byte target = (byte) score;
+        long mask = 0;
+        for (int i = 0; i < count; i++) {
+            mask |= (long) ((scores[base + i] - target) == 0 ? 1 : 0) << i;
+        }
+        return mask;
+    }
+
+    /**
+     * @return The code space this table covers
+     */
+    public CodeSpace getSpace() {
+        return space;
+    }
+
+    /**
+     * Computes the table for a code space. Scoring is symmetric, so each pair
+     * is only computed once.
+     *
+     * @param space The code space (at most MAX_CODES codes)
+     * @return The new table
+     */
+    public static FeedbackTable build(CodeSpace space) {
+        int size = space.size();
+        if (size > MAX_CODES) {
+            throw new IllegalArgumentException("code space too large for a table: " + size);
+        }
+        byte[] scores = new byte[size * size];
+        for (int secret = 0; secret < size; secret++) {
+            for (int guess = secret; guess < size; guess++) {
+                byte score = (byte) space.score(secret, guess);
+                scores[secret * size + guess] = score;
+                scores[guess * size + secret] = score;
+            }
+        }
+        return new FeedbackTable(space, scores);
+    }
+
+    /**
+     * Reads a table written by write()
+     *
+     * @param space The code space the table must match
+     * @param in    Stream positioned at the start of the table
+     * @return The table
+     * @throws IOException If the stream is short or was written for another board
+     */
+    public static FeedbackTable read(CodeSpace space, InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC || data.readInt() != space.getPegs()
+                || data.readInt() != space.getColors()) {
+            throw new IOException("feedback table does not match " + resourceName(space));
+        }
+        byte[] scores = new byte[space.size() * space.size()];
+        data.readFully(scores);
+        return new FeedbackTable(space, scores);
+    }
+
+    /**
+     * Writes the table in the format read() expects
+     *
+     * @param out Destination stream
+     * @throws IOException If writing fails
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(space.getPegs());
+        data.writeInt(space.getColors());
+        data.write(scores);
+        data.flush();
+    }
+
+    /**
+     * Loads the bundled table for a code space, or builds it if the resource
+     * is missing or unreadable
+     */
+    private static FeedbackTable loadOrBuild(CodeSpace space) {
+        try (InputStream in = FeedbackTable.class.getResourceAsStream("/" + resourceName(space))) {
+            if (in != null) {
+                return read(space, in);
+            }
+        } catch (IOException e) {
+            System.err.println("Ignoring feedback table resource: " + e.getMessage());
+        }
+        return build(space);
+    }
+
+    private static String resourceName(CodeSpace space) {
+        return "feedback-" + space.getPegs() + "x" + space.getColors() + ".bin";
+    }
+
+    /**
+     * Writes the standard table so it can be bundled on the classpath
+     *
+     * Usage: java FeedbackTable [outputDirectory]
+     */
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : ".");
+        File file = new File(dir, resourceName(CodeSpace.STANDARD));
+        try (OutputStream out = new FileOutputStream(file)) {
+            build(CodeSpace.STANDARD).write(out);
+        }
+        System.out.println("Wrote " + file.getPath());
+    }
+}
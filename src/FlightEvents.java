@@ -0,0 +1,143 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * FlightEvents
+ *
+ * This class defines the server's Java Flight Recorder events, so a
+ * recording can tie GC pauses and thread stalls to the command and game
+ * that were running:
+ *   mastermind.Command    one per client command: name, payload size and
+ *                         time in its handler
+ *   mastermind.Guess      one per processGuess(): lock wait, evaluation
+ *                         and broadcast time
+ *   mastermind.Session    a game created, started, finished or removed
+ *   mastermind.Connection a client connected or disconnected
+ *
+ * JFR events are off until a recording enables them, e.g.
+ *   java -XX:StartFlightRecording=filename=server.jfr MastermindServer
+ * While off, creating an event is removed by the JIT and shouldCommit()
+ * is a constant false, so the calls cost next to nothing. Stack traces are
+ * not taken; the fields say where the event came from.
+ */
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+public final class FlightEvents {
+    private FlightEvents() {
+    }
+
+    @Name("mastermind.Command")
+    @Label("Protocol Command")
+    @Category({"Mastermind", "Protocol"})
+    @Description("A command from a client and the time its handler took")
+    @StackTrace(false)
+    public static class CommandEvent extends Event {
+        @Label("Command")
+        public String command;
+
+        @Label("Payload Size")
+        @DataAmount
+        public int payloadBytes;
+
+        @Label("Player")
+        public String playerId;
+    }
+
+    @Name("mastermind.Guess")
+    @Label("Guess")
+    @Category({"Mastermind", "Game"})
+    @Description("One processGuess() call, split into lock wait, evaluation and broadcast")
+    @StackTrace(false)
+    public static class GuessEvent extends Event {
+        @Label("Game")
+        public String gameId;
+
+        @Label("Player")
+        public String playerId;
+
+        @Label("Outcome")
+        @Description("scored, won, lost or rejected")
+        public String outcome;
+
+        @Label("Lock Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        public long lockWait;
+
+        @Label("Evaluation Time")
+        @Description("Scoring the guess and narrowing the player's candidates")
+        @Timespan(Timespan.NANOSECONDS)
+        public long evaluationTime;
+
+        @Label("Broadcast Time")
+        @Description("Sending the result and the next turn to the players")
+        @Timespan(Timespan.NANOSECONDS)
+        public long broadcastTime;
+    }
+
+    @Name("mastermind.Session")
+    @Label("Game Session")
+    @Category({"Mastermind", "Game"})
+    @Description("A game created, started, finished or removed")
+    @StackTrace(false)
+    public static class SessionEvent extends Event {
+        @Label("Game")
+        public String gameId;
+
+        @Label("Action")
+        public String action;
+
+        @Label("Players")
+        public int players;
+    }
+
+    @Name("mastermind.Connection")
+    @Label("Client Connection")
+    @Category({"Mastermind", "Protocol"})
+    @Description("A client connected or disconnected")
+    @StackTrace(false)
+    public static class ConnectionEvent extends Event {
+        @Label("Action")
+        public String action;
+
+        @Label("Player")
+        public String playerId;
+
+        @Label("Open Connections")
+        public int connections;
+    }
+
+    /**
+     * Records a game lifecycle step if a recording wants it
+     *
+     * @param action created, started, finished or removed
+     */
+    public static void session(String gameId, String action, int players) {
+        SessionEvent event = new SessionEvent();
+        if (event.shouldCommit()) {
+            event.gameId = gameId;
+            event.action = action;
+            event.players = players;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a connect or disconnect if a recording wants it
+     *
+     * @param playerId The player, or null before CONNECT
+     */
+    public static void connection(String action, String playerId, int connections) {
+        ConnectionEvent event = new ConnectionEvent();
+        if (event.shouldCommit()) {
+            event.action = action;
+            event.playerId = playerId;
+            event.connections = connections;
+            event.commit();
+        }
+    }
+}
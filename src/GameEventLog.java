@@ -0,0 +1,411 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * GameEventLog
+ *
+ * This class appends game events to segment files so games survive a
+ * restart.
+ *
+ * Each event is one WireProtocol frame: varint length, an event type in
+ * place of the opcode, the game's numeric id and the event's fields.
+ *   GAME_CREATED  id, u8 requiredPlayers, name
+ *   PLAYER_JOINED id, playerId, i64 resume token, name
+ *   PLAYER_LEFT   id, playerId
+ *   GAME_STARTED  id, varint secret (packed code)
+ *   GUESS_SCORED  id, playerId, varint guess, u8 score
+ *   TURN_ADVANCED id, varint turnIndex
+ *   GAME_FINISHED id, u8 hasWinner
+ *   GAME_REMOVED  id
+ *   GAME_SNAPSHOT id (the game was written to a snapshot, see GameSnapshotter)
+ *
+ * The log is a directory of segments named by sequence number. Each is
+ * mapped into memory (MappedByteBuffer) and filled with records:
+ *   int length, int CRC32C of the event, the event
+ * A zero length ends a segment; a new one is started once the next record
+ * does not fit (-Dmastermind.segmentBytes, default 16 MB). The checksum
+ * catches an event the OS only partly wrote before a crash.
+ *
+ * append() only queues the encoded event, so a game never waits for the
+ * disk. A writer thread copies everything queued since its last pass into
+ * the mapped segment (group commit), then forces it to disk at most every
+ * fsync interval, or after every pass if the interval is 0. Events from
+ * one game are appended under its lock, so they are logged in the order
+ * they happened.
+ *
+ * replay() maps the segments read-only and walks them front to back, so
+ * recovery runs at disk speed. LogCompactor rewrites older segments
+ * without the games that are over.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+public class GameEventLog implements Closeable {
+    public static final byte GAME_CREATED = 1;
+    public static final byte PLAYER_JOINED = 2;
+    public static final byte PLAYER_LEFT = 3;
+    public static final byte GAME_STARTED = 4;
+    public static final byte GUESS_SCORED = 5;
+    public static final byte TURN_ADVANCED = 6;
+    public static final byte GAME_FINISHED = 7;
+    public static final byte GAME_REMOVED = 8;
+    public static final byte GAME_SNAPSHOT = 9;
+
+    public static final int DEFAULT_SEGMENT_BYTES = Integer.getInteger("mastermind.segmentBytes", 16 << 20);
+    // Length and checksum in front of each event
+    static final int RECORD_HEADER = 8;
+    // Longest event a WireProtocol frame can hold
+    static final int MAX_EVENT_LENGTH = WireProtocol.MAX_FRAME_LENGTH + 3;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    // Events copied per pass at most
+    private static final int BATCH = 1024;
+    // Queued by close() to stop the writer after everything before it
+    private static final byte[] CLOSE = new byte[0];
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final long fsyncNanos;
+    private final LinkedBlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final CRC32C crc = new CRC32C();
+    private volatile boolean closed = false;
+    private volatile IOException failure;
+    // The segment being filled, owned by the writer thread after the constructor
+    private MappedByteBuffer segment;
+    private volatile long activeSequence;
+
+    /**
+     * Called for each event during replay()
+     */
+    public interface Handler {
+        /**
+         * @param type   The event type
+         * @param gameId The game's numeric id
+         * @param fields Reader positioned at the event's remaining fields
+         */
+        void event(int type, long gameId, WireProtocol.Reader fields);
+    }
+
+    /**
+     * Called for each whole record while scanning a segment
+     */
+    interface RecordVisitor {
+        /**
+         * @param event  Buffer holding the event, reused for the next record
+         * @param length The event's length
+         */
+        void record(byte[] event, int length);
+    }
+
+    public GameEventLog(Path dir, long fsyncMillis) throws IOException {
+        this(dir, fsyncMillis, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Opens a log for appending, continuing its newest segment after the
+     * last whole record
+     *
+     * @param dir          The log directory, created if missing
+     * @param fsyncMillis  Longest time written events may wait to be forced
+     *                     to disk, 0 to force after every pass
+     * @param segmentBytes Size at which a new segment is started
+     */
+    public GameEventLog(Path dir, long fsyncMillis, int segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = Math.max(segmentBytes, RECORD_HEADER + MAX_EVENT_LENGTH);
+        this.fsyncNanos = TimeUnit.MILLISECONDS.toNanos(fsyncMillis);
+        Files.createDirectories(dir);
+        List<Path> existing = segments(dir);
+        if (existing.isEmpty()) {
+            openSegment(1);
+        } else {
+            Path last = existing.get(existing.size() - 1);
+            openSegment(sequence(last));
+            int end = scan(segment, (event, length) -> { });
+            // Clear whatever a crash left behind the last whole record
+            for (int i = end; i < segment.limit(); i++) {
+                segment.put(i, (byte) 0);
+            }
+            segment.position(end);
+        }
+        this.writer = new Thread(this::writeLoop, "GameEventLog");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues an event. Never blocks on I/O.
+     *
+     * @param event An event built by one of the static methods below
+     */
+    public void append(byte[] event) {
+        if (!closed) {
+            queue.add(event);
+        }
+    }
+
+    /**
+     * @return Sequence number of the segment being written; older segments
+     *         are sealed and may be compacted
+     */
+    public long getActiveSequence() {
+        return activeSequence;
+    }
+
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Writes and forces everything queued so far, then stops writing.
+     * Events appended afterwards are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (writer.isAlive()) {
+            queue.add(CLOSE);
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void writeLoop() {
+        List<byte[]> batch = new ArrayList<>(BATCH);
+        long lastSync = System.nanoTime();
+        boolean unsynced = false;
+        try {
+            while (true) {
+                // Wake up in time to force events already written
+                byte[] first = unsynced
+                        ? queue.poll(Math.max(0, fsyncNanos - (System.nanoTime() - lastSync)), TimeUnit.NANOSECONDS)
+                        : queue.take();
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH - 1);
+                    boolean stop = write(batch);
+                    batch.clear();
+                    unsynced = true;
+                    if (stop) {
+                        segment.force();
+                        return;
+                    }
+                }
+                if (unsynced && System.nanoTime() - lastSync >= fsyncNanos) {
+                    segment.force();
+                    lastSync = System.nanoTime();
+                    unsynced = false;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = e instanceof IOException ? (IOException) e : new IOException(e);
+            closed = true;
+            System.err.println("Game event log failed, no longer logging: " + e);
+        } catch (InterruptedException e) {
+            // Exiting
+        }
+    }
+
+    /**
+     * Copies a batch into the segment, starting new segments as needed
+     *
+     * @return true if the batch held close()'s marker
+     */
+    private boolean write(List<byte[]> batch) throws IOException {
+        boolean stop = false;
+        for (byte[] event : batch) {
+            if (event == CLOSE) {
+                stop = true;
+                continue;
+            }
+            if (segment.remaining() < RECORD_HEADER + event.length) {
+                segment.force();
+                openSegment(activeSequence + 1);
+            }
+            putRecord(segment, crc, event, event.length);
+        }
+        return stop;
+    }
+
+    private void openSegment(long sequence) throws IOException {
+        Path file = segmentPath(dir, sequence);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long size = Math.max(segmentBytes, channel.size());
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        activeSequence = sequence;
+    }
+
+    /**
+     * Reads every whole event in a log, oldest segment first
+     *
+     * @param dir     The log directory; a missing one has no events
+     * @param handler Gets each event
+     * @return Number of events read
+     */
+    public static int replay(Path dir, Handler handler) throws IOException {
+        return replay(dir, 0, handler);
+    }
+
+    /**
+     * Reads every whole event from one segment on, e.g. the log tail after
+     * a snapshot
+     *
+     * @param fromSequence First segment to read
+     */
+    public static int replay(Path dir, long fromSequence, Handler handler) throws IOException {
+        int[] count = new int[1];
+        for (Path file : segments(dir)) {
+            if (sequence(file) < fromSequence) {
+                continue;
+            }
+            MappedByteBuffer data = map(file);
+            int end = scan(data, (event, length) -> {
+                parse(event, length, handler);
+                count[0]++;
+            });
+            if (end < data.limit() && data.getInt(end) != 0) {
+                System.err.println("Stopped at a damaged record in " + file + " at " + end);
+            }
+        }
+        return count[0];
+    }
+
+    /**
+     * Splits an event into its type, game and fields and hands it on. A
+     * malformed event is reported and skipped.
+     */
+    static void parse(byte[] event, int length, Handler handler) {
+        try {
+            long header = WireProtocol.header(event, 0, length);
+            int start = (int) (header >>> 32);
+            if (header < 0 || start + (int) header != length) {
+                throw new IllegalArgumentException("length mismatch");
+            }
+            WireProtocol.Reader fields = new WireProtocol.Reader(event, start + 1, length);
+            handler.event(event[start], fields.i64(), fields);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Skipping bad event: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Walks the whole records of a segment from its start
+     *
+     * @return Offset just past the last whole record
+     */
+    static int scan(ByteBuffer data, RecordVisitor visitor) {
+        CRC32C crc = new CRC32C();
+        byte[] event = new byte[MAX_EVENT_LENGTH];
+        int limit = data.limit();
+        int pos = 0;
+        while (limit - pos >= RECORD_HEADER) {
+            int length = data.getInt(pos);
+            if (length <= 0 || length > MAX_EVENT_LENGTH || length > limit - pos - RECORD_HEADER) {
+                break;
+            }
+            data.get(pos + RECORD_HEADER, event, 0, length);
+            crc.reset();
+            crc.update(event, 0, length);
+            if ((int) crc.getValue() != data.getInt(pos + 4)) {
+                break;
+            }
+            visitor.record(event, length);
+            pos += RECORD_HEADER + length;
+        }
+        return pos;
+    }
+
+    static void putRecord(ByteBuffer out, CRC32C crc, byte[] event, int length) {
+        crc.reset();
+        crc.update(event, 0, length);
+        out.putInt(length);
+        out.putInt((int) crc.getValue());
+        out.put(event, 0, length);
+    }
+
+    static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * @return The segments in a log directory, oldest first
+     */
+    static List<Path> segments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    static Path segmentPath(Path dir, long sequence) {
+        return dir.resolve(String.format("%016d", sequence) + SEGMENT_SUFFIX);
+    }
+
+    static long sequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    public static byte[] gameCreated(long gameId, int requiredPlayers, String name) {
+        return new WireProtocol.Writer(GAME_CREATED).i64(gameId).u8(requiredPlayers).utf8(name).finish();
+    }
+
+    public static byte[] playerJoined(long gameId, long playerId, long resumeToken, String name) {
+        return new WireProtocol.Writer(PLAYER_JOINED).i64(gameId).i64(playerId).i64(resumeToken)
+                .utf8(name).finish();
+    }
+
+    public static byte[] playerLeft(long gameId, long playerId) {
+        return new WireProtocol.Writer(PLAYER_LEFT).i64(gameId).i64(playerId).finish();
+    }
+
+    public static byte[] gameStarted(long gameId, int secret) {
+        return new WireProtocol.Writer(GAME_STARTED).i64(gameId).varint(secret).finish();
+    }
+
+    public static byte[] guessScored(long gameId, long playerId, int guess, int score) {
+        return new WireProtocol.Writer(GUESS_SCORED).i64(gameId).i64(playerId).varint(guess).u8(score).finish();
+    }
+
+    public static byte[] turnAdvanced(long gameId, int turnIndex) {
+        return new WireProtocol.Writer(TURN_ADVANCED).i64(gameId).varint(turnIndex).finish();
+    }
+
+    public static byte[] gameFinished(long gameId, boolean hasWinner) {
+        return new WireProtocol.Writer(GAME_FINISHED).i64(gameId).u8(hasWinner ? 1 : 0).finish();
+    }
+
+    public static byte[] gameRemoved(long gameId) {
+        return new WireProtocol.Writer(GAME_REMOVED).i64(gameId).finish();
+    }
+
+    public static byte[] gameSnapshot(long gameId) {
+        return new WireProtocol.Writer(GAME_SNAPSHOT).i64(gameId).finish();
+    }
+}
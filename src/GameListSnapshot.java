@@ -0,0 +1,93 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * GameListSnapshot
+ *
+ * This class is an immutable copy of the game list, already encoded.
+ *
+ * Each game contributes a UTF-8 JSON fragment that its GameSession builds
+ * under its own lock and keeps until the game changes, so a new snapshot
+ * re-serializes only the games that changed and copies the rest. The
+ * joined list and the GAME_LIST line are encoded once and shared by every
+ * reader. GameLobbyManager replaces the snapshot after each change; the
+ * version says which change it reflects.
+ */
+
+import java.nio.charset.StandardCharsets;
+
+public final class GameListSnapshot {
+    private static final byte[] GAME_LIST = "GAME_LIST:".getBytes(StandardCharsets.US_ASCII);
+
+    private final long version;
+    private final String[] gameIds;
+    private final byte[][] fragments;
+    private final byte[] json;
+    private final byte[] gameListLine;
+
+    /**
+     * @param version   Lobby change count this snapshot reflects
+     * @param gameIds   Ids of the games, in list order
+     * @param fragments Each game's JSON object, same order
+     */
+    GameListSnapshot(long version, String[] gameIds, byte[][] fragments) {
+        this.version = version;
+        this.gameIds = gameIds;
+        this.fragments = fragments;
+
+        int length = 2 + Math.max(0, fragments.length - 1);
+        for (byte[] fragment : fragments) {
+            length += fragment.length;
+        }
+        json = new byte[length];
+        int pos = 0;
+        json[pos++] = '[';
+        for (int i = 0; i < fragments.length; i++) {
+            if (i > 0) {
+                json[pos++] = ',';
+            }
+            System.arraycopy(fragments[i], 0, json, pos, fragments[i].length);
+            pos += fragments[i].length;
+        }
+        json[pos] = ']';
+
+        gameListLine = new byte[GAME_LIST.length + json.length + 1];
+        System.arraycopy(GAME_LIST, 0, gameListLine, 0, GAME_LIST.length);
+        System.arraycopy(json, 0, gameListLine, GAME_LIST.length, json.length);
+        gameListLine[gameListLine.length - 1] = '\n';
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return gameIds.length;
+    }
+
+    public String getGameId(int index) {
+        return gameIds[index];
+    }
+
+    /**
+     * @return The game's JSON object; shared, do not modify
+     */
+    public byte[] getFragment(int index) {
+        return fragments[index];
+    }
+
+    /**
+     * @return The whole list as a JSON array; shared, do not modify
+     */
+    public byte[] getJson() {
+        return json;
+    }
+
+    /**
+     * @return "GAME_LIST:[...]\n" ready to queue; shared, do not modify
+     */
+    public byte[] getGameListLine() {
+        return gameListLine;
+    }
+
+    public String toJsonString() {
+        return new String(json, StandardCharsets.UTF_8);
+    }
+}
@@ -4,6 +4,30 @@
  * This class manages all active games and connected players.
  * It serves as the central coordination point for the server.
  * 
+ * Players and games are keyed by numeric ids from an IdAllocator in
+ * primitive-keyed maps (ConcurrentLongMap). The public methods take the
+ * ids in their text form ("p42", "g0000002a") for the text protocol and
+ * parse them without allocating; hot paths use the long overloads.
+ * 
+ * Game membership is indexed both ways: playerToGame maps a player to
+ * their game and gamePlayers maps a game to its players. Both are changed
+ * together under the game's Members lock, so tearing down a game only
+ * touches its own players instead of scanning everyone connected.
+ * 
+ * The game list is served from a GameListSnapshot, rebuilt on the first
+ * read after a change and shared by every reader until the next one.
+ * 
+ * Where a game runs its commands depends on -Dmastermind.sessionMode (see
+ * SessionMailbox); in sharded mode the lobby places each new game on a
+ * shard of its SessionScheduler.
+ * 
+ * With an event log (startEventLog), games and their moves are logged as
+ * they happen and rebuilt from the log when the server starts again.
+ * Players of a recovered game get their seat back with RESUME.
+ * 
+ * Counters and latencies are collected in a ServerMetrics shared with
+ * every ClientHandler; getStatsReport() adds the lobby's own gauges.
+ * 
  * LEARNING OBJECTIVES:
  * - Thread-safe data structures (ConcurrentHashMap)
  * - Central coordination logic
@@ -12,13 +36,49 @@
  * ESTIMATED TIME: 2-3 hours
  */
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class GameLobbyManager {
-    private final ConcurrentHashMap<String, ClientHandler> players = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, GameSession> sessions = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, String> playerToGame = new ConcurrentHashMap<>();
+    private final IdAllocator ids = new IdAllocator();
+    private final ConcurrentLongMap<ClientHandler> players = new ConcurrentLongMap<>();
+    private final ConcurrentLongMap<GameSession> sessions = new ConcurrentLongMap<>();
+    private final ConcurrentLongMap<GameSession> playerToGame = new ConcurrentLongMap<>();
+    private final ConcurrentLongMap<Members> gamePlayers = new ConcurrentLongMap<>();
+    // Counts game list changes; a snapshot with this version is current
+    private final AtomicLong listVersion = new AtomicLong();
+    private final AtomicReference<GameListSnapshot> listSnapshot = new AtomicReference<>();
+    private final SessionScheduler scheduler = "sharded".equals(SessionMailbox.MODE)
+            ? new SessionScheduler(Runtime.getRuntime().availableProcessors(), SessionScheduler.REBALANCE_MILLIS)
+            : null;
+    // Null unless persistence is on
+    private volatile GameEventLog eventLog;
+    private volatile LogCompactor compactor;
+    private volatile GameSnapshotter snapshotter;
+    private final LobbyPublisher publisher;
+    private final ServerMetrics metrics = new ServerMetrics();
+    // Games listed by lock hold time in the stats report
+    private static final int LOCK_REPORT_GAMES = 3;
+    // Prints getStatsReport() periodically, or null
+    private volatile ScheduledExecutorService statsDump;
+
+    public GameLobbyManager() {
+        this(LobbyPublisher.DEFAULT_WINDOW_MILLIS);
+    }
+
+    /**
+     * @param lobbyWindowMillis How long game list changes are collected
+     *                          before they are sent, see LobbyPublisher
+     */
+    GameLobbyManager(long lobbyWindowMillis) {
+        publisher = new LobbyPublisher(this, lobbyWindowMillis);
+    }
 
     /**
      * TODO 1: Add Player to Lobby (10 minutes)
@@ -33,10 +93,23 @@ public class GameLobbyManager {
      * @param handler The ClientHandler for this player
      */
     public void addPlayer(String playerId, String playerName, ClientHandler handler) {
-        players.put(playerId, handler);
+        long id = IdAllocator.parsePlayerId(playerId);
+        if (id == IdAllocator.INVALID) {
+            throw new IllegalArgumentException("not a player id: " + playerId);
+        }
+        players.put(id, handler);
         
     }
 
+    /**
+     * Allocates an id for a connecting player. Ids are never reused.
+     * 
+     * @return The id in text form, e.g. "p42"
+     */
+    public String newPlayerId() {
+        return IdAllocator.formatPlayerId(ids.nextPlayerId());
+    }
+
     /**
      * TODO 2: Remove Player from Lobby (25 minutes)
      * 
@@ -56,24 +129,18 @@ public class GameLobbyManager {
      */
     public void removePlayer(String playerId) {
         //Remove fromt players list
-        if(playerId == null) {
+        long id = IdAllocator.parsePlayerId(playerId);
+        if(id == IdAllocator.INVALID) {
             return;
         }
-        ClientHandler handle = players.get(playerId);
-        players.remove(playerId);
+        ClientHandler handle = players.remove(id);
         //Check if they play
 
-        String gID = playerToGame.remove(playerId);
-        GameSession sesh;
-        if(gID != null) {
-            sesh = sessions.get(gID);
-            if(sesh == null) {
-                return;
-            }
-        }
-        else {
+        GameSession sesh = playerToGame.get(id);
+        if(sesh == null || !detach(id, sesh) || sessions.get(sesh.getNumericId()) != sesh) {
             return;
         }
+        String gID = sesh.getGameId();
         String name;
         if(handle != null) {
             name = handle.getPlayerName();
@@ -82,11 +149,11 @@ public class GameLobbyManager {
             name = playerId;
         }
 
-        //Remove from session
-        sesh.removePlayer(playerId);
-
-        //Broadcast
-        sesh.broadcast("PLAYER_LEFT:" + gID + ":" + name, playerId);
+        //Remove from session and broadcast, as one command of the game
+        sesh.execute(() -> {
+            sesh.removePlayer(playerId);
+            sesh.broadcast("PLAYER_LEFT:" + gID + ":" + name, playerId);
+        });
     }
 
     /**
@@ -95,7 +162,7 @@ public class GameLobbyManager {
      * Creates a new game session.
      * 
      * Steps:
-     * 1. Generate a unique game ID: "g" + UUID.randomUUID().toString().substring(0, 8)
+     * 1. Generate a unique game ID from the IdAllocator, e.g. "g0000002a"
      * 2. Create a new GameSession with the gameId, gameName, requiredPlayers, and this manager
      * 3. Add the session to the sessions map
      * 4. Return the gameId
@@ -108,11 +175,21 @@ public class GameLobbyManager {
      * @return The generated game ID
      */
     public String createGame(String gameName, int requiredPlayers, String creatorId) {
-        String id = "g" + UUID.randomUUID().toString().substring(0, 8);
+        long numericId = ids.nextGameId();
+        String id = IdAllocator.formatGameId(numericId);
 
         GameSession sesh = new GameSession(id, gameName, requiredPlayers, this);
 
-        sessions.put(id, sesh);
+        // Logged before the game can be found, so no join is logged ahead
+        // of it and dropped on replay
+        GameEventLog log = eventLog;
+        if (log != null) {
+            log.append(GameEventLog.gameCreated(numericId, requiredPlayers, gameName));
+        }
+        gamePlayers.put(numericId, new Members());
+        sessions.put(numericId, sesh);
+        FlightEvents.session(id, "created", 0);
+        publishGameList();
 
         return id;
     }
@@ -136,8 +213,9 @@ public class GameLobbyManager {
      * @return true if successfully joined, false otherwise
      */
     public boolean joinGame(String gameId, String playerId) {
-        GameSession sesh = sessions.get(gameId);
-        ClientHandler handle = players.get(playerId);
+        long id = IdAllocator.parsePlayerId(playerId);
+        GameSession sesh = getSession(gameId);
+        ClientHandler handle = players.get(id);
         
         if(sesh == null) {
             return false;
@@ -146,34 +224,76 @@ public class GameLobbyManager {
             return false;
         }
 
+        // Taken before the seat, so a removal from here on marks it closed
+        Members members = gamePlayers.get(sesh.getNumericId());
+        if(members == null) {
+            return false;
+        }
+
         boolean add = sesh.addPlayer(playerId, handle);
-        if (add == true) {
-            playerToGame.put(playerId, gameId);
+        if (add == false) {
+            return false;
         }
 
-        return add;
+        // The session's own lock is taken first elsewhere (it calls
+        // removeSession), so addPlayer above runs outside the Members lock
+        GameSession previous = null;
+        boolean closed;
+        synchronized (members) {
+            closed = members.closed;
+            if(!closed) {
+                members.add(id);
+                previous = playerToGame.put(id, sesh);
+            }
+        }
+        if(closed) {
+            // Removed while we were joining: give the seat back, outside the
+            // Members lock for the same reason
+            sesh.removePlayer(playerId);
+            return false;
+        }
+        if(previous != null && previous != sesh) {
+            Members old = gamePlayers.get(previous.getNumericId());
+            if(old != null) {
+                synchronized (old) {
+                    old.remove(id);
+                }
+            }
+        }
+        return true;
     }
 //New Method leaveGame Just leaves session
 
+    /**
+     * Takes a player out of a game they are in, on both sides of the
+     * membership index, then removes them from the session as one command
+     * of the game
+     * 
+     * @param playerId The player leaving
+     * @param gameId The game they leave
+     */
     public void leaveGame(String playerId, String gameId) {
         if(gameId == null || playerId == null) {
             return;
         }
-        GameSession sesh = sessions.get(gameId);
-        if(sesh == null) {
+        long id = IdAllocator.parsePlayerId(playerId);
+        GameSession sesh = getSession(gameId);
+        if(id == IdAllocator.INVALID || sesh == null || !detach(id, sesh)) {
             return;
         }
-        ClientHandler handle = players.get(playerId);
+        ClientHandler handle = players.get(id);
         String name = "";
         if(handle != null && handle.getPlayerName() != null) {
             name = handle.getPlayerName();
         }
-        sesh.removePlayer(playerId);
-        playerToGame.remove(playerId);
-        sesh.broadcast("PLAYER_LEFT:" + gameId + ":" + name, playerId);
-        if(sesh.isSeshEmpty() || sesh.getFinished()) {
-            removeSession(gameId);
-        }
+        String leaver = name;
+        sesh.execute(() -> {
+            sesh.removePlayer(playerId);
+            sesh.broadcast("PLAYER_LEFT:" + gameId + ":" + leaver, playerId);
+            if(sesh.isSeshEmpty() || sesh.getFinished()) {
+                removeSession(gameId);
+            }
+        });
     }
     /**
      * TODO 5: Get Game Session (5 minutes)
@@ -187,7 +307,17 @@ public class GameLobbyManager {
      * @return The GameSession, or null if not found
      */
     public GameSession getSession(String gameId) {
-       
+        long id = IdAllocator.parseGameId(gameId);
+        return id == IdAllocator.INVALID ? null : sessions.get(id);
+    }
+
+    /**
+     * Looks up a game by its numeric id
+     * 
+     * @param gameId The game's numeric id
+     * @return The GameSession, or null if not found
+     */
+    public GameSession getSession(long gameId) {
         return sessions.get(gameId);
     }
 
@@ -199,27 +329,56 @@ public class GameLobbyManager {
      * Steps:
      * 1. Remove the session from sessions map
      * 2. If session was found:
-     *    a. For each player ID in the session, remove from playerToGame map
+     *    a. For each player ID in the game's Members, remove from playerToGame map
      *    b. Broadcast updated game list to all players in lobby
      * 
      * @param gameId The ID of the game to remove
      */
     public void removeSession(String gameId) {
-        GameSession sesh = sessions.remove(gameId);
+        long id = IdAllocator.parseGameId(gameId);
+        GameSession sesh = id == IdAllocator.INVALID ? null : sessions.remove(id);
 
         if (sesh == null) {
             return;
         }
 
-        Iterator<Map.Entry<String, String>> it = playerToGame.entrySet().iterator();
-        while (it.hasNext()) {
-            if (gameId.equals(it.next().getValue())) {
-                it.remove();
+        GameEventLog log = eventLog;
+        if (log != null) {
+            log.append(GameEventLog.gameRemoved(id));
+        }
+        FlightEvents.session(gameId, "removed", sesh.getPlayerCount());
+        if (scheduler != null) {
+            scheduler.unregister(id);
+        }
+        Members members = gamePlayers.remove(id);
+        if (members != null) {
+            synchronized (members) {
+                members.closed = true;
+                for (int i = 0; i < members.count; i++) {
+                    playerToGame.remove(members.ids[i], sesh);
+                }
+                members.count = 0;
             }
         }
 
-         broadcastToLobby("GAME_LIST:" + getGameListJson());
-        
+        publishGameList();
+    }
+
+    /**
+     * Takes a player out of a game in both directions of the index
+     * 
+     * @return true if the player was in that game
+     */
+    private boolean detach(long playerId, GameSession sesh) {
+        Members members = gamePlayers.get(sesh.getNumericId());
+        if (members == null) {
+            // Already torn down by removeSession
+            return playerToGame.remove(playerId, sesh);
+        }
+        synchronized (members) {
+            members.remove(playerId);
+            return playerToGame.remove(playerId, sesh);
+        }
     }
 
     /**
@@ -233,50 +392,65 @@ public class GameLobbyManager {
      *   {"id":"g67890","name":"Game2","players":4,"maxPlayers":4,"status":"In Progress"}
      * ]
      * 
-     * Steps:
-     * 1. Create a StringBuilder starting with "["
-     * 2. Use a boolean flag to track if this is the first game (for comma placement)
-     * 3. For each GameSession in sessions.values():
-     *    a. If not first, append a comma
-     *    b. Append "{"
-     *    c. Append: "\"id\":\"" + session.getGameId() + "\","
-     *    d. Append: "\"name\":\"" + session.getGameName() + "\","
-     *    e. Append: "\"players\":" + session.getPlayerCount() + ","
-     *    f. Append: "\"maxPlayers\":" + session.getMaxPlayers() + ","
-     *    g. Append: "\"status\":\"" + session.getStatus() + "\""
-     *    h. Append "}"
-     *    i. Set first flag to false
-     * 4. Append "]" and return the string
+     * Each game's object is built by appendGameJson() and cached by its
+     * session; the array comes from getGameListSnapshot().
      * 
      * @return JSON string representing all games
      */
     public String getGameListJson() {
-        // TODO: Build JSON string manually
-        // Hint: Use StringBuilder for efficiency
-        
-        StringBuilder st = new StringBuilder();
+        return getGameListSnapshot().toJsonString();
+    }
 
-        st.append("[");
-        
-        boolean f = true;
+    /**
+     * The game list as of the last change. Unchanged games reuse the JSON
+     * their session cached, so only changed games are serialized again.
+     * 
+     * @return The current snapshot; shared and immutable
+     */
+    public GameListSnapshot getGameListSnapshot() {
+        // Read the version first: a change after this makes the result stale
+        // for the next reader, never current with old data
+        long version = listVersion.get();
+        GameListSnapshot current = listSnapshot.get();
+        if (current != null && current.getVersion() == version) {
+            return current;
+        }
+        List<GameSession> games = sessions.values();
+        String[] gameIds = new String[games.size()];
+        byte[][] fragments = new byte[games.size()][];
+        for (int i = 0; i < gameIds.length; i++) {
+            GameSession sesh = games.get(i);
+            gameIds[i] = sesh.getGameId();
+            fragments[i] = sesh.getListFragment();
+        }
+        GameListSnapshot built = new GameListSnapshot(version, gameIds, fragments);
+        listSnapshot.accumulateAndGet(built,
+                (old, next) -> old == null || next.getVersion() > old.getVersion() ? next : old);
+        return built;
+    }
 
-        for(GameSession sesh : sessions.values()) {
-            if(!f) {
-                st.append(",");
-            }
-            f = false;
-            st.append("{");
-            st.append("\"id\":\"").append(sesh.getGameId()).append("\",");
-            st.append("\"name\":\"").append(sesh.getGameName()).append("\",");
-            st.append("\"players\":").append(sesh.getPlayerCount()).append(",");
-            st.append("\"maxPlayers\":").append(sesh.getMaxPlayers()).append(",");
-            st.append("\"status\":\"").append(sesh.getStatus()).append("\"");
-            st.append("}");
-        }
-        st.append("]");
+    /**
+     * One game's entry in the game list
+     * 
+     * @param sesh The game
+     * @return {"id":...,"name":...,"players":...,"maxPlayers":...,"status":...}
+     */
+    public String getGameJson(GameSession sesh) {
+        StringBuilder st = new StringBuilder(96);
+        appendGameJson(st, sesh);
         return st.toString();
     }
 
+    private void appendGameJson(StringBuilder st, GameSession sesh) {
+        st.append("{");
+        st.append("\"id\":\"").append(sesh.getGameId()).append("\",");
+        st.append("\"name\":\"").append(sesh.getGameName()).append("\",");
+        st.append("\"players\":").append(sesh.getPlayerCount()).append(",");
+        st.append("\"maxPlayers\":").append(sesh.getMaxPlayers()).append(",");
+        st.append("\"status\":\"").append(sesh.getStatus()).append("\"");
+        st.append("}");
+    }
+
     /**
      * TODO 8: Broadcast to All Lobby Players (15 minutes)
      * 
@@ -284,21 +458,387 @@ public class GameLobbyManager {
      * 
      * Steps:
      * 1. Iterate through all ClientHandlers in the players map
-     * 2. For each handler, call handler.sendMessage(message)
+     * 2. For each handler, call handler.sendLobbyUpdate(message)
+     * 
+     * Lobby broadcasts are superseded by the next one, so a client that
+     * reads too slowly may skip some (see OutboundQueue).
      * 
      * @param message The message to broadcast
      */
     public void broadcastToLobby(String message) {
+        EncodedMessage encoded = EncodedMessage.of(message);
         for(ClientHandler handle : players.values()) {
-            handle.sendMessage(message);
+            handle.send(encoded, true);
         }
         
     }
 
+    /**
+     * Tells the lobby that the game list changed. The list is sent a moment
+     * later, together with any other changes made meanwhile (see
+     * LobbyPublisher).
+     */
+    public void publishGameList() {
+        listVersion.incrementAndGet();
+        publisher.markDirty();
+    }
+
+    /**
+     * Answers GET_GAMES for a client that takes lobby deltas
+     * 
+     * @param handler The requesting client
+     */
+    public void sendGameSnapshot(ClientHandler handler) {
+        publisher.sendSnapshot(handler);
+    }
+
+    /**
+     * Rebuilds the games from the latest snapshot and the event log after
+     * it, then logs to it from now on, compacting and snapshotting in the
+     * background
+     * 
+     * @param dir         The log directory, created if missing
+     * @param fsyncMillis How long logged events may wait to reach the disk
+     * @return Number of games recovered
+     */
+    public int startEventLog(Path dir, long fsyncMillis) throws IOException {
+        GameSnapshotter.Snapshot snapshot = GameSnapshotter.load(dir);
+        int recovered = recover(dir, snapshot);
+        GameEventLog log = new GameEventLog(dir, fsyncMillis);
+        eventLog = log;
+        LogCompactor compacting = null;
+        if (LogCompactor.COMPACT_MILLIS > 0) {
+            compacting = new LogCompactor(log, LogCompactor.COMPACT_MILLIS);
+            if (snapshot != null) {
+                compacting.keepFrom(snapshot.fromSequence);
+            }
+            compactor = compacting;
+        }
+        if (GameSnapshotter.SNAPSHOT_MILLIS > 0) {
+            snapshotter = new GameSnapshotter(this, log, compacting, GameSnapshotter.SNAPSHOT_MILLIS);
+        }
+        return recovered;
+    }
+
+    /**
+     * Replays an event log into the lobby. Games that had not started lose
+     * their players (they can simply join again), finished games are
+     * dropped, and games in progress keep each player's seat for RESUME.
+     * 
+     * @return Number of games recovered
+     */
+    int recover(Path dir) throws IOException {
+        return recover(dir, GameSnapshotter.load(dir));
+    }
+
+    /**
+     * Loads a snapshot, if any, and replays the log after it. A snapshotted
+     * game ignores its events up to its GAME_SNAPSHOT mark, since the
+     * snapshot already has them.
+     */
+    int recover(Path dir, GameSnapshotter.Snapshot snapshot) throws IOException {
+        // Compacted games left only their summary behind
+        long[] highest = {0, LogCompactor.highestGameId(dir)};
+        ConcurrentLongMap<GameSession> unmarked = new ConcurrentLongMap<>();
+        if (snapshot != null) {
+            highest[0] = snapshot.lastPlayerId;
+            highest[1] = Math.max(highest[1], snapshot.lastGameId);
+            snapshot.forEachGame(fields -> {
+                long gameId = fields.i64();
+                int required = fields.u8();
+                String name = fields.utf8(fields.varint());
+                GameSession sesh = new GameSession(IdAllocator.formatGameId(gameId), name, required, this);
+                sesh.restoreSnapshot(fields);
+                gamePlayers.put(gameId, new Members());
+                sessions.put(gameId, sesh);
+                unmarked.put(gameId, sesh);
+            });
+        }
+        GameEventLog.replay(dir, snapshot != null ? snapshot.fromSequence : 0, (type, gameId, fields) -> {
+            highest[1] = Math.max(highest[1], gameId);
+            if (unmarked.get(gameId) != null) {
+                if (type == GameEventLog.GAME_SNAPSHOT) {
+                    unmarked.remove(gameId);
+                }
+                return;
+            }
+            if (type == GameEventLog.GAME_CREATED) {
+                int required = fields.u8();
+                String id = IdAllocator.formatGameId(gameId);
+                gamePlayers.put(gameId, new Members());
+                sessions.put(gameId, new GameSession(id, fields.utf8Rest(), required, this));
+                return;
+            }
+            GameSession sesh = sessions.get(gameId);
+            if (sesh == null) {
+                return;
+            }
+            switch (type) {
+                case GameEventLog.PLAYER_JOINED: {
+                    long player = fields.i64();
+                    highest[0] = Math.max(highest[0], player);
+                    long token = fields.i64();
+                    sesh.restoreJoin(IdAllocator.formatPlayerId(player), token, fields.utf8Rest());
+                    break;
+                }
+                case GameEventLog.PLAYER_LEFT:
+                    sesh.restoreLeave(IdAllocator.formatPlayerId(fields.i64()));
+                    break;
+                case GameEventLog.GAME_STARTED:
+                    sesh.restoreStart(fields.varint());
+                    break;
+                case GameEventLog.GUESS_SCORED: {
+                    String player = IdAllocator.formatPlayerId(fields.i64());
+                    int guess = fields.varint();
+                    sesh.restoreGuess(player, guess, fields.u8());
+                    break;
+                }
+                case GameEventLog.TURN_ADVANCED:
+                    sesh.restoreTurn(fields.varint());
+                    break;
+                case GameEventLog.GAME_FINISHED:
+                    sesh.restoreFinish(fields.u8() != 0);
+                    break;
+                case GameEventLog.GAME_REMOVED:
+                    dropSession(gameId);
+                    break;
+                default:
+                    break;
+            }
+        });
+        ids.advancePast(highest[0], highest[1]);
+
+        for (GameSession sesh : sessions.values()) {
+            if (sesh.getFinished()) {
+                dropSession(sesh.getNumericId());
+            } else if (!sesh.isStarted()) {
+                for (String seat : sesh.getSeats()) {
+                    sesh.restoreLeave(seat);
+                }
+            }
+        }
+        publishGameList();
+        return sessions.size();
+    }
+
+    private void dropSession(long gameId) {
+        sessions.remove(gameId);
+        gamePlayers.remove(gameId);
+        if (scheduler != null) {
+            scheduler.unregister(gameId);
+        }
+    }
+
+    /**
+     * Gives a connected player back their seat in a recovered game. The
+     * connection takes over the player's old id.
+     * 
+     * @param currentId The id the connection got at CONNECT
+     * @param oldId     The id the player had before the restart
+     * @param token     The seat's resume token, sent as RESUME_TOKEN at join
+     * @param handler   The player's connection
+     * @return true if oldId held a vacant seat in the game with that token
+     *         and now has this connection; the caller still has to join it
+     *         to the game
+     */
+    public boolean resumePlayer(String currentId, String oldId, long token, GameSession sesh,
+            ClientHandler handler) {
+        long current = IdAllocator.parsePlayerId(currentId);
+        long old = IdAllocator.parsePlayerId(oldId);
+        if (old == IdAllocator.INVALID || !sesh.isVacant(oldId, token)
+                || players.putIfAbsent(old, handler) != null) {
+            return false;
+        }
+        players.remove(current, handler);
+        return true;
+    }
+
+    /**
+     * @return The event log, or null if games are not logged
+     */
+    GameEventLog getEventLog() {
+        return eventLog;
+    }
+
+    /**
+     * Picks where a new game runs its commands
+     * 
+     * @param gameId The game's numeric id
+     * @return Its mailbox, or null to run commands on the caller (lock mode)
+     */
+    SessionMailbox mailboxFor(long gameId) {
+        if (scheduler != null) {
+            return scheduler.register(gameId);
+        }
+        if ("actor".equals(SessionMailbox.MODE)) {
+            return new SessionMailbox(SessionMailbox.sharedPool());
+        }
+        return null;
+    }
+
+    /**
+     * @return The shard scheduler, or null unless in sharded mode
+     */
+    public SessionScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The metrics report, then the number of players and games, then
+     *         one line per shard in sharded mode, then lock statistics with
+     *         -Dmastermind.lockStats=true
+     */
+    public List<String> getStatsReport() {
+        List<String> lines = metrics.report();
+        lines.add("players=" + players.size() + " sessions=" + sessions.size());
+        if (scheduler != null) {
+            for (SessionScheduler.ShardStats shard : scheduler.getStats()) {
+                lines.add(shard.toString());
+            }
+        }
+        if (InstrumentedLock.ENABLED) {
+            lines.addAll(InstrumentedLock.report());
+            // The games whose locks are held longest at the 99th percentile
+            GameSession[] top = new GameSession[LOCK_REPORT_GAMES];
+            long[] topHold = new long[LOCK_REPORT_GAMES];
+            for (GameSession sesh : sessions.values()) {
+                long hold = sesh.getInstrumentedLock().getHolds().getPercentile(99);
+                for (int i = 0; i < top.length; i++) {
+                    if (top[i] == null || hold > topHold[i]) {
+                        System.arraycopy(top, i, top, i + 1, top.length - i - 1);
+                        System.arraycopy(topHold, i, topHold, i + 1, top.length - i - 1);
+                        top[i] = sesh;
+                        topHold[i] = hold;
+                        break;
+                    }
+                }
+            }
+            for (GameSession sesh : top) {
+                if (sesh != null) {
+                    InstrumentedLock lock = sesh.getInstrumentedLock();
+                    lines.add("lock " + sesh.getGameId() + " wait us " + lock.getWaits().format(1000));
+                    lines.add("lock " + sesh.getGameId() + " hold us " + lock.getHolds().format(1000));
+                }
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Prints getStatsReport() to standard output every so often
+     * 
+     * @param millis Time between reports
+     */
+    public void startStatsDump(long millis) {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "StatsDump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(() -> {
+            StringBuilder report = new StringBuilder("--- stats ---\n");
+            for (String line : getStatsReport()) {
+                report.append(line).append('\n');
+            }
+            System.out.print(report);
+        }, millis, millis, TimeUnit.MILLISECONDS);
+        statsDump = timer;
+    }
+
+    IdAllocator getIdAllocator() {
+        return ids;
+    }
+
+    /**
+     * @return A snapshot of the current games
+     */
+    Collection<GameSession> getSessions() {
+        return sessions.values();
+    }
+
+    /**
+     * @return A snapshot of the connected players
+     */
+    Collection<ClientHandler> getLobbyPlayers() {
+        return players.values();
+    }
+
+    /**
+     * Stops the background lobby publisher and any shard threads, and
+     * closes the event log with its compactor and snapshotter and stops
+     * the stats dump
+     */
+    public void shutdown() {
+        publisher.shutdown();
+        ScheduledExecutorService dump = statsDump;
+        if (dump != null) {
+            statsDump = null;
+            dump.shutdownNow();
+        }
+        GameSnapshotter snapshotting = snapshotter;
+        if (snapshotting != null) {
+            snapshotter = null;
+            snapshotting.shutdown();
+        }
+        LogCompactor compacting = compactor;
+        if (compacting != null) {
+            compactor = null;
+            compacting.shutdown();
+        }
+        GameEventLog log = eventLog;
+        if (log != null) {
+            eventLog = null;
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.err.println("Error closing game event log: " + e.getMessage());
+            }
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Ids of the players in one game. Guarded by its own monitor; closed
+     * once the game is removed so a late join cannot add a stale entry.
+     */
+    private static final class Members {
+        long[] ids = new long[4];
+        int count = 0;
+        boolean closed = false;
+
+        void add(long id) {
+            for (int i = 0; i < count; i++) {
+                if (ids[i] == id) {
+                    return;
+                }
+            }
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = id;
+        }
+
+        void remove(long id) {
+            for (int i = 0; i < count; i++) {
+                if (ids[i] == id) {
+                    ids[i] = ids[--count];
+                    return;
+                }
+            }
+        }
+    }
+
     /**
      * Get a specific player's handler (already implemented)
      */
     public ClientHandler getPlayer(String playerId) {
-        return players.get(playerId);
+        long id = IdAllocator.parsePlayerId(playerId);
+        return id == IdAllocator.INVALID ? null : players.get(id);
     }
 }
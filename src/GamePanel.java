@@ -34,6 +34,7 @@ public class GamePanel extends JPanel {
     private JTextArea chatArea;
     private JTextField chatInput;
     private JLabel turnLabel;
+    private JLabel remainingLabel;
     private Map<String, String> guessTracker = new HashMap<>();
     private Map<String, Color> colorMap = new HashMap<>();
 
@@ -167,6 +168,10 @@ public class GamePanel extends JPanel {
         historyScroll.setPreferredSize(new Dimension(400, 150));
         panel.add(historyScroll);
 
+        remainingLabel = new JLabel(CodeSpace.STANDARD.size() + " codes remain");
+        panel.add(Box.createRigidArea(new Dimension(0, 5)));
+        panel.add(remainingLabel);
+
         return panel;
     }
 
@@ -465,6 +470,9 @@ public class GamePanel extends JPanel {
      * - Add chat message: "Game over! The code was: " + secretCode
      * - Show dialog with the secret code
      * 
+     * "CODES_REMAINING:gameId:count"
+     * - Show how many codes still fit your own guess results
+     * 
      * "CHAT_MESSAGE:gameId:senderName:message"
      * - Add to chat: senderName + ": " + message
      * 
@@ -656,6 +664,15 @@ public class GamePanel extends JPanel {
                 }
                 break;
             }
+            case "CODES_REMAINING": {
+                int index2 = data.indexOf(':');
+                if (index2 == -1 || !data.substring(0, index2).equals(gameId)) {
+                    break;
+                }
+                String count = data.substring(index2 + 1);
+                remainingLabel.setText(count + (count.equals("1") ? " code remains" : " codes remain"));
+                break;
+            }
             case "CHAT_MESSAGE": {
                 int index2 = data.indexOf(':');
                 if (index2 == -1) {
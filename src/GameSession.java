@@ -12,20 +12,37 @@
  * ESTIMATED TIME: 2-3 hours
  */
 
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.locks.*;
 
 public class GameSession {
+    private static final CodeScorer SCORER = CodeScorer.forSpace(CodeSpace.STANDARD);
+    private static final SecureRandom TOKENS = new SecureRandom();
+
     private final String gameId;
+    // gameId as sent in binary frames, see WireProtocol
+    private final long numericId;
     private final String gameName;
     private final int requiredPlayers;
     private final GameLobbyManager lobby;
-    private final ReentrantLock lock = new ReentrantLock();
+    // Broadcasts under it only queue messages (see OutboundQueue), so holds
+    // are short. A ReentrantLock rather than synchronized so that
+    // -Dmastermind.lockStats=true can swap in an InstrumentedLock.
+    private final ReentrantLock lock;
+    // Runs this game's commands in order off the network threads, or null
+    // to run them on the caller (see SessionMailbox)
+    private final SessionMailbox mailbox;
 
     private final Map<String, ClientHandler> players = new LinkedHashMap<>();
     private final Map<String, Integer> guessCount = new HashMap<>();
     private final List<String> turnOrder = new ArrayList<>();
     private final Map<String, String> playerNames = new HashMap<>();
+    // Secret handed to each seat at join, so only its player can RESUME it
+    private final Map<String, Long> resumeTokens = new HashMap<>();
+    // Codes still consistent with each player's own guess results
+    private final Map<String, CandidateSet> candidates = new HashMap<>();
 
     private GameState gameState;
     private String secretCode;
@@ -34,12 +51,17 @@ public class GameSession {
     private boolean started = false;
     private boolean hasWinner = false;
     private boolean isFinished = false;
+    // This game's entry in the game list, rebuilt after the next change
+    private volatile byte[] listFragment;
 
     public GameSession(String gameId, String gameName, int requiredPlayers, GameLobbyManager lobby) {
         this.gameId = gameId;
+        this.numericId = IdAllocator.parseGameId(gameId);
         this.gameName = gameName;
         this.requiredPlayers = requiredPlayers;
         this.lobby = lobby;
+        this.mailbox = lobby.mailboxFor(numericId);
+        this.lock = InstrumentedLock.ENABLED ? new InstrumentedLock(gameId) : new ReentrantLock();
     }
 
     /**
@@ -70,14 +92,29 @@ public class GameSession {
             if (players.containsKey(playerId)) {
                 return false;
             }
-            if (started || players.size() >= requiredPlayers) {
+            if (playerNames.containsKey(playerId)) {
+                // Taking back a seat kept across a restart (see isVacant)
+                players.put(playerId, handler);
+                listChanged();
+                return true;
+            }
+            // turnOrder also counts seats kept for players not back yet
+            if (started || turnOrder.size() >= requiredPlayers) {
                 return false;
             }
             players.put(playerId, handler);
             guessCount.put(playerId, 0);
             turnOrder.add(playerId);
             playerNames.put(playerId, handler.getPlayerName());
-            lobby.broadcastToLobby("GAME_LIST:" + lobby.getGameListJson());
+            candidates.put(playerId, CandidateSet.all(CodeSpace.STANDARD));
+            long token = TOKENS.nextLong();
+            resumeTokens.put(playerId, token);
+            GameEventLog log = lobby.getEventLog();
+            if (log != null) {
+                log.append(GameEventLog.playerJoined(numericId, IdAllocator.parsePlayerId(playerId),
+                        token, handler.getPlayerName()));
+            }
+            listChanged();
             return true;
         } finally {
             lock.unlock();
@@ -106,15 +143,17 @@ public class GameSession {
         // Try block for multithreading
         try {
             players.remove(playerId);
-            guessCount.remove(playerId);
-            turnOrder.remove(playerId);
-            playerNames.remove(playerId);
+            if (playerNames.containsKey(playerId)) {
+                GameEventLog log = lobby.getEventLog();
+                if (log != null) {
+                    log.append(GameEventLog.playerLeft(numericId, IdAllocator.parsePlayerId(playerId)));
+                }
+            }
+            removeSeat(playerId);
             if (players.size() <= 0) {
                 lobby.removeSession(gameId);
-            } else if (started && currentTurnIndex >= turnOrder.size()) {
-                currentTurnIndex = 0;
             }
-            lobby.broadcastToLobby("GAME_LIST:" + lobby.getGameListJson());
+            listChanged();
         } finally {
             lock.unlock();
         }
@@ -176,12 +215,17 @@ public class GameSession {
             status = "In Progress";
             secretCode = SecretCodeGenerator.getInstance().getNewSecretCode();
             gameState = new GameState(secretCode);
+            GameEventLog log = lobby.getEventLog();
+            if (log != null) {
+                log.append(GameEventLog.gameStarted(numericId, gameState.getPackedSecret()));
+            }
             if (!turnOrder.isEmpty()) {
                 String player1 = turnOrder.get(0);
                 broadcast("GAME_STARTED:" + gameId + ":" + player1, null);
-                broadcast("TURN_UPDATE:" + gameId + ":" + player1, null);
+                broadcastTurn(player1);
             }
-            lobby.broadcastToLobby("GAME_LIST:" + lobby.getGameListJson());
+            FlightEvents.session(gameId, "started", players.size());
+            listChanged();
         } finally {
             lock.unlock();
         }
@@ -201,9 +245,12 @@ public class GameSession {
      * 4. Verify it's this player's turn, if not send "ERROR:Not your turn" and
      * return
      * 5. Validate the guess using isValidGuess(), if invalid send error and return
-     * 6. Evaluate guess: gameState.evaluateGuess(guess) returns int[]{black, white}
+     * 6. Evaluate guess: gameState.evaluate(packedGuess) returns a packed score
+     * (CodeSpace.blacks / CodeSpace.whites), no allocation on this path
      * 7. Increment and store guess count for this player
      * 8. Broadcast result: "GUESS_RESULT:gameId:playerName:guessNum:black:white"
+     * and narrow the player's candidate set, telling them
+     * "CODES_REMAINING:gameId:count"
      * 9. Check if player won (black pegs == GameConfiguration.pegNumber):
      * a. Set status = "Finished"
      * b. Broadcast "GAME_WON:gameId:winnerName:guessCount"
@@ -221,6 +268,17 @@ public class GameSession {
      * @param guess    The guess string (e.g., "BGRP")
      */
     public void processGuess(String playerId, String guess) {
+        processGuess(playerId, isValidGuess(guess) ? CodeSpace.STANDARD.encode(guess) : CodeSpace.INVALID);
+    }
+
+    /**
+     * Same as processGuess(String, String) for a guess that is already
+     * packed, as ClientHandler parses it
+     * 
+     * @param playerId    The ID of the player making the guess
+     * @param packedGuess The packed guess, or CodeSpace.INVALID
+     */
+    public void processGuess(String playerId, int packedGuess) {
         // TODO: Check if game has started
 
         // TODO: Verify it's this player's turn
@@ -238,12 +296,22 @@ public class GameSession {
         // TODO: Check if player is out of guesses
 
         // TODO: Advance turn or end game
+        FlightEvents.GuessEvent event = new FlightEvents.GuessEvent();
+        event.begin();
+        // Phase times only while a recording wants the event
+        boolean timed = event.isEnabled();
+        long requested = timed ? System.nanoTime() : 0;
+        long evaluated = 0;
         lock.lock();
+        long acquired = timed ? System.nanoTime() : 0;
+        event.outcome = "rejected";
         // try block for multithreading
         try {
             ClientHandler handle = players.get(playerId);
             if (started == false) {
-                handle.sendMessage("ERROR:Game not started");
+                if (handle != null) {
+                    handle.sendMessage("ERROR:Game not started");
+                }
                 return;
             }
             if (turnOrder.isEmpty() || players.containsKey(playerId) == false) {
@@ -258,32 +326,53 @@ public class GameSession {
                 }
             }
 
-            if (!isValidGuess(guess)) {
+            if (packedGuess == CodeSpace.INVALID) {
                 if (handle != null) {
                     handle.sendMessage("ERROR:Not valid guess");
                 }
                 return;
             }
 
-            int[] evaluations = gameState.evaluateGuess(guess);
-            int white = evaluations[1];
-            int black = evaluations[0];
+            int score = gameState.evaluate(packedGuess);
+            int white = CodeSpace.whites(score);
+            int black = CodeSpace.blacks(score);
             int gCount = guessCount.get(playerId);
             gCount++;
             guessCount.put(playerId, gCount);
+            int remaining = candidates.get(playerId).retain(SCORER, packedGuess, score);
+            GameEventLog log = lobby.getEventLog();
+            if (log != null) {
+                log.append(GameEventLog.guessScored(numericId, IdAllocator.parsePlayerId(playerId), packedGuess, score));
+            }
+            evaluated = timed ? System.nanoTime() : 0;
+            event.outcome = "scored";
 
             String name = playerNames.get(playerId);
             if (name == null || name.isEmpty()) {
                 name = "Player";
             }
 
-            broadcast("GUESS_RESULT:" + gameId + ":" + name + ":" + gCount + ":" + black + ":" + white, null);
+            // Binary clients get frames built from these values, not parsed
+            // back out of the text
+            String player = name;
+            int number = gCount;
+            String result = "GUESS_RESULT:" + gameId + ":" + name + ":" + gCount + ":" + black + ":" + white;
+            broadcast(EncodedMessage.of(result,
+                    () -> WireProtocol.guessResult(numericId, player, number, black, white)), null);
+            handle.sendMessage("CODES_REMAINING:" + gameId + ":" + remaining,
+                    () -> WireProtocol.codesRemaining(numericId, remaining));
 
             //gCount and number of pegs determines the next action
             if (black == GameConfiguration.pegNumber) {
                 hasWinner = true;
                 isFinished = true;
                 status = "Finished";
+                if (log != null) {
+                    log.append(GameEventLog.gameFinished(numericId, true));
+                }
+                event.outcome = "won";
+                FlightEvents.session(gameId, "finished", players.size());
+                listChanged();
                 broadcast("GAME_WON:" + gameId + ":" + name + ":" + gCount + ":" + secretCode, null);
                 //broadcast("GAME_OVER:" + gameId + ":" + secretCode, null);
                 return;
@@ -301,6 +390,12 @@ public class GameSession {
                 if (checkGuess == true) {
                     status = "Finished";
                     isFinished = true;
+                    if (log != null) {
+                        log.append(GameEventLog.gameFinished(numericId, false));
+                    }
+                    event.outcome = "lost";
+                    FlightEvents.session(gameId, "finished", players.size());
+                    listChanged();
                     broadcast("GAME_OVER:" + gameId + ":" + secretCode, null);
                     return;
                 }
@@ -309,7 +404,19 @@ public class GameSession {
             }
 
         } finally {
+            long released = timed ? System.nanoTime() : 0;
             lock.unlock();
+            // Here so the early returns are recorded too
+            if (timed && event.shouldCommit()) {
+                event.gameId = gameId;
+                event.playerId = playerId;
+                event.lockWait = acquired - requested;
+                if (!"rejected".equals(event.outcome)) {
+                    event.evaluationTime = evaluated - acquired;
+                    event.broadcastTime = released - evaluated;
+                }
+                event.commit();
+            }
         }
     }
 
@@ -335,7 +442,11 @@ public class GameSession {
             String nextPlayer = turnOrder.get(currentTurnIndex);
             int gcount = guessCount.get(nextPlayer);
             if (gcount < GameConfiguration.guessNumber && players.containsKey(nextPlayer)) {
-                broadcast("TURN_UPDATE:" + gameId + ":" + nextPlayer, null);
+                GameEventLog log = lobby.getEventLog();
+                if (log != null) {
+                    log.append(GameEventLog.turnAdvanced(numericId, currentTurnIndex));
+                }
+                broadcastTurn(nextPlayer);
                 return;
             }
         }
@@ -397,12 +508,50 @@ public class GameSession {
      */
     // AI Helped with for loop logic
     public void broadcast(String message, String excludePlayerId) {
+        broadcast(EncodedMessage.of(message), excludePlayerId);
+    }
+
+    /**
+     * Sends a message to the players in the game, encoded once per protocol
+     * rather than once per player
+     * 
+     * @param message         The message in both forms, see EncodedMessage
+     * @param excludePlayerId Player ID to exclude, or null to send to all
+     */
+    void broadcast(EncodedMessage message, String excludePlayerId) {
+        int sent = 0;
         for (Map.Entry<String, ClientHandler> player : players.entrySet()) {
             String id = player.getKey();
             if (excludePlayerId == null || !id.equals(excludePlayerId)) {
-                player.getValue().sendMessage(message);
+                player.getValue().send(message, false);
+                sent++;
             }
         }
+        lobby.getMetrics().broadcast(sent);
+    }
+
+    /**
+     * Like broadcast(), for callers that do not hold the lock
+     * 
+     * @param message         The message in both forms, see EncodedMessage
+     * @param excludePlayerId Player ID to exclude, or null to send to all
+     */
+    public void broadcastFrame(EncodedMessage message, String excludePlayerId) {
+        lock.lock();
+        try {
+            broadcast(message, excludePlayerId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Broadcasts TURN_UPDATE for playerId. Called with the lock held.
+     */
+    private void broadcastTurn(String playerId) {
+        long player = IdAllocator.parsePlayerId(playerId);
+        broadcast(EncodedMessage.of("TURN_UPDATE:" + gameId + ":" + playerId,
+                () -> WireProtocol.turnUpdate(numericId, player)), null);
     }
 
     // Getters - already implemented
@@ -415,6 +564,13 @@ public class GameSession {
         return gameId;
     }
 
+    /**
+     * @return The game id as a number, as binary protocol clients send it
+     */
+    public long getNumericId() {
+        return numericId;
+    }
+
     /**
      * Returns the game's display name
      * 
@@ -451,6 +607,276 @@ public class GameSession {
         return status;
     }
 
+    /**
+     * Removes a player from the turn order and their per-player state.
+     * Called with the lock held.
+     */
+    private void removeSeat(String playerId) {
+        guessCount.remove(playerId);
+        turnOrder.remove(playerId);
+        playerNames.remove(playerId);
+        resumeTokens.remove(playerId);
+        candidates.remove(playerId);
+        if (started && currentTurnIndex >= turnOrder.size()) {
+            currentTurnIndex = 0;
+        }
+    }
+
+    // Recovery: GameLobbyManager.recover() replays GameEventLog events through
+    // these. They change state like the methods above but send nothing.
+
+    void restoreJoin(String playerId, long token, String name) {
+        lock.lock();
+        try {
+            guessCount.put(playerId, 0);
+            turnOrder.add(playerId);
+            playerNames.put(playerId, name);
+            resumeTokens.put(playerId, token);
+            candidates.put(playerId, CandidateSet.all(CodeSpace.STANDARD));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void restoreLeave(String playerId) {
+        lock.lock();
+        try {
+            removeSeat(playerId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void restoreStart(int packedSecret) {
+        lock.lock();
+        try {
+            started = true;
+            status = "In Progress";
+            secretCode = CodeSpace.STANDARD.decode(packedSecret);
+            gameState = new GameState(secretCode);
+            currentTurnIndex = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void restoreGuess(String playerId, int packedGuess, int score) {
+        lock.lock();
+        try {
+            Integer count = guessCount.get(playerId);
+            if (count != null) {
+                guessCount.put(playerId, count + 1);
+                candidates.get(playerId).retain(SCORER, packedGuess, score);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void restoreTurn(int turnIndex) {
+        lock.lock();
+        try {
+            currentTurnIndex = turnIndex;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void restoreFinish(boolean winner) {
+        lock.lock();
+        try {
+            hasWinner = winner;
+            isFinished = true;
+            status = "Finished";
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Snapshots: GameSnapshotter writes each game with snapshot() and
+    // GameLobbyManager.recover() reads it back with restoreSnapshot().
+
+    /**
+     * Encodes this game for a snapshot and appends GAME_SNAPSHOT to the log
+     * under the same lock hold, so the game's events logged before that
+     * mark are exactly the ones the snapshot already holds
+     *
+     * @param log The event log, or null
+     * @return The game as a GameSnapshotter.GAME frame, or null if it is
+     *         finished and will not be recovered anyway
+     */
+    byte[] snapshot(GameEventLog log) {
+        lock.lock();
+        try {
+            if (isFinished) {
+                return null;
+            }
+            if (log != null) {
+                log.append(GameEventLog.gameSnapshot(numericId));
+            }
+            // removeSession() logs GAME_REMOVED after taking the game out of
+            // the lobby, so a game still in it now is removed after the mark
+            if (lobby.getSession(numericId) != this) {
+                return null;
+            }
+            byte[] name = gameName.getBytes(StandardCharsets.UTF_8);
+            WireProtocol.Writer out = new WireProtocol.Writer(GameSnapshotter.GAME)
+                    .i64(numericId).u8(requiredPlayers)
+                    .varint(name.length).bytes(name, 0, name.length)
+                    .u8(started ? 1 : 0);
+            if (started) {
+                out.varint(CodeSpace.STANDARD.encode(secretCode)).varint(currentTurnIndex);
+            }
+            out.varint(turnOrder.size());
+            for (String seat : turnOrder) {
+                byte[] playerName = playerNames.get(seat).getBytes(StandardCharsets.UTF_8);
+                out.i64(IdAllocator.parsePlayerId(seat)).i64(resumeTokens.get(seat))
+                        .varint(playerName.length).bytes(playerName, 0, playerName.length)
+                        .varint(guessCount.get(seat));
+                candidates.get(seat).writeTo(out);
+            }
+            return out.finish();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Restores what snapshot() wrote after the id, player count and name
+     *
+     * @throws IllegalArgumentException if the frame is malformed
+     */
+    void restoreSnapshot(WireProtocol.Reader in) {
+        lock.lock();
+        try {
+            if (in.u8() != 0) {
+                restoreStart(in.varint());
+                currentTurnIndex = in.varint();
+            }
+            int seats = in.varint();
+            for (int i = 0; i < seats; i++) {
+                String playerId = IdAllocator.formatPlayerId(in.i64());
+                turnOrder.add(playerId);
+                resumeTokens.put(playerId, in.i64());
+                playerNames.put(playerId, in.utf8(in.varint()));
+                guessCount.put(playerId, in.varint());
+                candidates.put(playerId, CandidateSet.readFrom(CodeSpace.STANDARD, in));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The lock's wait and hold statistics, or null unless
+     *         -Dmastermind.lockStats=true
+     */
+    public InstrumentedLock getInstrumentedLock() {
+        return lock instanceof InstrumentedLock ? (InstrumentedLock) lock : null;
+    }
+
+    /**
+     * @return Players holding a seat, whether connected or not, in turn order
+     */
+    List<String> getSeats() {
+        lock.lock();
+        try {
+            return new ArrayList<>(turnOrder);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A seat is vacant when its player was in the game before a restart and
+     * has not taken it back with RESUME yet
+     * 
+     * @param token The seat's resume token, see getResumeToken()
+     * @return true if playerId holds a vacant seat in this game and token
+     *         is its resume token
+     */
+    public boolean isVacant(String playerId, long token) {
+        lock.lock();
+        try {
+            Long expected = resumeTokens.get(playerId);
+            return expected != null && expected == token && !players.containsKey(playerId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The secret playerId needs to RESUME its seat after a restart,
+     *         or null if it holds no seat here
+     */
+    public Long getResumeToken(String playerId) {
+        lock.lock();
+        try {
+            return resumeTokens.get(playerId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The player whose turn it is, or null before the game starts
+     */
+    public String getCurrentPlayer() {
+        lock.lock();
+        try {
+            return started && !turnOrder.isEmpty() ? turnOrder.get(currentTurnIndex) : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs a command against this game: queued on its mailbox in actor mode,
+     * otherwise right away on the calling thread. Commands from one thread
+     * run in the order they were given.
+     * 
+     * @param command What to do, e.g. () -> processGuess(id, guess)
+     */
+    public void execute(Runnable command) {
+        if (mailbox == null) {
+            command.run();
+        } else {
+            mailbox.execute(command);
+        }
+    }
+
+    /**
+     * This game's entry in the lobby's game list as UTF-8 JSON, built under
+     * the lock so it never mixes two states. The same array is returned
+     * until the game changes.
+     * 
+     * @return The fragment; shared, do not modify
+     */
+    public byte[] getListFragment() {
+        byte[] fragment = listFragment;
+        if (fragment != null) {
+            return fragment;
+        }
+        lock.lock();
+        try {
+            if (listFragment == null) {
+                listFragment = lobby.getGameJson(this).getBytes(StandardCharsets.UTF_8);
+            }
+            return listFragment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drops the cached list entry and tells the lobby. Called with the lock
+     * held, after a change that shows in the game list.
+     */
+    private void listChanged() {
+        listFragment = null;
+        lobby.publishGameList();
+    }
+
     /**
      * Gets names from the list already given
      * 
@@ -482,6 +908,13 @@ public class GameSession {
         return isFinished;
     }
 
+    /**
+     * @return true once the game has started
+     */
+    public boolean isStarted() {
+        return started;
+    }
+
     /**
      * Says if its a win or draw
      * 
@@ -491,6 +924,39 @@ public class GameSession {
         return hasWinner;
     }
 
+    /**
+     * How many codes are still consistent with a player's guess results
+     * 
+     * @param playerId The player to ask about
+     * @return remaining code count, or -1 if the player is not in this game
+     */
+    public int getRemainingCodes(String playerId) {
+        lock.lock();
+        try {
+            CandidateSet set = candidates.get(playerId);
+            return set == null ? -1 : set.count();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies a player's remaining candidates, e.g. to compute a hint with
+     * KnuthSolver.nextGuess() without replaying their guesses
+     * 
+     * @param playerId The player to ask about
+     * @return a copy of the candidate set, or null if the player is not in this game
+     */
+    public CandidateSet getCandidates(String playerId) {
+        lock.lock();
+        try {
+            CandidateSet set = candidates.get(playerId);
+            return set == null ? null : set.copy();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Can tell if the Game session has no players
      * 
@@ -0,0 +1,236 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * GameSnapshotter
+ *
+ * This class periodically writes every live game to one binary file, so a
+ * restart loads that file and replays only the end of the event log
+ * instead of all of it.
+ *
+ * Nothing is stopped while a snapshot is taken. Each game is encoded under
+ * its own lock (GameSession.snapshot()), which takes microseconds, and the
+ * frame is then written out with no lock held. In the same lock hold the
+ * game appends a GAME_SNAPSHOT event to the log. Recovery skips a
+ * snapshotted game's events until it sees that mark, and applies the ones
+ * after it, so games changing while the snapshot runs come back exactly.
+ *
+ * The file is a run of WireProtocol frames:
+ *   HEADER varint version, i64 first log segment to replay,
+ *          i64 last player id, i64 last game id
+ *   GAME   one per live game, see GameSession.snapshot()
+ *   END    varint number of games
+ * It is written aside, forced and renamed over the previous snapshot, so
+ * a crash leaves either the old file or the new one. A file that does not
+ * read back whole is ignored and the full log is replayed.
+ *
+ * With -Dmastermind.snapshotMs=N a snapshot is taken every N ms (default
+ * 30000, 0 turns it off).
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class GameSnapshotter {
+    public static final long SNAPSHOT_MILLIS = Long.getLong("mastermind.snapshotMs", 30_000);
+    public static final String SNAPSHOT_FILE = "snapshot.bin";
+    // Frame opcodes in a snapshot file
+    static final byte HEADER = 1;
+    static final byte GAME = 2;
+    static final byte END = 3;
+    private static final int VERSION = 2;
+
+    private final GameLobbyManager lobby;
+    private final GameEventLog log;
+    // Told where the snapshot starts so it keeps the tail intact, or null
+    private final LogCompactor compactor;
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param lobby          The games to snapshot
+     * @param log            Their event log; the snapshot goes in its
+     *                       directory
+     * @param compactor      The log's compactor, or null
+     * @param snapshotMillis How often to snapshot, or 0 for only on
+     *                       snapshot()
+     */
+    public GameSnapshotter(GameLobbyManager lobby, GameEventLog log, LogCompactor compactor, long snapshotMillis) {
+        this.lobby = lobby;
+        this.log = log;
+        this.compactor = compactor;
+        if (snapshotMillis > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "GameSnapshotter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.scheduleWithFixedDelay(this::snapshotQuietly, snapshotMillis, snapshotMillis, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    public void shutdown() {
+        if (timer != null) {
+            timer.shutdownNow();
+            try {
+                timer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException e) {
+            System.err.println("Error writing game snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes every live game to the snapshot file
+     *
+     * @return Number of games written
+     */
+    public synchronized int snapshot() throws IOException {
+        Path dir = log.getDirectory();
+        // Every GAME_SNAPSHOT mark lands in this segment or a later one, and
+        // so does every game created from here on
+        long from = log.getActiveSequence();
+        IdAllocator ids = lobby.getIdAllocator();
+        Path aside = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        int games = 0;
+        try (FileChannel channel = FileChannel.open(aside, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            out.write(new WireProtocol.Writer(HEADER).varint(VERSION).i64(from)
+                    .i64(ids.lastPlayerId()).i64(ids.lastGameId()).finish());
+            for (GameSession sesh : lobby.getSessions()) {
+                byte[] game = sesh.snapshot(log);
+                if (game != null) {
+                    out.write(game);
+                    games++;
+                }
+            }
+            out.write(new WireProtocol.Writer(END).varint(games).finish());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(aside, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        if (compactor != null) {
+            compactor.keepFrom(from);
+        }
+        return games;
+    }
+
+    /**
+     * Reads the snapshot in a log directory
+     *
+     * @return The snapshot, or null if there is none or it is damaged
+     */
+    public static Snapshot load(Path dir) throws IOException {
+        Path file = dir.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        byte[] data = Files.readAllBytes(file);
+        try {
+            return Snapshot.parse(data);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring damaged snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * A snapshot file read back whole
+     */
+    public static class Snapshot {
+        // First log segment holding events the snapshot does not have
+        public final long fromSequence;
+        public final long lastPlayerId;
+        public final long lastGameId;
+        private final byte[] data;
+        // Body start and end of each GAME frame, in pairs
+        private final int[] games;
+
+        private Snapshot(long fromSequence, long lastPlayerId, long lastGameId, byte[] data, int[] games) {
+            this.fromSequence = fromSequence;
+            this.lastPlayerId = lastPlayerId;
+            this.lastGameId = lastGameId;
+            this.data = data;
+            this.games = games;
+        }
+
+        /**
+         * Checks every frame before handing any out, so a torn file is
+         * rejected as a whole
+         */
+        static Snapshot parse(byte[] data) {
+            int pos = 0;
+            WireProtocol.Reader header = null;
+            int[] games = new int[64];
+            int count = 0;
+            boolean ended = false;
+            while (pos < data.length && !ended) {
+                long frame = WireProtocol.header(data, pos, data.length);
+                int start = pos + (int) (frame >>> 32);
+                int end = start + (int) frame;
+                if (frame < 0 || end > data.length) {
+                    throw new IllegalArgumentException("truncated at " + pos);
+                }
+                WireProtocol.Reader body = new WireProtocol.Reader(data, start + 1, end);
+                byte opcode = data[start];
+                if (header == null) {
+                    if (opcode != HEADER || body.varint() != VERSION) {
+                        throw new IllegalArgumentException("not a version " + VERSION + " snapshot");
+                    }
+                    header = body;
+                } else if (opcode == GAME) {
+                    if (2 * count + 2 > games.length) {
+                        games = Arrays.copyOf(games, games.length * 2);
+                    }
+                    games[2 * count] = start + 1;
+                    games[2 * count + 1] = end;
+                    count++;
+                } else if (opcode == END && body.varint() == count) {
+                    ended = true;
+                } else {
+                    throw new IllegalArgumentException("unexpected frame at " + pos);
+                }
+                pos = end;
+            }
+            if (!ended) {
+                throw new IllegalArgumentException("no end frame");
+            }
+            return new Snapshot(header.i64(), header.i64(), header.i64(), data,
+                    Arrays.copyOf(games, 2 * count));
+        }
+
+        public int size() {
+            return games.length / 2;
+        }
+
+        /**
+         * Hands out each game's fields, starting with its id, player count
+         * and name (see GameSession.snapshot())
+         */
+        public void forEachGame(Consumer<WireProtocol.Reader> action) {
+            for (int i = 0; i < games.length; i += 2) {
+                action.accept(new WireProtocol.Reader(data, games[i], games[i + 1]));
+            }
+        }
+    }
+}
@@ -2,18 +2,57 @@
  * GameState
  * 
  * This class evaluates guesses against the secret code.
+ * The secret is also kept packed (see CodeSpace) so the server can score
+ * guesses without allocating.
  */
 
 public class GameState {
     private final String secretCode;
+    private final int packedSecret;
     
     public GameState(String secretCode) {
         this.secretCode = secretCode;
+        this.packedSecret = CodeSpace.STANDARD.encode(secretCode);
+    }
+    
+    /**
+     * Evaluates a packed guess against the secret code
+     * 
+     * No objects are created, so this is safe to call on the hot path.
+     * Uses the precomputed FeedbackTable when it is enabled.
+     * 
+     * @param guess The packed guess (see CodeSpace.encode), must be valid
+     * @return Packed score, read it with CodeSpace.blacks() and CodeSpace.whites()
+     */
+    public int evaluate(int guess) {
+        FeedbackTable table = FeedbackTable.standard();
+        if (table != null) {
+            return table.score(packedSecret, guess);
+        }
+        return CodeSpace.STANDARD.score(packedSecret, guess);
     }
     
     /**
      * Evaluates a guess against the secret code
      * 
+     * Guesses made of standard colors go through the packed scorer, anything
+     * else falls back to comparing characters.
+     * 
+     * @param guess The player's guess (same length as secretCode)
+     * @return int array where [0] = black pegs, [1] = white pegs
+     */
+    public int[] evaluateGuess(String guess) {
+        int packedGuess = CodeSpace.STANDARD.encode(guess);
+        if (packedSecret != CodeSpace.INVALID && packedGuess != CodeSpace.INVALID) {
+            int score = evaluate(packedGuess);
+            return new int[]{CodeSpace.blacks(score), CodeSpace.whites(score)};
+        }
+        return compareCharacters(guess);
+    }
+    
+    /**
+     * Compares a guess to the secret character by character
+     * 
      * Algorithm:
      * 1. First pass: Find exact matches (correct color, correct position) -> black pegs
      * 2. Mark matched positions to avoid counting them twice
@@ -22,7 +61,7 @@ public class GameState {
      * @param guess The player's guess (same length as secretCode)
      * @return int array where [0] = black pegs, [1] = white pegs
      */
-    public int[] evaluateGuess(String guess) {
+    private int[] compareCharacters(String guess) {
         int blackPegs = 0;
         int whitePegs = 0;
         
@@ -59,4 +98,11 @@ public class GameState {
     public String getSecretCode() {
         return secretCode;
     }
+    
+    /**
+     * @return The packed secret, or CodeSpace.INVALID if it uses unknown colors
+     */
+    public int getPackedSecret() {
+        return packedSecret;
+    }
 }
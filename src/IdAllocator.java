@@ -0,0 +1,125 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * IdAllocator
+ *
+ * This class hands out player and game ids and converts them to and from
+ * their text form.
+ *
+ * Ids are positive longs from per-kind counters, so they never collide
+ * (the old "p" + currentTimeMillis() did when two clients connected in the
+ * same millisecond) and can key primitive maps (ConcurrentLongMap). The
+ * text protocol still shows them as strings:
+ *   player: "p" + decimal id, e.g. p42
+ *   game:   "g" + at least 8 lowercase hex digits, e.g. g0000002a
+ * Parsing does not allocate, so handlers can resolve an id straight from
+ * a network buffer.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IdAllocator {
+    // Returned by the parse methods for text that is not an id
+    public static final long INVALID = -1;
+
+    private final AtomicLong players = new AtomicLong();
+    private final AtomicLong games = new AtomicLong();
+
+    public long nextPlayerId() {
+        return players.incrementAndGet();
+    }
+
+    public long nextGameId() {
+        return games.incrementAndGet();
+    }
+
+    /**
+     * @return The last player id handed out, 0 if none
+     */
+    public long lastPlayerId() {
+        return players.get();
+    }
+
+    /**
+     * @return The last game id handed out, 0 if none
+     */
+    public long lastGameId() {
+        return games.get();
+    }
+
+    /**
+     * Makes sure ids handed out from now on are above the given ones, e.g.
+     * after restoring games that already have ids
+     *
+     * @param playerId Highest player id in use
+     * @param gameId   Highest game id in use
+     */
+    public void advancePast(long playerId, long gameId) {
+        players.accumulateAndGet(playerId, Math::max);
+        games.accumulateAndGet(gameId, Math::max);
+    }
+
+    public static String formatPlayerId(long id) {
+        return "p" + id;
+    }
+
+    public static String formatGameId(long id) {
+        String hex = Long.toHexString(id);
+        return hex.length() >= 8 ? "g" + hex : "g" + "00000000".substring(hex.length()) + hex;
+    }
+
+    /**
+     * @return The id, or INVALID if the text is not a player id
+     */
+    public static long parsePlayerId(CharSequence text) {
+        if (text == null || text.length() < 2 || text.length() > 19 || text.charAt(0) != 'p') {
+            return INVALID;
+        }
+        long id = 0;
+        for (int i = 1; i < text.length(); i++) {
+            int digit = text.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return INVALID;
+            }
+            id = id * 10 + digit;
+        }
+        return id;
+    }
+
+    /**
+     * @return The id, or INVALID if the text is not a game id
+     */
+    public static long parseGameId(CharSequence text) {
+        if (text == null || text.length() < 9 || text.length() > 16 || text.charAt(0) != 'g') {
+            return INVALID;
+        }
+        long id = 0;
+        for (int i = 1; i < text.length(); i++) {
+            int digit = Character.digit(text.charAt(i), 16);
+            if (digit < 0) {
+                return INVALID;
+            }
+            id = (id << 4) | digit;
+        }
+        return id;
+    }
+
+    /**
+     * Parses a game id held as ASCII bytes in buf[start, end)
+     *
+     * @return The id, or INVALID if the bytes are not a game id
+     */
+    public static long parseGameId(byte[] buf, int start, int end) {
+        int length = end - start;
+        if (length < 9 || length > 16 || buf[start] != 'g') {
+            return INVALID;
+        }
+        long id = 0;
+        for (int i = start + 1; i < end; i++) {
+            int digit = Character.digit(buf[i], 16);
+            if (digit < 0) {
+                return INVALID;
+            }
+            id = (id << 4) | digit;
+        }
+        return id;
+    }
+}
@@ -0,0 +1,153 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * InstrumentedLock
+ *
+ * This class is a ReentrantLock that measures itself, to find out what
+ * holds a game's lock long enough to slow its guesses down. GameSession
+ * uses it in place of a plain ReentrantLock when the server runs with
+ * -Dmastermind.lockStats=true.
+ *
+ * For each outermost acquisition it records:
+ *   - wait time: from lock() being called until the lock is held
+ *   - hold time: until the matching outermost unlock()
+ *   - the owner: the method that called lock()
+ * into this lock's own wait and hold histograms, and into per-method
+ * histograms shared by every lock (see report()).
+ *
+ * A hold longer than -Dmastermind.slowLockMs (default 10) is printed with
+ * what happened under it: the methods that took the lock again
+ * reentrantly and the messages queued to clients meanwhile (noteSend()).
+ *
+ * Finding the owner walks the stack, so this costs a few microseconds per
+ * acquisition and about 10 KB of histograms per game. It is a diagnostic
+ * mode, off by default.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class InstrumentedLock extends ReentrantLock {
+    private static final long serialVersionUID = 1L;
+    public static final boolean ENABLED = Boolean.getBoolean("mastermind.lockStats");
+    public static final long SLOW_HOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("mastermind.slowLockMs", 10));
+    // Longest list of reentrant acquisitions kept for the slow-hold log
+    private static final int MAX_TRAIL = 256;
+
+    private static final StackWalker WALKER = StackWalker.getInstance();
+    private static final Map<String, Site> SITES = new ConcurrentHashMap<>();
+    // Messages and bytes queued to clients by each thread, see noteSend()
+    private static final ThreadLocal<long[]> SENT = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final String name;
+    private final LatencyHistogram waits = new LatencyHistogram();
+    private final LatencyHistogram holds = new LatencyHistogram();
+    // The current hold, only touched by the thread holding the lock
+    private Site owner;
+    private long acquiredAt;
+    private long sentAtAcquire;
+    private long bytesAtAcquire;
+    private final StringBuilder trail = new StringBuilder();
+
+    /**
+     * @param name What the lock guards, e.g. the game id, for the log
+     */
+    public InstrumentedLock(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public void lock() {
+        if (isHeldByCurrentThread()) {
+            super.lock();
+            if (trail.length() < MAX_TRAIL) {
+                trail.append(trail.length() == 0 ? "" : ", ").append(caller());
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        super.lock();
+        acquiredAt = System.nanoTime();
+        owner = SITES.computeIfAbsent(caller(), Site::new);
+        long wait = acquiredAt - start;
+        waits.record(wait);
+        owner.waits.record(wait);
+        long[] sent = SENT.get();
+        sentAtAcquire = sent[0];
+        bytesAtAcquire = sent[1];
+    }
+
+    @Override
+    public void unlock() {
+        if (getHoldCount() == 1 && owner != null) {
+            long held = System.nanoTime() - acquiredAt;
+            holds.record(held);
+            owner.holds.record(held);
+            if (held > SLOW_HOLD_NANOS) {
+                long[] sent = SENT.get();
+                System.err.println("Slow lock hold " + held / 1000 + " us on " + name + " by " + owner.method
+                        + ": queued " + (sent[0] - sentAtAcquire) + " messages, " + (sent[1] - bytesAtAcquire)
+                        + " bytes" + (trail.length() > 0 ? "; reentered " + trail : ""));
+            }
+            owner = null;
+            trail.setLength(0);
+        }
+        super.unlock();
+    }
+
+    /**
+     * Counts a message queued to a client by the calling thread, so a slow
+     * hold can report how much it sent. Called by ClientHandler when
+     * ENABLED.
+     */
+    public static void noteSend(int bytes) {
+        long[] sent = SENT.get();
+        sent[0]++;
+        sent[1] += bytes;
+    }
+
+    public LatencyHistogram getWaits() {
+        return waits;
+    }
+
+    public LatencyHistogram getHolds() {
+        return holds;
+    }
+
+    /**
+     * @return Wait and hold times per owner method over every lock, in
+     *         microseconds
+     */
+    public static List<String> report() {
+        List<String> lines = new ArrayList<>();
+        for (Site site : new TreeMap<>(SITES).values()) {
+            lines.add("lock " + site.method + " wait us " + site.waits.format(1000));
+            lines.add("lock " + site.method + " hold us " + site.holds.format(1000));
+        }
+        return lines;
+    }
+
+    private static String caller() {
+        return WALKER.walk(frames -> frames
+                .filter(frame -> !frame.getClassName().equals(InstrumentedLock.class.getName()))
+                .findFirst()
+                .map(frame -> frame.getClassName() + "." + frame.getMethodName())
+                .orElse("unknown"));
+    }
+
+    /**
+     * Histograms for one method that takes locks
+     */
+    private static class Site {
+        final String method;
+        final LatencyHistogram waits = new LatencyHistogram();
+        final LatencyHistogram holds = new LatencyHistogram();
+
+        Site(String method) {
+            this.method = method;
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * KnuthSolver
+ *
+ * This class plays Mastermind using Knuth's minimax strategy.
+ *
+ * After every guess the codes that are still possible are kept in a
+ * CandidateSet. The next guess is the code (from the whole space, not just
+ * the candidates) whose worst-case partition of the candidates is smallest.
+ * Ties go to a code that is still a candidate, then to the lowest code.
+ * On the standard 4-peg / 6-color board this never needs more than five
+ * guesses.
+ *
+ * A solver keeps a little state between calls (the cached first guess and
+ * the evaluation counter), so use one instance per thread.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class KnuthSolver {
+    private final CodeSpace space;
+    private final CodeScorer scorer;
+    private final int histogramSize;
+    private int firstGuess = -1;
+    private long evaluations;
+
+    public KnuthSolver(CodeSpace space) {
+        this.space = space;
+        this.scorer = CodeScorer.forSpace(space);
+        this.histogramSize = CodeSpace.packScore(space.getPegs(), space.getPegs()) + 1;
+    }
+
+    /**
+     * Plays a whole game against a known secret
+     *
+     * @param secret Packed secret code
+     * @return The guesses played, with timing and evaluation counts
+     */
+    public Result solve(int secret) {
+        long start = System.nanoTime();
+        long startEvaluations = evaluations;
+        CandidateSet candidates = CandidateSet.all(space);
+        int[] guesses = new int[8];
+        int played = 0;
+
+        int guess = firstGuess();
+        while (true) {
+            if (played == guesses.length) {
+                guesses = Arrays.copyOf(guesses, played * 2);
+            }
+            guesses[played++] = guess;
+            int score = scorer.score(secret, guess);
+            evaluations++;
+            if (score == space.winningScore()) {
+                break;
+            }
+            evaluations += candidates.count();
+            candidates.retain(scorer, guess, score);
+            guess = nextGuess(candidates);
+        }
+
+        return new Result(Arrays.copyOf(guesses, played),
+                evaluations - startEvaluations, System.nanoTime() - start);
+    }
+
+    /**
+     * Picks the next guess for a set of remaining candidates
+     *
+     * @param candidates Codes still consistent with the results so far
+     * @return Packed guess
+     */
+    public int nextGuess(CandidateSet candidates) {
+        int count = candidates.count();
+        if (count == 0) {
+            throw new IllegalStateException("no candidates left");
+        }
+        // With one or two codes left, guessing a candidate is always optimal
+        if (count <= 2) {
+            return candidates.next(0);
+        }
+        if (count == space.size()) {
+            return firstGuess();
+        }
+        return selectGuess(candidates);
+    }
+
+    /**
+     * The opening guess only depends on the board, so it is computed once
+     *
+     * @return Packed first guess
+     */
+    public int firstGuess() {
+        if (firstGuess < 0) {
+            firstGuess = selectGuess(CandidateSet.all(space));
+        }
+        return firstGuess;
+    }
+
+    /**
+     * Runs the minimax search over every possible guess
+     */
+    protected int selectGuess(CandidateSet candidates) {
+        int[] codes = new int[candidates.count()];
+        int n = candidates.toArray(codes);
+        Scan scan = new Scan(histogramSize);
+        scan.run(scorer, 0, space.size(), codes, n, candidates);
+        evaluations += scan.evaluations;
+        return choiceGuess(scan.best);
+    }
+
+    /**
+     * @return Total score evaluations made by this solver
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public CodeSpace getSpace() {
+        return space;
+    }
+
+    protected CodeScorer getScorer() {
+        return scorer;
+    }
+
+    protected int getHistogramSize() {
+        return histogramSize;
+    }
+
+    protected void addEvaluations(long count) {
+        evaluations += count;
+    }
+
+    /**
+     * Packs a minimax choice into a long so that a smaller value is a better
+     * guess: worst partition size, then candidates before non-candidates,
+     * then the lower code.
+     */
+    static long choice(int worst, boolean isCandidate, int guess) {
+        return ((long) worst << 32) | (isCandidate ? 0L : 1L << 31) | guess;
+    }
+
+    static int choiceWorst(long choice) {
+        return (int) (choice >>> 32);
+    }
+
+    static int choiceGuess(long choice) {
+        return (int) (choice & Integer.MAX_VALUE);
+    }
+
+    /**
+     * Minimax over a range of guesses. Keeps its own histogram so separate
+     * scans can run on separate threads.
+     */
+    static class Scan {
+        final int[] histogram;
+        final AtomicLong sharedBest;
+        long best = Long.MAX_VALUE;
+        long evaluations;
+
+        Scan(int histogramSize) {
+            this(histogramSize, null);
+        }
+
+        /**
+         * @param sharedBest Best choice across all scans of one search, used to
+         *                   prune earlier; null when the scan runs alone
+         */
+        Scan(int histogramSize, AtomicLong sharedBest) {
+            this.histogram = new int[histogramSize];
+            this.sharedBest = sharedBest;
+        }
+
+        /**
+         * Scores guesses [from, to) against every candidate and keeps the
+         * best choice. A guess is dropped as soon as one partition is bigger
+         * than the best worst case found so far.
+         */
+        void run(CodeScorer scorer, int from, int to, int[] codes, int n, CandidateSet candidates) {
+            for (int guess = from; guess < to; guess++) {
+                Arrays.fill(histogram, 0);
+                if (sharedBest != null && sharedBest.get() < best) {
+                    best = sharedBest.get();
+                }
+                int limit = choiceWorst(best);
+                int worst = 0;
+                int i = 0;
+                while (i < n) {
+                    int size = ++histogram[scorer.score(codes[i++], guess)];
+                    if (size > worst) {
+                        worst = size;
+                        if (worst > limit) {
+                            break;
+                        }
+                    }
+                }
+                evaluations += i;
+                if (worst <= limit) {
+                    long choice = choice(worst, candidates.contains(guess), guess);
+                    if (choice < best) {
+                        best = choice;
+                        if (sharedBest != null) {
+                            sharedBest.accumulateAndGet(choice, Math::min);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Outcome of one solved game
+     */
+    public static class Result {
+        private final int[] guesses;
+        private final long evaluations;
+        private final long nanos;
+
+        Result(int[] guesses, long evaluations, long nanos) {
+            this.guesses = guesses;
+            this.evaluations = evaluations;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return Packed guesses in the order they were played, ending with the secret
+         */
+        public int[] getGuesses() {
+            return guesses.clone();
+        }
+
+        public int getGuessCount() {
+            return guesses.length;
+        }
+
+        /**
+         * @return Score evaluations used to solve this game
+         */
+        public long getEvaluations() {
+            return evaluations;
+        }
+
+        /**
+         * @return Wall time spent solving, in nanoseconds
+         */
+        public long getNanos() {
+            return nanos;
+        }
+    }
+
+    /**
+     * Solves every secret on a board and prints guess counts, wall time and
+     * score evaluations. Useful as a CPU-heavy workload.
+     *
+     * Usage: java KnuthSolver [pegs colors]
+     */
+    public static void main(String[] args) {
+        CodeSpace space = CodeSpace.STANDARD;
+        if (args.length >= 2) {
+            space = new CodeSpace(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        }
+
+        KnuthSolver solver = new KnuthSolver(space);
+        long start = System.nanoTime();
+        solver.firstGuess();
+        long openingNanos = System.nanoTime() - start;
+
+        int[] histogram = new int[16];
+        int maxGuesses = 0;
+        long totalGuesses = 0;
+        for (int secret = 0; secret < space.size(); secret++) {
+            int count = solver.solve(secret).getGuessCount();
+            histogram[Math.min(count, histogram.length - 1)]++;
+            maxGuesses = Math.max(maxGuesses, count);
+            totalGuesses += count;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println("Board: " + space.getPegs() + " pegs, " + space.getColors()
+                + " colors (" + space.size() + " codes)");
+        System.out.println("First guess: " + space.decode(solver.firstGuess())
+                + " (" + openingNanos / 1_000_000 + " ms)");
+        for (int i = 1; i < histogram.length; i++) {
+            if (histogram[i] > 0) {
+                System.out.println("  " + i + " guesses: " + histogram[i]);
+            }
+        }
+        System.out.printf("Max guesses: %d, average: %.4f%n", maxGuesses,
+                (double) totalGuesses / space.size());
+        System.out.printf("Wall time: %d ms, evaluations: %d (%.1f M/s)%n",
+                elapsed / 1_000_000, solver.getEvaluations(),
+                solver.getEvaluations() * 1000.0 / elapsed);
+    }
+}
@@ -0,0 +1,123 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * LatencyHistogram
+ *
+ * This class counts values, usually nanoseconds, in log-linear buckets in
+ * the style of HdrHistogram. Every power of two is split into 16 equal
+ * sub-buckets, so a percentile read back is within 1/16 (about 6%) of the
+ * true value. Values run from 0 up to 2^41 ns (about 36 minutes); anything
+ * larger is counted in the last bucket.
+ *
+ * record() takes no lock and allocates nothing: one increment in an
+ * AtomicLongArray, two LongAdder adds, and a compare-and-set only when a
+ * new maximum is seen. Reads walk the buckets and may miss values recorded
+ * while they run, which is fine for monitoring.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // Highest power of two with buckets of its own
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param value A value of 0 or more; negative values count as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        long seen = max.get();
+        while (value > seen && !max.compareAndSet(seen, value)) {
+            seen = max.get();
+        }
+    }
+
+    /**
+     * @return Number of values recorded
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * @param percentile From 0 to 100
+     * @return The highest value in the bucket holding that percentile, or 0
+     *         if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestInBucket(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * @param divisor Scales each value, e.g. 1000 to show nanoseconds as
+     *                microseconds
+     * @return count, mean, p50, p90, p99, p99.9 and max on one line
+     */
+    public String format(long divisor) {
+        return "count=" + getCount()
+                + " mean=" + Math.round(getMean() / divisor)
+                + " p50=" + getPercentile(50) / divisor
+                + " p90=" + getPercentile(90) / divisor
+                + " p99=" + getPercentile(99) / divisor
+                + " p99.9=" + getPercentile(99.9) / divisor
+                + " max=" + getMax() / divisor;
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long highestInBucket(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long width = 1L << (exponent - SUB_BITS);
+        return (SUB_BUCKETS + bucket % SUB_BUCKETS) * width + width - 1;
+    }
+}
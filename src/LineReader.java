@@ -0,0 +1,164 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * LineReader
+ *
+ * This class splits a byte stream into protocol lines inside one reusable
+ * buffer.
+ *
+ * Unlike BufferedReader.readLine() it does not decode or copy anything: the
+ * current line is a range of buffer(), valid until the next call to next().
+ * A trailing '\r' is left out of the range. The buffer grows for long lines
+ * up to a limit, after which the connection is treated as broken.
+ *
+ * Once a connection switches to the binary protocol, nextFrame() reads
+ * WireProtocol frames from the same buffer, so bytes that arrived right
+ * behind the last text line are not lost.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+public class LineReader {
+    private final InputStream in;
+    private final int maxLineLength;
+    // Largest buffer: a full line plus its terminator, or a frame and its header
+    private final int capacityLimit;
+    private byte[] buf;
+    // Unread bytes are buf[pos, limit)
+    private int pos = 0;
+    private int limit = 0;
+    private int lineStart = 0;
+    private int lineLength = 0;
+
+    /**
+     * @param in            The stream to read
+     * @param bufferSize    Initial buffer size
+     * @param maxLineLength Longest line accepted, in bytes
+     */
+    public LineReader(InputStream in, int bufferSize, int maxLineLength) {
+        this.in = in;
+        this.buf = new byte[bufferSize];
+        this.maxLineLength = maxLineLength;
+        this.capacityLimit = maxLineLength + 3;
+    }
+
+    /**
+     * Advances to the next line, reading from the stream if needed
+     *
+     * @return false at end of stream
+     * @throws IOException if reading fails or a line is too long
+     */
+    public boolean next() throws IOException {
+        // Bytes after pos already known not to be '\n'
+        int scanned = 0;
+        while (true) {
+            for (int i = pos + scanned; i < limit; i++) {
+                if (buf[i] == '\n') {
+                    setLine(pos, i);
+                    pos = i + 1;
+                    return true;
+                }
+            }
+            scanned = limit - pos;
+            if (!fill()) {
+                if (pos == limit) {
+                    return false;
+                }
+                // Last line without a terminator
+                setLine(pos, limit);
+                pos = limit;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Advances to the next binary frame. The current "line" is then the
+     * frame body: its opcode and payload.
+     *
+     * @return false at end of stream
+     * @throws IOException if reading fails or the frame is malformed
+     */
+    public boolean nextFrame() throws IOException {
+        while (true) {
+            if (pos < limit) {
+                long header;
+                try {
+                    header = WireProtocol.header(buf, pos, limit);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(e.getMessage());
+                }
+                if (header >= 0) {
+                    int headerLength = (int) (header >>> 32);
+                    int length = (int) header;
+                    if (length > maxLineLength) {
+                        throw new IOException("frame too long");
+                    }
+                    if (limit - pos >= headerLength + length) {
+                        lineStart = pos + headerLength;
+                        lineLength = length;
+                        pos = lineStart + length;
+                        return true;
+                    }
+                }
+            }
+            if (!fill()) {
+                if (pos < limit) {
+                    throw new IOException("truncated frame");
+                }
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return The buffer holding the current line
+     */
+    public byte[] buffer() {
+        return buf;
+    }
+
+    public int lineStart() {
+        return lineStart;
+    }
+
+    public int lineLength() {
+        return lineLength;
+    }
+
+    private void setLine(int start, int end) {
+        if (end > start && buf[end - 1] == '\r') {
+            end--;
+        }
+        lineStart = start;
+        lineLength = end - start;
+    }
+
+    /**
+     * Reads more bytes, first compacting or growing the buffer
+     *
+     * @return false at end of stream
+     */
+    private boolean fill() throws IOException {
+        if (pos == limit) {
+            pos = 0;
+            limit = 0;
+        } else if (limit == buf.length) {
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            } else if (buf.length >= capacityLimit) {
+                throw new IOException("line too long");
+            } else {
+                buf = Arrays.copyOf(buf, Math.min(buf.length * 2, capacityLimit));
+            }
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+}
@@ -22,6 +22,8 @@ public class LobbyPanel extends JPanel {
     private JTable gamesTable;
     private DefaultTableModel tableModel;
     private List<GameInfo> games = new ArrayList<>();
+    // Version of the last lobby change applied, -1 until a snapshot arrives
+    private long lobbyVersion = -1;
 
     public LobbyPanel(MastermindClient client) {
         this.client = client;
@@ -177,6 +179,9 @@ public class LobbyPanel extends JPanel {
      * Case "GAME_LIST":
      *   - If data is not empty, call parseGameList(data)
      * 
+     * Case "GAME_SNAPSHOT", "GAME_ADDED", "GAME_UPDATED", "GAME_REMOVED":
+     *   - Incremental lobby updates, see applyLobbyChange()
+     * 
      * Case "GAME_CREATED":
      *   - If data is not empty, send "GET_GAMES" to refresh the list
      * 
@@ -218,6 +223,13 @@ public class LobbyPanel extends JPanel {
                 }
                 break;
             }
+            case "GAME_SNAPSHOT":
+            case "GAME_ADDED":
+            case "GAME_UPDATED":
+            case "GAME_REMOVED": {
+                applyLobbyChange(command, data);
+                break;
+            }
             case "GAME_CREATED": {
                 if (!data.isEmpty()) {
                 client.send("GET_GAMES");
@@ -249,6 +261,79 @@ public class LobbyPanel extends JPanel {
         }
     }
 
+    /**
+     * Applies a versioned lobby update, touching only the affected row.
+     * 
+     * Data format: "version:payload". A snapshot replaces the whole table.
+     * A change is applied if it is the next version; older ones are already
+     * part of the table. After a gap (updates were lost) the changes are
+     * ignored and a fresh snapshot is requested.
+     * 
+     * @param command GAME_SNAPSHOT, GAME_ADDED, GAME_UPDATED or GAME_REMOVED
+     * @param data    The message data
+     */
+    private void applyLobbyChange(String command, String data) {
+        int index = data.indexOf(':');
+        if (index == -1) {
+            return;
+        }
+        long version;
+        try {
+            version = Long.parseLong(data.substring(0, index));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        String payload = data.substring(index + 1);
+
+        if (command.equals("GAME_SNAPSHOT")) {
+            parseGameList(payload);
+            lobbyVersion = version;
+            return;
+        }
+        if (lobbyVersion < 0 || version <= lobbyVersion) {
+            // Waiting for a snapshot, or already included in it
+            return;
+        }
+        if (version != lobbyVersion + 1) {
+            lobbyVersion = -1;
+            client.send("GET_GAMES");
+            return;
+        }
+        lobbyVersion = version;
+
+        if (command.equals("GAME_REMOVED")) {
+            int row = indexOfGame(payload);
+            if (row >= 0) {
+                games.remove(row);
+                tableModel.removeRow(row);
+            }
+            return;
+        }
+        GameInfo game = parseGameInfo(payload.replace("{", "").replace("}", ""));
+        if (game == null) {
+            return;
+        }
+        int row = indexOfGame(game.id);
+        if (row < 0) {
+            games.add(game);
+            tableModel.addRow(new Object[]{game.name, game.players, game.status});
+        } else {
+            games.set(row, game);
+            tableModel.setValueAt(game.name, row, 0);
+            tableModel.setValueAt(game.players, row, 1);
+            tableModel.setValueAt(game.status, row, 2);
+        }
+    }
+
+    private int indexOfGame(String id) {
+        for (int i = 0; i < games.size(); i++) {
+            if (games.get(i).id.equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * TODO 4: Parse Game List JSON (60 minutes)
      * 
@@ -292,11 +377,25 @@ public class LobbyPanel extends JPanel {
         // TODO: Add to table
         games.clear();
         tableModel.setRowCount(0);
+        for (GameInfo game : parseGames(json)) {
+            games.add(game);
+            tableModel.addRow(new Object[]{game.name, game.players, game.status});
+        }
+    }
+
+    /**
+     * Splits a GAME_LIST array into its games, skipping any that are
+     * missing a field
+     * 
+     * @param json The JSON array, or null
+     */
+    static List<GameInfo> parseGames(String json) {
+        List<GameInfo> parsed = new ArrayList<>();
         if(json == null) {
-            return;
+            return parsed;
         }
         json = json.trim();
-        if (json.equals("[]")) return;
+        if (json.equals("[]")) return parsed;
         
         json = json.substring(1, json.length() - 1);
         String[] gameObjects = json.split("\\},\\{");
@@ -304,19 +403,30 @@ public class LobbyPanel extends JPanel {
         for (String gameObj : gameObjects) {
             gameObj = gameObj.trim();
             gameObj = gameObj.replace("{", "").replace("}", "");
-            String id = extractJsonValue(gameObj, "id");
-            String name = extractJsonValue(gameObj, "name");
-            String playerCount = extractJsonValue(gameObj, "players");
-            String maxPlayers = extractJsonValue(gameObj, "maxPlayers");
-            String status = extractJsonValue(gameObj, "status");
-            if (id.isEmpty() || name.isEmpty() || playerCount.isEmpty() || maxPlayers.isEmpty() || status.isEmpty()) {
+            GameInfo game = parseGameInfo(gameObj);
+            if (game == null) {
                 continue; 
             }
-            String playersstr = playerCount + "/" + maxPlayers;
-            GameInfo game = new GameInfo(id, name, playersstr, status);
-            games.add(game);
-            tableModel.addRow(new Object[]{name, playersstr, status});
+            parsed.add(game);
             }
+        return parsed;
+    }
+
+    /**
+     * Reads one game object with its braces removed
+     * 
+     * @return The game, or null if a field is missing
+     */
+    private static GameInfo parseGameInfo(String gameObj) {
+        String id = extractJsonValue(gameObj, "id");
+        String name = extractJsonValue(gameObj, "name");
+        String playerCount = extractJsonValue(gameObj, "players");
+        String maxPlayers = extractJsonValue(gameObj, "maxPlayers");
+        String status = extractJsonValue(gameObj, "status");
+        if (id.isEmpty() || name.isEmpty() || playerCount.isEmpty() || maxPlayers.isEmpty() || status.isEmpty()) {
+            return null;
+        }
+        return new GameInfo(id, name, playerCount + "/" + maxPlayers, status);
     }
     
     /**
@@ -324,7 +434,7 @@ public class LobbyPanel extends JPanel {
      * 
      * Example: extractJsonValue("\"id\":\"g123\",\"name\":\"Game1\"", "name") returns "Game1"
      */
-    private String extractJsonValue(String json, String key) {
+    private static String extractJsonValue(String json, String key) {
         String searchKey = "\"" + key + "\":";
         int startIndex = json.indexOf(searchKey);
         if (startIndex == -1) return "";
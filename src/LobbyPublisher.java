@@ -0,0 +1,212 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * LobbyPublisher
+ *
+ * This class sends the game list to the lobby, coalescing bursts of changes.
+ *
+ * Joins, leaves, starts and removed games only mark the list dirty. The
+ * first change schedules a publish one window later (default 50 ms); any
+ * further change inside that window rides along with it. A publish compares
+ * the lobby's GameListSnapshot with the entries it published last time and
+ * encodes each kind of message once, handing the same frame to every
+ * player who needs it. Games are compared by their cached UTF-8 fragments,
+ * so an unchanged game costs a reference check.
+ *
+ * Clients that sent HELLO:1:lobby-delta get only the changes, one line per
+ * game, each with its own version number:
+ *   GAME_ADDED:version:{game}
+ *   GAME_UPDATED:version:{game}
+ *   GAME_REMOVED:version:gameId
+ * and GET_GAMES answers them with GAME_SNAPSHOT:version:[games]. A client
+ * applies a change whose version is one past its own and asks for a new
+ * snapshot when it sees a gap. A client whose queue dropped lobby updates
+ * since the last publish is sent a snapshot instead of the changes. Other
+ * clients get the full GAME_LIST as before.
+ *
+ * The window is set with -Dmastermind.lobbyWindowMs=N. A window of 0
+ * publishes right away, but still on the publisher's thread: changes are
+ * marked under a session lock, and publishing takes other games' locks to
+ * rebuild their entries, so doing it on the caller could deadlock.
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class LobbyPublisher {
+    public static final long DEFAULT_WINDOW_MILLIS = Long.getLong("mastermind.lobbyWindowMs", 50);
+
+    private final GameLobbyManager lobby;
+    private final long windowMillis;
+    private final ScheduledExecutorService timer;
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+    // Published state, guarded by this publisher's monitor
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private long version = 0;
+
+    /**
+     * @param lobby        The lobby whose game list is published
+     * @param windowMillis How long changes are collected before publishing
+     */
+    public LobbyPublisher(GameLobbyManager lobby, long windowMillis) {
+        this.lobby = lobby;
+        this.windowMillis = windowMillis;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "LobbyPublisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Notes that the game list changed. Cheap and safe to call while holding
+     * a session lock, since the publish always runs on the timer thread.
+     */
+    public void markDirty() {
+        if (dirty.compareAndSet(false, true)) {
+            timer.schedule(this::publish, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Sends what changed since the last publish. Clearing the flag first
+     * means a change made while the list is being built schedules another
+     * publish instead of being lost.
+     *
+     * Runs under this publisher's monitor so every client sees versions in
+     * order, including snapshots sent by sendSnapshot().
+     */
+    synchronized void publish() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            GameListSnapshot games = lobby.getGameListSnapshot();
+            ByteArrayOutputStream deltas = new ByteArrayOutputStream();
+            Set<String> live = new HashSet<>();
+            for (int i = 0; i < games.size(); i++) {
+                String id = games.getGameId(i);
+                byte[] json = games.getFragment(i);
+                live.add(id);
+                Entry entry = entries.get(id);
+                if (entry == null) {
+                    entries.put(id, new Entry(json, ++version));
+                    appendLine(deltas, "GAME_ADDED:" + version + ":", json);
+                } else if (entry.json != json && !Arrays.equals(entry.json, json)) {
+                    entry.json = json;
+                    entry.version = ++version;
+                    appendLine(deltas, "GAME_UPDATED:" + version + ":", json);
+                }
+            }
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                String id = it.next().getKey();
+                if (!live.contains(id)) {
+                    it.remove();
+                    appendLine(deltas, "GAME_REMOVED:" + (++version) + ":" + id, null);
+                }
+            }
+            if (deltas.size() == 0) {
+                return;
+            }
+
+            EncodedMessage list = EncodedMessage.ofLines(games.getGameListLine());
+            EncodedMessage delta = EncodedMessage.ofLines(deltas.toByteArray());
+            EncodedMessage snapshot = null;
+            for (ClientHandler handler : lobby.getLobbyPlayers()) {
+                // One client failing must not cost the others this update
+                try {
+                    if (!handler.wantsLobbyDeltas()) {
+                        handler.send(list, true);
+                    } else if (handler.takeLobbyResync()) {
+                        if (snapshot == null) {
+                            snapshot = EncodedMessage.ofLines(snapshotLine());
+                        }
+                        handler.send(snapshot, true);
+                    } else {
+                        handler.send(delta, true);
+                    }
+                } catch (RuntimeException e) {
+                    System.err.println("Error sending game list to " + handler.getPlayerName() + ": " + e);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Keep the timer thread alive for the next publish
+            System.err.println("Error publishing game list: " + e);
+        }
+    }
+
+    /**
+     * Answers GET_GAMES from a client that takes deltas. The snapshot is the
+     * published state, so the next delta it receives is exactly one version
+     * later.
+     */
+    synchronized void sendSnapshot(ClientHandler handler) {
+        handler.takeLobbyResync();
+        handler.sendFrame(snapshotLine(), false);
+    }
+
+    /**
+     * @return Version of the last published change
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * @return GAME_SNAPSHOT:version:[games] with its line terminator
+     */
+    private byte[] snapshotLine() {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        line.writeBytes(("GAME_SNAPSHOT:" + version + ":[").getBytes(StandardCharsets.US_ASCII));
+        boolean first = true;
+        for (Entry entry : entries.values()) {
+            if (!first) {
+                line.write(',');
+            }
+            first = false;
+            line.writeBytes(entry.json);
+        }
+        line.write(']');
+        line.write('\n');
+        return line.toByteArray();
+    }
+
+    private static void appendLine(ByteArrayOutputStream out, String prefix, byte[] json) {
+        out.writeBytes(prefix.getBytes(StandardCharsets.UTF_8));
+        if (json != null) {
+            out.writeBytes(json);
+        }
+        out.write('\n');
+    }
+
+    /**
+     * A game as last published, with the version of its last change
+     */
+    private static class Entry {
+        byte[] json;
+        long version;
+
+        Entry(byte[] json, long version) {
+            this.json = json;
+            this.version = version;
+        }
+    }
+}
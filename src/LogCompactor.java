@@ -0,0 +1,272 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * LogCompactor
+ *
+ * This class keeps the event log from growing forever by dropping the
+ * events of games that are over.
+ *
+ * Only sealed segments (older than the one GameEventLog is writing) are
+ * touched. A pass first reads them to find every game that was created and
+ * then finished or removed there, and appends one summary line per such
+ * game to stats.tsv in the log directory:
+ *   gameId  name  requiredPlayers  joins  guesses  result
+ * where result is won, lost or abandoned. Once those lines are on disk,
+ * each segment holding events of those games is rewritten without them
+ * (written aside, then renamed over the original), and deleted if nothing
+ * is left. Events of games summarized by an earlier pass are dropped too.
+ *
+ * A crash between the two steps only means a game is summarized twice on
+ * the next pass; no live game's events are ever dropped. Segments from the
+ * latest snapshot on (see GameSnapshotter) are left alone too, since
+ * recovery replays them over the snapshot.
+ *
+ * With -Dmastermind.compactMs=N a pass runs every N ms (default 60000,
+ * 0 turns it off).
+ */
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongPredicate;
+import java.util.zip.CRC32C;
+
+public class LogCompactor {
+    public static final long COMPACT_MILLIS = Long.getLong("mastermind.compactMs", 60_000);
+    public static final String STATS_FILE = "stats.tsv";
+    private static final String STATS_HEADER = "game\tname\trequired\tjoins\tguesses\tresult\n";
+
+    private final GameEventLog log;
+    private final ScheduledExecutorService timer;
+    // First segment the latest snapshot needs replayed
+    private volatile long keepFrom = Long.MAX_VALUE;
+
+    /**
+     * @param log           The log to compact
+     * @param compactMillis How often to compact, or 0 for only on compact()
+     */
+    public LogCompactor(GameEventLog log, long compactMillis) {
+        this.log = log;
+        if (compactMillis > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "LogCompactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.scheduleWithFixedDelay(this::compactQuietly, compactMillis, compactMillis, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    /**
+     * Leaves segments from this one on alone, once a snapshot relies on
+     * them
+     */
+    public void keepFrom(long sequence) {
+        keepFrom = sequence;
+    }
+
+    public void shutdown() {
+        if (timer != null) {
+            timer.shutdownNow();
+            try {
+                timer.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException e) {
+            System.err.println("Error compacting game event log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Summarizes and drops the games that are over in the sealed segments
+     *
+     * @return Number of games summarized
+     */
+    public synchronized int compact() throws IOException {
+        Path dir = log.getDirectory();
+        List<Path> sealed = new ArrayList<>();
+        long limit = Math.min(log.getActiveSequence(), keepFrom);
+        for (Path segment : GameEventLog.segments(dir)) {
+            if (GameEventLog.sequence(segment) < limit) {
+                sealed.add(segment);
+            }
+        }
+        ConcurrentLongMap<Summary> games = new ConcurrentLongMap<>();
+        for (Path segment : sealed) {
+            GameEventLog.scan(GameEventLog.map(segment),
+                    (event, length) -> GameEventLog.parse(event, length, (type, gameId, fields) -> {
+                        if (type == GameEventLog.GAME_CREATED) {
+                            int required = fields.u8();
+                            games.put(gameId, new Summary(gameId, fields.utf8Rest(), required));
+                            return;
+                        }
+                        Summary game = games.get(gameId);
+                        if (game != null) {
+                            game.add(type, fields);
+                        }
+                    }));
+        }
+
+        // Games created here; the rest of the events belong to games an
+        // earlier pass summarized
+        List<Summary> over = new ArrayList<>();
+        for (Summary game : games.values()) {
+            if (game.closed) {
+                over.add(game);
+            }
+        }
+        if (!over.isEmpty()) {
+            writeSummaries(dir.resolve(STATS_FILE), over);
+        }
+        for (Path segment : sealed) {
+            rewrite(segment, gameId -> {
+                Summary game = games.get(gameId);
+                return game != null && !game.closed;
+            });
+        }
+        return over.size();
+    }
+
+    private static void writeSummaries(Path file, List<Summary> games) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        if (!Files.exists(file)) {
+            lines.append(STATS_HEADER);
+        }
+        for (Summary game : games) {
+            game.appendTo(lines);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Rewrites a segment with only the events of the games it keeps
+     */
+    private static void rewrite(Path segment, LongPredicate keep) throws IOException {
+        MappedByteBuffer data = GameEventLog.map(segment);
+        ByteBuffer kept = ByteBuffer.allocate(data.limit());
+        CRC32C crc = new CRC32C();
+        boolean[] dropped = new boolean[1];
+        int end = GameEventLog.scan(data, (event, length) -> GameEventLog.parse(event, length,
+                (type, gameId, fields) -> {
+                    if (keep.test(gameId)) {
+                        GameEventLog.putRecord(kept, crc, event, length);
+                    } else {
+                        dropped[0] = true;
+                    }
+                }));
+        if (!dropped[0] && end == data.limit()) {
+            return;
+        }
+        if (kept.position() == 0) {
+            Files.delete(segment);
+            return;
+        }
+        kept.flip();
+        Path aside = segment.resolveSibling(segment.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(aside, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (kept.hasRemaining()) {
+                channel.write(kept);
+            }
+            channel.force(true);
+        }
+        Files.move(aside, segment, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return The highest game id summarized in a log directory, so
+     *         recovery never hands out an id whose events were compacted
+     *         away; 0 if there is none
+     */
+    public static long highestGameId(Path dir) throws IOException {
+        Path file = dir.resolve(STATS_FILE);
+        long highest = 0;
+        if (!Files.exists(file)) {
+            return highest;
+        }
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    highest = Math.max(highest, IdAllocator.parseGameId(line.substring(0, tab)));
+                }
+            }
+        }
+        return highest;
+    }
+
+    /**
+     * What a finished game leaves behind
+     */
+    private static class Summary {
+        final long gameId;
+        final String name;
+        final int required;
+        int joins = 0;
+        int guesses = 0;
+        String result = "abandoned";
+        boolean closed = false;
+
+        Summary(long gameId, String name, int required) {
+            this.gameId = gameId;
+            this.name = name;
+            this.required = required;
+        }
+
+        void add(int type, WireProtocol.Reader fields) {
+            switch (type) {
+                case GameEventLog.PLAYER_JOINED:
+                    joins++;
+                    break;
+                case GameEventLog.GUESS_SCORED:
+                    guesses++;
+                    break;
+                case GameEventLog.GAME_FINISHED:
+                    result = fields.u8() != 0 ? "won" : "lost";
+                    closed = true;
+                    break;
+                case GameEventLog.GAME_REMOVED:
+                    closed = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        void appendTo(StringBuilder out) {
+            out.append(IdAllocator.formatGameId(gameId)).append('\t')
+                    .append(name.replace('\t', ' ').replace('\n', ' ')).append('\t')
+                    .append(required).append('\t')
+                    .append(joins).append('\t')
+                    .append(guesses).append('\t')
+                    .append(result).append('\n');
+        }
+    }
+}
@@ -15,18 +15,32 @@
 import javax.swing.SwingUtilities;
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.function.Consumer;
 
 public class MastermindClient {
+    // Longest message taken from the server; game lists grow with the lobby
+    private static final int MAX_LINE_LENGTH = 4 * 1024 * 1024;
+
     private Socket socket;
-    private PrintWriter out;
-    private BufferedReader in;
+    private OutputStream out;
+    private InputStream in;
+    private LineReader reader;
     private Thread listenerThread;
     private Consumer<String> onMessage;
     private volatile boolean connected = false;
     private volatile boolean shuttingDown = false;
     private String playerId;
     private String playerName;
+    // Protocol negotiation: messages sent before the server answers HELLO
+    // wait here, because they must go out in the protocol it picks
+    private final Object sendLock = new Object();
+    private List<String> beforeHello;
+    private volatile boolean binary = false;
+    // Parts of a line split over TEXT_MORE frames, read by the listener only
+    private final ByteArrayOutputStream longLine = new ByteArrayOutputStream();
 
     /**
      * TODO 1: Connect to Server (30 minutes)
@@ -35,14 +49,16 @@ public class MastermindClient {
      * 
      * Steps:
      * 1. Create a new Socket connecting to the host and port
-     * 2. Create a PrintWriter from socket.getOutputStream() with auto-flush
-     * 3. Create a BufferedReader from socket.getInputStream() wrapped in InputStreamReader
+     * 2. Keep socket.getOutputStream() for writing (see send())
+     * 3. Create a LineReader over socket.getInputStream()
      * 4. Store the messageCallback in the onMessage field
      * 5. Set connected = true and shuttingDown = false
      * 6. Create a new Thread for listenLoop (name it "NetworkListener")
      * 7. Set the thread as daemon: thread.setDaemon(true)
      * 8. Start the thread
-     * 9. Send initial handshake: send("HELLO:1")
+     * 9. Send initial handshake: "HELLO:2:lobby-delta" asks for the binary
+     *    protocol (see WireProtocol) and incremental lobby updates (see
+     *    LobbyPanel). Other messages wait until the server answers.
      * 
      * @param host The server hostname or IP address
      * @param port The server port number
@@ -61,15 +77,22 @@ public class MastermindClient {
         // TODO: Send initial handshake
 
         socket = new Socket(host, port);
-        out = new PrintWriter(socket.getOutputStream(), true);
-        in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        socket.setTcpNoDelay(true);
+        out = new BufferedOutputStream(socket.getOutputStream());
+        in = socket.getInputStream();
+        reader = new LineReader(in, 8 * 1024, MAX_LINE_LENGTH);
         this.onMessage = messageCallback;
         connected = true;
         shuttingDown = false;
+        binary = false;
+        longLine.reset();
+        synchronized (sendLock) {
+            writeLine("HELLO:" + WireProtocol.VERSION + ":lobby-delta");
+            beforeHello = new ArrayList<>();
+        }
         listenerThread = new Thread(this::listenLoop, "NetworkListener");
         listenerThread.setDaemon(true);
         listenerThread.start();
-        send("HELLO:1");
     }
 
     /**
@@ -104,8 +127,11 @@ public class MastermindClient {
     private void listenLoop() {
         try {
        String line;
-       while (connected && (line = in.readLine()) != null) {
+       while (connected && (line = readMessage()) != null) {
            final String message = line;
+           if (message.startsWith("HELLO:")) {
+               helloAnswered(message);
+           }
            if (!shuttingDown) {
                SwingUtilities.invokeLater(() -> {
                    if (onMessage != null && !shuttingDown) {
@@ -131,6 +157,71 @@ public class MastermindClient {
         
     }
 
+    /**
+     * Reads the next message as a text line, translating binary frames
+     * 
+     * @return The message, or null when the server closed the connection
+     */
+    private String readMessage() throws IOException {
+        while (true) {
+            if (binary) {
+                if (!reader.nextFrame()) {
+                    return null;
+                }
+                byte[] buf = reader.buffer();
+                int off = reader.lineStart();
+                int len = reader.lineLength();
+                if (buf[off] == WireProtocol.TEXT_MORE || buf[off] == WireProtocol.TEXT && longLine.size() > 0) {
+                    if (longLine.size() + len - 1 > MAX_LINE_LENGTH) {
+                        throw new IOException("message too long");
+                    }
+                    longLine.write(buf, off + 1, len - 1);
+                    if (buf[off] == WireProtocol.TEXT_MORE) {
+                        continue;
+                    }
+                    String line = longLine.toString(StandardCharsets.UTF_8);
+                    longLine.reset();
+                    return line;
+                }
+                String message = WireProtocol.decodeServerFrame(buf, off, len);
+                if (message != null) {
+                    return message;
+                }
+                // Unknown opcode from a newer server, skip it
+            } else {
+                if (!reader.next()) {
+                    return null;
+                }
+                return new String(reader.buffer(), reader.lineStart(), reader.lineLength(),
+                        StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * Switches to the protocol the server picked and sends what was waiting
+     * 
+     * @param hello The server's HELLO answer
+     */
+    private void helloAnswered(String hello) throws IOException {
+        synchronized (sendLock) {
+            if (beforeHello == null) {
+                return;
+            }
+            for (String part : hello.split(":")) {
+                if (part.equals(WireProtocol.BINARY_FEATURE)) {
+                    binary = true;
+                }
+            }
+            List<String> waiting = beforeHello;
+            beforeHello = null;
+            for (String message : waiting) {
+                write(message);
+            }
+            out.flush();
+        }
+    }
+
     /**
      * TODO 3: Send Message (10 minutes)
      * 
@@ -138,16 +229,44 @@ public class MastermindClient {
      * 
      * Steps:
      * 1. Check if out is not null and connected is true
-     * 2. If checks pass, call out.println(message)
+     * 2. If checks pass, write the message: a text line, or a binary frame
+     *    once the server agreed to protocol version 2
+     * 
+     * Messages sent before the server answers HELLO are held back.
      * 
      * @param message The message to send
      */
     public void send(String message) {
         if(out != null && connected == true && message != null) {
-            out.println(message);
+            synchronized (sendLock) {
+                if (beforeHello != null) {
+                    beforeHello.add(message);
+                    return;
+                }
+                try {
+                    write(message);
+                    out.flush();
+                } catch (IOException e) {
+                    System.err.println("Send failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Called holding sendLock
+    private void write(String message) throws IOException {
+        if (binary) {
+            out.write(WireProtocol.encodeClientMessage(message));
+        } else {
+            writeLine(message);
         }
     }
 
+    private void writeLine(String message) throws IOException {
+        out.write((message + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
     /**
      * TODO 4: Disconnect from Server (25 minutes)
      * 
@@ -160,8 +279,8 @@ public class MastermindClient {
      * 4. Try to send "DISCONNECT" message
      * 5. Sleep for 100ms to allow message to send (wrap in try-catch for InterruptedException)
      * 6. Close all resources in try-catch blocks:
-     *    a. Close 'in' (BufferedReader)
-     *    b. Close 'out' (PrintWriter)
+     *    a. Close 'in'
+     *    b. Close 'out'
      *    c. Close 'socket'
      * 7. Catch IOException for each close operation (can use one try-catch for all)
      */
@@ -172,7 +291,12 @@ public class MastermindClient {
         connected = false;
         shuttingDown = true;
         if(out!=null) {
-            out.println("DISCONNECT");
+            synchronized (sendLock) {
+                try {
+                    write("DISCONNECT");
+                    out.flush();
+                } catch (IOException ignored) {}
+            }
         }
         try {
             Thread.sleep(100);
@@ -1,5 +1,22 @@
 /* ECE422C Mastermind Multiplayer Lab
  * MastermindServer
+ * 
+ * Runs in one of three modes, picked at startup:
+ * - threads: one pooled platform thread per client, blocking I/O (default)
+ * - virtual: one virtual thread per client, same blocking ClientHandler
+ *   (needs Java 21+, falls back to threads on older JVMs)
+ * - nio: a few selector threads serve every client (see NioServer)
+ * 
+ * With -Dmastermind.eventLog=DIR games are logged to segment files in DIR
+ * and recovered from them at startup (see GameEventLog);
+ * -Dmastermind.fsyncMs=N sets how long logged events may wait to be forced
+ * to disk (default 100). Finished games are compacted out of the log into
+ * DIR/stats.tsv (see LogCompactor), and live games are snapshotted so a
+ * restart only replays the log after the snapshot (see GameSnapshotter).
+ * 
+ * Counters and latencies (see ServerMetrics) are printed every N ms with
+ * -Dmastermind.statsMs=N, and sent to clients that give STATS:<token>
+ * when the server runs with -Dmastermind.adminToken=<token>.
  */
 
 import java.io.*;
@@ -7,23 +24,93 @@ import java.net.*;
 import java.util.concurrent.*;
 
 public class MastermindServer {
+    /**
+     * How client connections are served
+     */
+    public enum Mode {
+        THREADS, VIRTUAL, NIO
+    }
+
+    // Room for bursts of connects (the ServerSocket default is 50)
+    private static final int ACCEPT_BACKLOG = 1024;
+
     private final int port;
+    private final Mode mode;
     private ServerSocket serverSocket;
-    private final ExecutorService pool = Executors.newCachedThreadPool();
+    private NioServer nioServer;
+    private final ExecutorService pool;
     private final GameLobbyManager lobby = new GameLobbyManager();
     private volatile boolean running = true;
 
     public MastermindServer(int port) {
+        this(port, Mode.THREADS);
+    }
+
+    public MastermindServer(int port, Mode mode) {
+        ExecutorService virtualPool = mode == Mode.VIRTUAL ? newVirtualThreadExecutor() : null;
+        if (mode == Mode.VIRTUAL && virtualPool == null) {
+            System.err.println("Virtual threads need Java 21 or newer. Using " + Mode.THREADS);
+            mode = Mode.THREADS;
+        }
         this.port = port;
+        this.mode = mode;
+        this.pool = virtualPool != null ? virtualPool : Executors.newCachedThreadPool();
+    }
+
+    /**
+     * Creates Executors.newVirtualThreadPerTaskExecutor() through reflection so
+     * the server still compiles and runs on Java 17.
+     * 
+     * Virtual threads suit ClientHandler because it never blocks on the
+     * network while holding a lock: it reads its socket outside any lock,
+     * and sends only queue messages (see OutboundQueue) for a writer to
+     * write after. GameSession's lock is a ReentrantLock held briefly, so a
+     * virtual thread waiting for it unmounts instead of pinning its carrier
+     * thread.
+     * 
+     * @return the executor, or null if this JVM has no virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the mode actually in use (VIRTUAL may have fallen back to THREADS)
+     */
+    public Mode getMode() {
+        return mode;
     }
 
     public void start() throws IOException {
-        serverSocket = new ServerSocket(port);
+        long statsMillis = Long.getLong("mastermind.statsMs", 0);
+        if (statsMillis > 0) {
+            lobby.startStatsDump(statsMillis);
+        }
+        String eventLog = System.getProperty("mastermind.eventLog");
+        if (eventLog != null) {
+            int games = lobby.startEventLog(java.nio.file.Paths.get(eventLog), Long.getLong("mastermind.fsyncMs", 100));
+            System.out.println("Recovered " + games + " games from " + eventLog);
+        }
+        if (mode == Mode.NIO) {
+            // Reactor count can be tuned with -Dmastermind.reactors=N
+            int reactors = Integer.getInteger("mastermind.reactors",
+                    Math.min(4, Runtime.getRuntime().availableProcessors()));
+            nioServer = new NioServer(port, lobby, reactors);
+            nioServer.start();
+            return;
+        }
+
+        serverSocket = new ServerSocket(port, ACCEPT_BACKLOG);
         
         while (running && !pool.isShutdown()) {
             try {
                 Socket clientSocket = serverSocket.accept();
-                pool.execute(new ClientHandler(clientSocket, lobby));
+                pool.execute(new ClientHandler(clientSocket, lobby, pool));
             } catch (IOException e) {
                 if (running) {
                     System.err.println("Error accepting client: " + e.getMessage());
@@ -35,6 +122,10 @@ public class MastermindServer {
     public void stop() {
         running = false;
         pool.shutdown();
+        lobby.shutdown();
+        if (nioServer != null) {
+            nioServer.stop();
+        }
         try {
             if (serverSocket != null) {
                 serverSocket.close();
@@ -56,7 +147,17 @@ public class MastermindServer {
             }
         }
 
-        MastermindServer server = new MastermindServer(port);
+        Mode mode = Mode.THREADS;
+        if (args.length > 1) {
+            try {
+                mode = Mode.valueOf(args[1].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown server mode " + args[1] + ". Using " + mode);
+            }
+        }
+
+        System.out.println("Starting server on port " + port + " in " + mode + " mode");
+        MastermindServer server = new MastermindServer(port, mode);
         try {
             server.start();
         } catch (IOException e) {
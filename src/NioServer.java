@@ -0,0 +1,421 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * NioServer
+ *
+ * This class is a non-blocking server core for MastermindServer's NIO mode.
+ *
+ * One acceptor thread hands new connections round-robin to a small, fixed
+ * set of reactor threads. Each reactor owns a Selector and does all reads,
+ * line framing and writes for its connections, so an idle client costs a
+ * few hundred bytes instead of a parked thread and its stack.
+ *
+ * Complete lines are passed to a ClientHandler on the reactor thread,
+ * exactly as the thread-per-connection mode does, so both modes speak the
+ * same text protocol through the same handlers. Outgoing messages may be
+ * sent from any thread: they wait in the handler's OutboundQueue and the
+ * reactor is woken up to write them, up to MAX_GATHER per write call.
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class NioServer {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final int MAX_GATHER = 64;
+    private static final int ACCEPT_BACKLOG = 1024;
+
+    private final int port;
+    private final GameLobbyManager lobby;
+    private final Reactor[] reactors;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running = true;
+
+    /**
+     * @param port         Port to listen on
+     * @param lobby        The lobby shared by every connection
+     * @param reactorCount Number of I/O reactor threads
+     */
+    public NioServer(int port, GameLobbyManager lobby, int reactorCount) throws IOException {
+        if (reactorCount < 1) {
+            throw new IllegalArgumentException("need at least one reactor: " + reactorCount);
+        }
+        this.port = port;
+        this.lobby = lobby;
+        this.reactors = new Reactor[reactorCount];
+        for (int i = 0; i < reactorCount; i++) {
+            reactors[i] = new Reactor(i);
+        }
+    }
+
+    /**
+     * Starts the reactors and accepts connections until stop() is called
+     */
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+        for (Reactor reactor : reactors) {
+            Thread thread = new Thread(reactor, "NioReactor-" + reactor.index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int next = 0;
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                reactors[next].register(channel);
+                next = (next + 1) % reactors.length;
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("Error accepting client: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing server: " + e.getMessage());
+        }
+        for (Reactor reactor : reactors) {
+            reactor.selector.wakeup();
+        }
+    }
+
+    /**
+     * One selector thread serving many connections
+     */
+    private class Reactor implements Runnable {
+        private final int index;
+        private final Selector selector;
+        private final Queue<SocketChannel> newChannels = new ConcurrentLinkedQueue<>();
+        private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+        // Shared by every connection on this reactor, reads never overlap
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        Reactor(int index) throws IOException {
+            this.index = index;
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            newChannels.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                    registerNewChannels();
+                    flushPendingWrites();
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isValid() && key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Reactor error: " + e.getMessage());
+                }
+            }
+            for (SelectionKey key : selector.keys()) {
+                ((Connection) key.attachment()).closeNow();
+            }
+        }
+
+        private void registerNewChannels() {
+            SocketChannel channel;
+            while ((channel = newChannels.poll()) != null) {
+                try {
+                    Connection connection = new Connection(this, channel);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                } catch (IOException e) {
+                    System.err.println("Error registering client: " + e.getMessage());
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+        }
+
+        private void flushPendingWrites() {
+            Connection connection;
+            while ((connection = pendingWrites.poll()) != null) {
+                connection.writeRequested.set(false);
+                connection.flush();
+            }
+        }
+
+        /**
+         * Reads what is available and hands every complete line, or frame
+         * once the client switched to the binary protocol, to the handler
+         */
+        private void read(Connection connection) {
+            readBuffer.clear();
+            int n;
+            try {
+                n = connection.channel.read(readBuffer);
+            } catch (IOException e) {
+                connection.closeNow();
+                return;
+            }
+            if (n < 0) {
+                connection.closeNow();
+                return;
+            }
+
+            byte[] bytes = readBuffer.array();
+            int i = 0;
+            while (i < n) {
+                if (connection.handler.isBinary()) {
+                    // The rest of this read, and everything after it, is frames
+                    if (!connection.append(bytes, i, n - i)) {
+                        System.err.println("Client frame too long, closing connection");
+                        connection.closeNow();
+                        return;
+                    }
+                    connection.dispatchFrames();
+                    return;
+                }
+                // Copy up to the end of the line in one go
+                int end = i;
+                while (end < n && bytes[end] != '\n') {
+                    end++;
+                }
+                if (!connection.append(bytes, i, end - i)) {
+                    System.err.println("Client line too long, closing connection");
+                    connection.closeNow();
+                    return;
+                }
+                if (end == n || !connection.dispatchLine()) {
+                    return;
+                }
+                i = end + 1;
+            }
+        }
+    }
+
+    /**
+     * The state of one client connection. Everything except the
+     * ClientTransport methods runs on the owning reactor's thread.
+     */
+    private class Connection implements ClientTransport {
+        private final Reactor reactor;
+        private final SocketChannel channel;
+        private final ClientHandler handler;
+        // Frames taken from the handler's queue that are not fully written yet
+        private final ArrayDeque<ByteBuffer> writing = new ArrayDeque<>();
+        private final byte[][] batch = new byte[MAX_GATHER][];
+        private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+        private final AtomicBoolean writeRequested = new AtomicBoolean(false);
+        private volatile boolean closeRequested = false;
+        private volatile boolean abortRequested = false;
+        private volatile boolean closed = false;
+        private SelectionKey key;
+        private byte[] line = new byte[128];
+        private int lineLength = 0;
+
+        Connection(Reactor reactor, SocketChannel channel) {
+            this.reactor = reactor;
+            this.channel = channel;
+            this.handler = new ClientHandler(lobby, this);
+        }
+
+        @Override
+        public void outboundReady() {
+            if (!closed) {
+                requestWrite();
+            }
+        }
+
+        @Override
+        public void close() {
+            closeRequested = true;
+            requestWrite();
+        }
+
+        @Override
+        public void abort() {
+            abortRequested = true;
+            requestWrite();
+        }
+
+        private void requestWrite() {
+            if (writeRequested.compareAndSet(false, true)) {
+                reactor.pendingWrites.add(this);
+                reactor.selector.wakeup();
+            }
+        }
+
+        /**
+         * Adds bytes to the partial line (or frames) buffer
+         *
+         * @return false if the buffer would outgrow its limit: a full line,
+         *         or a full frame and its three-byte header
+         */
+        private boolean append(byte[] bytes, int off, int len) {
+            if (lineLength + len > line.length) {
+                if (lineLength + len > MAX_LINE_LENGTH + 3) {
+                    return false;
+                }
+                int size = line.length;
+                while (size < lineLength + len) {
+                    size *= 2;
+                }
+                line = Arrays.copyOf(line, Math.min(size, MAX_LINE_LENGTH + 3));
+            }
+            System.arraycopy(bytes, off, line, lineLength, len);
+            lineLength += len;
+            return true;
+        }
+
+        /**
+         * Passes every complete binary frame in the buffer to the handler and
+         * keeps the incomplete tail
+         */
+        private void dispatchFrames() {
+            int pos = 0;
+            try {
+                while (!closed) {
+                    long header = WireProtocol.header(line, pos, lineLength);
+                    if (header < 0) {
+                        break;
+                    }
+                    int start = pos + (int) (header >>> 32);
+                    int length = (int) header;
+                    if (lineLength - start < length) {
+                        break;
+                    }
+                    handler.handleFrame(line, start, length);
+                    pos = start + length;
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Client handler error: " + e);
+                closeNow();
+                return;
+            }
+            System.arraycopy(line, pos, line, 0, lineLength - pos);
+            lineLength -= pos;
+        }
+
+        /**
+         * Passes the buffered line to the handler
+         *
+         * @return false if the connection was closed while handling it
+         */
+        private boolean dispatchLine() {
+            int length = lineLength;
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            lineLength = 0;
+            try {
+                handler.handleLine(line, 0, length);
+            } catch (RuntimeException e) {
+                System.err.println("Client handler error: " + e);
+                closeNow();
+            }
+            return !closed;
+        }
+
+        /**
+         * Writes as much queued output as the socket takes, several messages
+         * per write call. Waits for OP_WRITE if the socket buffer fills up.
+         * New frames are only taken from the handler's queue once the last
+         * ones are written, so a slow client's backlog stays in the bounded
+         * queue where the slow-consumer policy can see it.
+         */
+        private void flush() {
+            if (closed) {
+                return;
+            }
+            if (abortRequested) {
+                closeNow();
+                return;
+            }
+            try {
+                while (!writing.isEmpty() || takeOutbound()) {
+                    int count = 0;
+                    long offered = 0;
+                    for (ByteBuffer buffer : writing) {
+                        gather[count++] = buffer;
+                        offered += buffer.remaining();
+                        if (count == MAX_GATHER) {
+                            break;
+                        }
+                    }
+                    long written = channel.write(gather, 0, count);
+                    Arrays.fill(gather, 0, count, null);
+                    while (!writing.isEmpty() && !writing.peek().hasRemaining()) {
+                        writing.poll();
+                    }
+                    if (written < offered) {
+                        // Socket buffer is full, wait until it drains
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+                key.interestOps(SelectionKey.OP_READ);
+                if (closeRequested) {
+                    closeNow();
+                }
+            } catch (IOException | CancelledKeyException e) {
+                closeNow();
+            }
+        }
+
+        /**
+         * @return true if frames were moved from the handler's queue
+         */
+        private boolean takeOutbound() {
+            int n = handler.drainOutbound(batch);
+            for (int i = 0; i < n; i++) {
+                writing.add(ByteBuffer.wrap(batch[i]));
+                batch[i] = null;
+            }
+            return n > 0;
+        }
+
+        private void closeNow() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            writing.clear();
+            handler.disconnected();
+        }
+    }
+}
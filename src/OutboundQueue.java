@@ -0,0 +1,208 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * OutboundQueue
+ *
+ * This class is the bounded queue of encoded messages waiting to be written
+ * to one client.
+ *
+ * Any thread may offer a message; it never blocks on the network. A single
+ * writer (a pooled task in thread mode, the reactor in NIO mode) drains the
+ * queue in batches so several messages go out per write call. The queue
+ * tracks whether a writer is currently responsible for it: offer() reports
+ * when one needs to be woken, and drainTo() hands the responsibility back
+ * once the queue is empty.
+ *
+ * When a client reads too slowly the queue fills up and the slow-consumer
+ * policy decides what happens:
+ * - DROP_LOBBY_UPDATES: lobby updates are droppable, and each newer one
+ *   replaces the oldest queued one. Other messages may push a queued lobby
+ *   update out. Only a queue full of game messages overflows.
+ * - DISCONNECT: any message that does not fit overflows.
+ * On overflow the caller disconnects the client.
+ *
+ * Set with -Dmastermind.slowConsumer=drop|disconnect and
+ * -Dmastermind.outboundLimit=N (messages, default 1024).
+ */
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class OutboundQueue {
+    /**
+     * What to do with a client whose queue is full
+     */
+    public enum Policy {
+        DROP_LOBBY_UPDATES, DISCONNECT
+    }
+
+    /**
+     * Outcome of offer()
+     */
+    public enum Offer {
+        // Queued, a writer is already on it
+        QUEUED,
+        // Queued, and the caller must wake the writer
+        WAKE_WRITER,
+        // A lobby update was dropped to make room or because there was none
+        DROPPED,
+        // Did not fit, the client should be disconnected
+        OVERFLOW
+    }
+
+    public static final Policy DEFAULT_POLICY =
+            "disconnect".equalsIgnoreCase(System.getProperty("mastermind.slowConsumer"))
+                    ? Policy.DISCONNECT : Policy.DROP_LOBBY_UPDATES;
+    public static final int DEFAULT_LIMIT = Integer.getInteger("mastermind.outboundLimit", 1024);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private final int limit;
+    private final Policy policy;
+    private int droppableCount = 0;
+    private boolean writerScheduled = false;
+    private long dropped = 0;
+
+    public OutboundQueue() {
+        this(DEFAULT_LIMIT, DEFAULT_POLICY);
+    }
+
+    /**
+     * @param limit  Most messages that may wait at once
+     * @param policy What to do when a message does not fit
+     */
+    public OutboundQueue(int limit, Policy policy) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1: " + limit);
+        }
+        this.limit = limit;
+        this.policy = policy;
+    }
+
+    /**
+     * Queues an encoded message
+     *
+     * @param frame     The bytes to write, including the line terminator.
+     *                  May be shared between queues, it is never modified.
+     * @param droppable true for lobby updates that a newer one supersedes
+     * @return What happened, see Offer
+     */
+    public Offer offer(byte[] frame, boolean droppable) {
+        lock.lock();
+        try {
+            Offer result = null;
+            if (entries.size() >= limit) {
+                if (policy == Policy.DISCONNECT || !removeOldestDroppable()) {
+                    if (droppable && policy == Policy.DROP_LOBBY_UPDATES) {
+                        dropped++;
+                        return Offer.DROPPED;
+                    }
+                    return Offer.OVERFLOW;
+                }
+                result = Offer.DROPPED;
+            }
+            entries.addLast(new Entry(frame, droppable));
+            if (droppable) {
+                droppableCount++;
+            }
+            if (!writerScheduled) {
+                writerScheduled = true;
+                return Offer.WAKE_WRITER;
+            }
+            return result != null ? result : Offer.QUEUED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes up to batch.length messages off the queue. When the queue is
+     * empty the caller stops being the writer: the next offer() will ask for
+     * a new one.
+     *
+     * @param batch Filled with frames, oldest first
+     * @return Number of frames taken, 0 if the queue was empty
+     */
+    public int drainTo(byte[][] batch) {
+        lock.lock();
+        try {
+            int n = 0;
+            while (n < batch.length && !entries.isEmpty()) {
+                Entry entry = entries.pollFirst();
+                if (entry.droppable) {
+                    droppableCount--;
+                }
+                batch[n++] = entry.frame;
+            }
+            if (n == 0) {
+                writerScheduled = false;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets everything queued, for a closed connection
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            droppableCount = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of lobby updates dropped because this client was slow
+     */
+    public long getDropped() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return Messages currently waiting
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held
+    private boolean removeOldestDroppable() {
+        if (droppableCount == 0) {
+            return false;
+        }
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            if (it.next().droppable) {
+                it.remove();
+                droppableCount--;
+                dropped++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Entry {
+        final byte[] frame;
+        final boolean droppable;
+
+        Entry(byte[] frame, boolean droppable) {
+            this.frame = frame;
+            this.droppable = droppable;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * ParallelKnuthSolver
+ *
+ * This class is a KnuthSolver whose guess selection is split across cores.
+ *
+ * The range of possible guesses is divided into slices on a ForkJoinPool.
+ * Each worker builds partition histograms for its slice with its own
+ * KnuthSolver.Scan, and the slice results are reduced by keeping the
+ * smallest choice. Workers share the best worst case found so far so every
+ * slice can prune early. The chosen guess is the same one the single
+ * threaded solver picks.
+ *
+ * Needed for boards larger than 4x6, e.g. 5x8 (32,768 codes) or 6x9
+ * (531,441 codes), where one thread takes seconds to minutes per guess.
+ */
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ParallelKnuthSolver extends KnuthSolver implements AutoCloseable {
+    // Slices per worker, so busy workers can steal from slow ones
+    private static final int SLICES_PER_WORKER = 8;
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+
+    /**
+     * @param space       The board to solve
+     * @param parallelism Number of worker threads
+     */
+    public ParallelKnuthSolver(CodeSpace space, int parallelism) {
+        super(space);
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Uses one worker per available core
+     */
+    public ParallelKnuthSolver(CodeSpace space) {
+        this(space, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    protected int selectGuess(CandidateSet candidates) {
+        int[] codes = new int[candidates.count()];
+        int n = candidates.toArray(codes);
+        int size = getSpace().size();
+        int slice = Math.max(1, size / (parallelism * SLICES_PER_WORKER));
+
+        SliceTask task = new SliceTask(0, size, slice, codes, n, candidates, new AtomicLong(Long.MAX_VALUE));
+        long[] result = pool.invoke(task);
+        addEvaluations(result[1]);
+        return choiceGuess(result[0]);
+    }
+
+    /**
+     * @return Number of worker threads
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Searches guesses [from, to), splitting in half until a slice is small
+     * enough. Returns {best choice, evaluations}.
+     */
+    private class SliceTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int slice;
+        private final int[] codes;
+        private final int n;
+        private final CandidateSet candidates;
+        private final AtomicLong sharedBest;
+
+        SliceTask(int from, int to, int slice, int[] codes, int n, CandidateSet candidates, AtomicLong sharedBest) {
+            this.from = from;
+            this.to = to;
+            this.slice = slice;
+            this.codes = codes;
+            this.n = n;
+            this.candidates = candidates;
+            this.sharedBest = sharedBest;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= slice) {
+                Scan scan = new Scan(getHistogramSize(), sharedBest);
+                scan.run(getScorer(), from, to, codes, n, candidates);
+                return new long[]{scan.best, scan.evaluations};
+            }
+            int mid = (from + to) >>> 1;
+            SliceTask left = new SliceTask(from, mid, slice, codes, n, candidates, sharedBest);
+            SliceTask right = new SliceTask(mid, to, slice, codes, n, candidates, sharedBest);
+            left.fork();
+            long[] r = right.compute();
+            long[] l = left.join();
+            return new long[]{Math.min(l[0], r[0]), l[1] + r[1]};
+        }
+    }
+
+    /**
+     * Times guess selection on a board with 1, 2, 4, ... workers up to the
+     * number of cores and prints the speedup over one worker.
+     *
+     * The workload is the opening guess plus full games against a few fixed
+     * secrets, so every run does the same searches.
+     *
+     * Usage: java ParallelKnuthSolver [pegs colors [games]]
+     */
+    public static void main(String[] args) {
+        CodeSpace space = new CodeSpace(5, 8);
+        int games = 3;
+        if (args.length >= 2) {
+            space = new CodeSpace(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+        }
+        if (args.length >= 3) {
+            games = Integer.parseInt(args[2]);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println("Board: " + space.getPegs() + " pegs, " + space.getColors()
+                + " colors (" + space.size() + " codes), " + games + " games, " + cores + " cores");
+
+        long baseline = 0;
+        for (int workers = 1; workers <= cores; workers = workers < cores ? Math.min(workers * 2, cores) : cores + 1) {
+            try (ParallelKnuthSolver solver = new ParallelKnuthSolver(space, workers)) {
+                long start = System.nanoTime();
+                solver.firstGuess();
+                long totalGuesses = 0;
+                for (int g = 0; g < games; g++) {
+                    // Spread the secrets evenly over the space
+                    int secret = (int) ((long) space.size() * (2 * g + 1) / (2 * games));
+                    totalGuesses += solver.solve(secret).getGuessCount();
+                }
+                long elapsed = System.nanoTime() - start;
+                if (workers == 1) {
+                    baseline = elapsed;
+                }
+                System.out.printf("  %2d workers: %7d ms, speedup %.2fx, %d evaluations, %d guesses%n",
+                        workers, elapsed / 1_000_000, (double) baseline / elapsed,
+                        solver.getEvaluations(), totalGuesses);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * ProtocolCommand
+ *
+ * This enum lists the commands a client may send and finds the command
+ * named at the start of a line without building a String.
+ *
+ * The lookup is a perfect hash over the command names: a table with one
+ * slot per name, indexed by a hash of the token's length and three of its
+ * bytes. The hash seed is searched for once, when the class loads, so a
+ * token costs a few array reads and one byte comparison with the single
+ * candidate in its slot.
+ */
+
+public enum ProtocolCommand {
+    HELLO, CONNECT, GET_GAMES, CREATE_GAME, JOIN_GAME, LEAVE_GAME, GUESS, CHAT, DISCONNECT, RESUME, STATS;
+
+    private static final int TABLE_SIZE = 64;
+    private static final ProtocolCommand[] TABLE = new ProtocolCommand[TABLE_SIZE];
+    private static final int SEED;
+
+    private final byte[] token = name().getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+    static {
+        int seed = 1;
+        while (!fill(seed)) {
+            seed++;
+        }
+        SEED = seed;
+    }
+
+    /**
+     * Finds the command spelled by buf[off, off + len)
+     *
+     * @return The command, or null if the token is not a command
+     */
+    public static ProtocolCommand lookup(byte[] buf, int off, int len) {
+        if (len == 0) {
+            return null;
+        }
+        ProtocolCommand candidate = TABLE[hash(buf, off, len, SEED)];
+        if (candidate == null || candidate.token.length != len) {
+            return null;
+        }
+        byte[] token = candidate.token;
+        for (int i = 0; i < len; i++) {
+            if (buf[off + i] != token[i]) {
+                return null;
+            }
+        }
+        return candidate;
+    }
+
+    private static int hash(byte[] buf, int off, int len, int seed) {
+        int h = len;
+        h = h * seed + buf[off];
+        h = h * seed + buf[off + (len >> 1)];
+        h = h * seed + buf[off + len - 1];
+        return (h ^ (h >>> 7)) & (TABLE_SIZE - 1);
+    }
+
+    /**
+     * Tries to place every command with one seed
+     *
+     * @return false if two commands share a slot
+     */
+    private static boolean fill(int seed) {
+        java.util.Arrays.fill(TABLE, null);
+        for (ProtocolCommand command : values()) {
+            int slot = hash(command.token, 0, command.token.length, seed);
+            if (TABLE[slot] != null) {
+                return false;
+            }
+            TABLE[slot] = command;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,114 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * ServerMetrics
+ *
+ * This class collects the server's counters and latency histograms. One
+ * instance lives in the GameLobbyManager and every ClientHandler records
+ * into it:
+ *   - time in handler per command (LatencyHistogram, nanoseconds)
+ *   - messages and bytes in and out
+ *   - connections open now
+ *   - broadcast fan-out: clients reached by each game broadcast
+ *
+ * Recording takes no lock and allocates nothing, so it stays on in
+ * production. report() is read by the admin STATS command and by the
+ * periodic dump (-Dmastermind.statsMs=N).
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ServerMetrics {
+    private static final ProtocolCommand[] COMMANDS = ProtocolCommand.values();
+
+    private final LatencyHistogram[] commands = new LatencyHistogram[COMMANDS.length];
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder messagesOut = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final LatencyHistogram fanOut = new LatencyHistogram();
+
+    public ServerMetrics() {
+        for (int i = 0; i < commands.length; i++) {
+            commands[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * @param command The command handled
+     * @param nanos   Time spent in its handler
+     */
+    public void commandHandled(ProtocolCommand command, long nanos) {
+        commands[command.ordinal()].record(nanos);
+    }
+
+    /**
+     * @param bytes Size of a line or frame read from a client
+     */
+    public void messageIn(int bytes) {
+        messagesIn.increment();
+        bytesIn.add(bytes);
+    }
+
+    /**
+     * @param bytes Size of a line or frame queued for a client
+     */
+    public void messageOut(int bytes) {
+        messagesOut.increment();
+        bytesOut.add(bytes);
+    }
+
+    public void connectionOpened() {
+        connections.incrementAndGet();
+    }
+
+    public void connectionClosed() {
+        connections.decrementAndGet();
+    }
+
+    /**
+     * @param recipients Clients a game broadcast was sent to
+     */
+    public void broadcast(int recipients) {
+        fanOut.record(recipients);
+    }
+
+    public LatencyHistogram getCommandLatency(ProtocolCommand command) {
+        return commands[command.ordinal()];
+    }
+
+    public long getMessagesIn() {
+        return messagesIn.sum();
+    }
+
+    public long getMessagesOut() {
+        return messagesOut.sum();
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * @return One line per counter group and per command seen so far;
+     *         latencies in microseconds
+     */
+    public List<String> report() {
+        List<String> lines = new ArrayList<>();
+        lines.add("connections=" + connections.get()
+                + " messagesIn=" + messagesIn.sum() + " bytesIn=" + bytesIn.sum()
+                + " messagesOut=" + messagesOut.sum() + " bytesOut=" + bytesOut.sum());
+        for (ProtocolCommand command : COMMANDS) {
+            LatencyHistogram latency = commands[command.ordinal()];
+            if (latency.getCount() > 0) {
+                lines.add(command + " us " + latency.format(1000));
+            }
+        }
+        if (fanOut.getCount() > 0) {
+            lines.add("fanOut " + fanOut.format(1));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,128 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * SessionMailbox
+ *
+ * This class runs one game's commands one at a time on a shared pool, so
+ * a game behaves like an actor instead of a lock that reader threads
+ * queue up on.
+ *
+ * A reader thread hands a command (guess, join, leave, chat) to the game's
+ * mailbox and goes straight back to its socket. At most one pool thread
+ * drains a mailbox at a time, in arrival order; after a batch it yields the
+ * thread so a busy game cannot starve the others. The session lock is then
+ * only ever taken by that one thread, plus the occasional game-list read,
+ * so it is never contended by network threads.
+ *
+ * -Dmastermind.sessionMode picks how games run their commands:
+ *   lock    - on the calling thread, under the session lock (default)
+ *   actor   - on a mailbox drained by a shared pool
+ *   sharded - on a mailbox pinned to one shard thread (SessionScheduler)
+ */
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SessionMailbox implements Executor {
+    public static final String MODE = System.getProperty("mastermind.sessionMode", "lock");
+    // Commands run per turn on a pool thread before yielding it
+    private static final int BATCH = 32;
+
+    // Where the next drain runs; changed by moveTo()
+    private volatile Executor pool;
+    private final ConcurrentLinkedQueue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    // Time spent running commands, written only by the draining thread
+    private volatile long busyNanos = 0;
+
+    /**
+     * @param pool Threads that drain mailboxes, shared by all games
+     */
+    public SessionMailbox(Executor pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Drains this mailbox on other threads from now on. A drain already
+     * running finishes where it is, and the next one starts on the new
+     * executor, so commands still run one at a time and in order.
+     */
+    public void moveTo(Executor pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return The pool shared by every game's mailbox, one thread per core
+     */
+    public static Executor sharedPool() {
+        return PoolHolder.POOL;
+    }
+
+    /**
+     * Queues a command. It runs after every command queued before it.
+     */
+    @Override
+    public void execute(Runnable command) {
+        commands.add(command);
+        if (scheduled.compareAndSet(false, true)) {
+            pool.execute(this::drain);
+        }
+    }
+
+    /**
+     * @return Commands waiting to run
+     */
+    public int pending() {
+        return commands.size();
+    }
+
+    /**
+     * @return Total time spent running this game's commands
+     */
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    private void drain() {
+        long start = System.nanoTime();
+        for (int i = 0; i < BATCH; i++) {
+            Runnable command = commands.poll();
+            if (command == null) {
+                break;
+            }
+            try {
+                command.run();
+            } catch (RuntimeException e) {
+                // One bad command must not stall the game
+                System.err.println("Error in game command: " + e);
+            }
+        }
+        busyNanos += System.nanoTime() - start;
+        if (!commands.isEmpty()) {
+            // Back of the pool's queue, behind other games
+            pool.execute(this::drain);
+            return;
+        }
+        scheduled.set(false);
+        // A command added after the poll above but before the flag was
+        // cleared saw scheduled == true and did not schedule a drain
+        if (!commands.isEmpty() && scheduled.compareAndSet(false, true)) {
+            pool.execute(this::drain);
+        }
+    }
+
+    private static class PoolHolder {
+        static final ExecutorService POOL;
+
+        static {
+            AtomicInteger count = new AtomicInteger();
+            POOL = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread thread = new Thread(r, "session-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * SessionScheduler
+ *
+ * This class pins games to a fixed set of shard threads, one per core.
+ *
+ * Each game is placed on a shard by the hash of its numeric id, and its
+ * SessionMailbox is drained only by that shard's thread. A game's state
+ * therefore stays in one core's cache, and games on different shards never
+ * touch the same locks or queues. Each shard counts the commands it ran,
+ * its busy time and how many games wait in its queue.
+ *
+ * A hot shard can be relieved by moving games off it: move() does one game
+ * by hand, rebalance() moves the busiest game of the busiest shard to the
+ * idlest one. With -Dmastermind.rebalanceMs=N rebalance() runs every N ms.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SessionScheduler {
+    public static final long REBALANCE_MILLIS = Long.getLong("mastermind.rebalanceMs", 0);
+    // A shard is hot when its busy time since the last rebalance is this
+    // many times the average
+    private static final double HOT_FACTOR = 1.5;
+
+    private final Shard[] shards;
+    // Which shard each game is on
+    private final ConcurrentLongMap<Placement> placements = new ConcurrentLongMap<>();
+    private final ScheduledExecutorService timer;
+
+    /**
+     * @param shardCount      Number of shard threads
+     * @param rebalanceMillis How often to rebalance, or 0 for never
+     */
+    public SessionScheduler(int shardCount, long rebalanceMillis) {
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+        if (rebalanceMillis > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "SessionScheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            timer.scheduleAtFixedRate(this::rebalance, rebalanceMillis, rebalanceMillis, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    /**
+     * Places a game on its shard
+     *
+     * @param gameId The game's numeric id
+     * @return The mailbox to run the game's commands on
+     */
+    public SessionMailbox register(long gameId) {
+        Shard shard = shards[shardIndex(gameId)];
+        SessionMailbox mailbox = new SessionMailbox(shard);
+        placements.put(gameId, new Placement(gameId, mailbox, shard));
+        shard.games.incrementAndGet();
+        return mailbox;
+    }
+
+    /**
+     * Forgets a removed game
+     */
+    public void unregister(long gameId) {
+        Placement placement = placements.remove(gameId);
+        if (placement != null) {
+            synchronized (placement) {
+                placement.shard.games.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Moves a game to another shard
+     *
+     * @return false if the game is not registered
+     */
+    public boolean move(long gameId, int shardIndex) {
+        Placement placement = placements.get(gameId);
+        if (placement == null) {
+            return false;
+        }
+        synchronized (placement) {
+            Shard target = shards[shardIndex];
+            if (placement.shard != target) {
+                placement.shard.games.decrementAndGet();
+                target.games.incrementAndGet();
+                placement.shard = target;
+                placement.mailbox.moveTo(target);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves the busiest game off the busiest shard if that shard did more
+     * than HOT_FACTOR times the average work since the last call and the
+     * move narrows the gap to the idlest shard
+     *
+     * @return true if a game was moved
+     */
+    public synchronized boolean rebalance() {
+        long total = 0;
+        long[] work = new long[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            work[i] = shards[i].takeWorkSinceRebalance();
+            total += work[i];
+        }
+        int hot = 0;
+        int cold = 0;
+        for (int i = 1; i < shards.length; i++) {
+            if (work[i] > work[hot]) {
+                hot = i;
+            }
+            if (work[i] < work[cold]) {
+                cold = i;
+            }
+        }
+        // Per-game work over the same interval
+        Placement busiest = null;
+        long busiestWork = -1;
+        for (Placement placement : placements.values()) {
+            long busy = placement.mailbox.getBusyNanos();
+            long gameWork = busy - placement.busyAtRebalance;
+            placement.busyAtRebalance = busy;
+            if (placement.shard == shards[hot] && gameWork > busiestWork) {
+                busiestWork = gameWork;
+                busiest = placement;
+            }
+        }
+        if (hot == cold || work[hot] <= HOT_FACTOR * total / shards.length
+                || shards[hot].games.get() < 2 || busiest == null) {
+            return false;
+        }
+        // Moving a game that is most of the gap would only swap the shards
+        if (busiestWork >= work[hot] - work[cold]) {
+            return false;
+        }
+        return move(busiest.gameId, cold);
+    }
+
+    /**
+     * @return One line of counters per shard
+     */
+    public List<ShardStats> getStats() {
+        List<ShardStats> stats = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            stats.add(new ShardStats(shard.index, shard.queue.size(), shard.games.get(),
+                    shard.executed.get(), shard.busyNanos.get()));
+        }
+        return stats;
+    }
+
+    /**
+     * @return The shard a game runs on, or would be placed on if registered
+     */
+    public int shardOf(long gameId) {
+        Placement placement = placements.get(gameId);
+        return placement != null ? placement.shard.index : shardIndex(gameId);
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public void shutdown() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+        for (Shard shard : shards) {
+            shard.thread.interrupt();
+        }
+    }
+
+    private int shardIndex(long gameId) {
+        long h = gameId * 0x9E3779B97F4A7C15L;
+        return (int) ((h >>> 33) % shards.length);
+    }
+
+    /**
+     * Counters of one shard at one moment
+     */
+    public static class ShardStats {
+        public final int shard;
+        // Games waiting for the shard thread
+        public final int queueDepth;
+        public final int games;
+        // Mailbox turns run; each is a batch of one game's commands
+        public final long executed;
+        public final long busyNanos;
+
+        ShardStats(int shard, int queueDepth, int games, long executed, long busyNanos) {
+            this.shard = shard;
+            this.queueDepth = queueDepth;
+            this.games = games;
+            this.executed = executed;
+            this.busyNanos = busyNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "shard " + shard + ": queue=" + queueDepth + " games=" + games
+                    + " executed=" + executed + " busyMs=" + busyNanos / 1_000_000;
+        }
+    }
+
+    /**
+     * A game's mailbox and the shard currently draining it
+     */
+    private static class Placement {
+        final long gameId;
+        final SessionMailbox mailbox;
+        volatile Shard shard;
+        // Game's busy time at the last rebalance(), guarded by the scheduler
+        long busyAtRebalance = 0;
+
+        Placement(long gameId, SessionMailbox mailbox, Shard shard) {
+            this.gameId = gameId;
+            this.mailbox = mailbox;
+            this.shard = shard;
+        }
+    }
+
+    /**
+     * One thread with its own queue
+     */
+    private static class Shard implements Executor {
+        final int index;
+        final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+        final AtomicInteger games = new AtomicInteger();
+        final AtomicLong executed = new AtomicLong();
+        final AtomicLong busyNanos = new AtomicLong();
+        final Thread thread;
+        private long busyAtRebalance = 0;
+
+        Shard(int index) {
+            this.index = index;
+            thread = new Thread(this::run, "shard-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            queue.add(task);
+        }
+
+        private void run() {
+            try {
+                while (true) {
+                    Runnable task = queue.take();
+                    long start = System.nanoTime();
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("Error on " + Thread.currentThread().getName() + ": " + e);
+                    }
+                    busyNanos.addAndGet(System.nanoTime() - start);
+                    executed.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                // Shut down
+            }
+        }
+
+        /**
+         * @return Busy time since the previous call; called by rebalance() only
+         */
+        long takeWorkSinceRebalance() {
+            long busy = busyNanos.get();
+            long work = busy - busyAtRebalance;
+            busyAtRebalance = busy;
+            return work;
+        }
+    }
+}
@@ -0,0 +1,514 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * WireProtocol
+ *
+ * This class defines protocol version 2, a compact binary framing, and
+ * converts between it and the version 1 text lines.
+ *
+ * Negotiation: the client sends the usual text line "HELLO:2[:features]".
+ * A server that speaks version 2 answers "HELLO:2:binary[:features]" as a
+ * text line and uses binary frames from then on, in both directions. The
+ * client sends nothing else until that answer arrives. A server that only
+ * knows version 1 answers without "binary" and both sides stay on text.
+ *
+ * Frame: varint length, then that many bytes: a one-byte opcode and its
+ * payload. Ids are 64-bit big-endian integers (IdAllocator's numeric ids),
+ * guesses are packed codes (CodeSpace) as varints, and text is UTF-8.
+ * Any message without an opcode of its own travels as a TEXT frame holding
+ * the version 1 line, so every message can be sent either way. A line too
+ * long for one frame (a big lobby's game list) is split into TEXT_MORE
+ * frames, each meaning "the line goes on in the next frame", and a last
+ * TEXT frame; the receiver joins their payloads.
+ *
+ * Client to server:
+ *   CONNECT name | GET_GAMES | CREATE_GAME u8 players, name
+ *   JOIN_GAME id | LEAVE_GAME id | GUESS id, varint code
+ *   CHAT id, message | DISCONNECT
+ * Server to client:
+ *   CONNECTED playerId | GAME_CREATED id
+ *   GUESS_RESULT id, u8 guessNumber, u8 black, u8 white, name
+ *   TURN_UPDATE id, playerId | CODES_REMAINING id, varint count
+ *   CHAT_MESSAGE id, varint nameLength, name, message
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public final class WireProtocol {
+    public static final int VERSION = 2;
+    // Token in the HELLO answer that switches both sides to frames
+    public static final String BINARY_FEATURE = "binary";
+    public static final int MAX_FRAME_LENGTH = 64 * 1024;
+
+    // Client to server
+    public static final byte CONNECT = 0x01;
+    public static final byte GET_GAMES = 0x02;
+    public static final byte CREATE_GAME = 0x03;
+    public static final byte JOIN_GAME = 0x04;
+    public static final byte LEAVE_GAME = 0x05;
+    public static final byte GUESS = 0x06;
+    public static final byte CHAT = 0x07;
+    public static final byte DISCONNECT = 0x08;
+
+    // Server to client
+    public static final byte CONNECTED = 0x41;
+    public static final byte GAME_CREATED = 0x42;
+    public static final byte GUESS_RESULT = 0x43;
+    public static final byte TURN_UPDATE = 0x44;
+    public static final byte CODES_REMAINING = 0x45;
+    public static final byte CHAT_MESSAGE = 0x46;
+
+    // Either direction: a version 1 line, or the first parts of one
+    public static final byte TEXT_MORE = 0x7E;
+    public static final byte TEXT = 0x7F;
+
+    // The text command for each client opcode, CONNECT to DISCONNECT
+    private static final ProtocolCommand[] COMMANDS = {
+        ProtocolCommand.CONNECT, ProtocolCommand.GET_GAMES, ProtocolCommand.CREATE_GAME,
+        ProtocolCommand.JOIN_GAME, ProtocolCommand.LEAVE_GAME, ProtocolCommand.GUESS,
+        ProtocolCommand.CHAT, ProtocolCommand.DISCONNECT
+    };
+
+    private WireProtocol() {
+    }
+
+    /**
+     * @return The command a client opcode carries, or null for TEXT and
+     *         unknown opcodes
+     */
+    public static ProtocolCommand command(byte opcode) {
+        return opcode >= CONNECT && opcode <= DISCONNECT ? COMMANDS[opcode - CONNECT] : null;
+    }
+
+    // Ids in frames are the numeric ids from IdAllocator
+
+    /**
+     * @return The numeric game id, or -1 if the string is not a game id
+     */
+    public static long gameId(String id) {
+        return IdAllocator.parseGameId(id);
+    }
+
+    public static String gameIdString(long id) {
+        return IdAllocator.formatGameId(id);
+    }
+
+    /**
+     * @return The numeric player id, or -1 if the string is not a player id
+     */
+    public static long playerId(String id) {
+        return IdAllocator.parsePlayerId(id);
+    }
+
+    public static String playerIdString(long id) {
+        return IdAllocator.formatPlayerId(id);
+    }
+
+    /**
+     * Reads a frame header at buf[off, end)
+     *
+     * @return (header length << 32) | body length, or -1 if the header is
+     *         not complete yet
+     * @throws IllegalArgumentException if the frame is too long
+     */
+    public static long header(byte[] buf, int off, int end) {
+        int length = 0;
+        for (int i = 0; i < 3; i++) {
+            if (off + i >= end) {
+                return -1;
+            }
+            int b = buf[off + i];
+            length |= (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                if (length == 0 || length > MAX_FRAME_LENGTH) {
+                    throw new IllegalArgumentException("bad frame length " + length);
+                }
+                return ((long) (i + 1) << 32) | length;
+            }
+        }
+        throw new IllegalArgumentException("bad frame length");
+    }
+
+    /**
+     * Encodes a version 1 message sent by the server as TEXT frames. The
+     * messages with an opcode of their own are built by connected(),
+     * gameCreated() and the rest below, where the message is made.
+     *
+     * @param message The text message, without line terminator
+     * @return The frames
+     */
+    public static byte[] encodeServerMessage(String message) {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        Writer out = new Writer();
+        out.text(text, 0, text.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return The frame for CONNECTED:playerId
+     */
+    public static byte[] connected(long playerId) {
+        return new Writer(CONNECTED).i64(playerId).finish();
+    }
+
+    /**
+     * @return The frame for GAME_CREATED:gameId
+     */
+    public static byte[] gameCreated(long gameId) {
+        return new Writer(GAME_CREATED).i64(gameId).finish();
+    }
+
+    /**
+     * @return The frame for GUESS_RESULT:gameId:name:guessNumber:black:white,
+     *         or null if the name is too long for one frame
+     */
+    public static byte[] guessResult(long gameId, String name, int guessNumber, int black, int white) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (12 + bytes.length > MAX_FRAME_LENGTH) {
+            return null;
+        }
+        return new Writer(GUESS_RESULT).i64(gameId).u8(guessNumber).u8(black).u8(white)
+                .bytes(bytes, 0, bytes.length).finish();
+    }
+
+    /**
+     * @return The frame for TURN_UPDATE:gameId:playerId
+     */
+    public static byte[] turnUpdate(long gameId, long playerId) {
+        return new Writer(TURN_UPDATE).i64(gameId).i64(playerId).finish();
+    }
+
+    /**
+     * @return The frame for CODES_REMAINING:gameId:count
+     */
+    public static byte[] codesRemaining(long gameId, int count) {
+        return new Writer(CODES_REMAINING).i64(gameId).varint(count).finish();
+    }
+
+    /**
+     * @return The frame for CHAT_MESSAGE:gameId:name:message, with the
+     *         message taken from buf[off, off + len), or null if they are
+     *         too long for one frame
+     */
+    public static byte[] chatMessage(long gameId, byte[] name, byte[] buf, int off, int len) {
+        if (12 + name.length + len > MAX_FRAME_LENGTH) {
+            return null;
+        }
+        return new Writer(CHAT_MESSAGE).i64(gameId).varint(name.length).bytes(name, 0, name.length)
+                .bytes(buf, off, len).finish();
+    }
+
+    /**
+     * Turns a server frame back into the version 1 message it stands for
+     *
+     * @param buf Buffer holding the frame body (opcode and payload)
+     * @param off Start of the body
+     * @param len Length of the body
+     * @return The text message, or null for TEXT_MORE or an unknown opcode;
+     *         the caller joins a long line's parts itself
+     */
+    public static String decodeServerFrame(byte[] buf, int off, int len) {
+        Reader r = new Reader(buf, off + 1, off + len);
+        switch (buf[off]) {
+            case CONNECTED:
+                return "CONNECTED:" + playerIdString(r.i64());
+            case GAME_CREATED:
+                return "GAME_CREATED:" + gameIdString(r.i64());
+            case GUESS_RESULT: {
+                String id = gameIdString(r.i64());
+                int number = r.u8();
+                int black = r.u8();
+                int white = r.u8();
+                return "GUESS_RESULT:" + id + ":" + r.utf8Rest() + ":" + number + ":" + black + ":" + white;
+            }
+            case TURN_UPDATE:
+                return "TURN_UPDATE:" + gameIdString(r.i64()) + ":" + playerIdString(r.i64());
+            case CODES_REMAINING:
+                return "CODES_REMAINING:" + gameIdString(r.i64()) + ":" + r.varint();
+            case CHAT_MESSAGE: {
+                String id = gameIdString(r.i64());
+                String name = r.utf8(r.varint());
+                return "CHAT_MESSAGE:" + id + ":" + name + ":" + r.utf8Rest();
+            }
+            case TEXT:
+                return r.utf8Rest();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Encodes a version 1 command sent by the client as a frame
+     *
+     * @param message The text command, without line terminator
+     * @return The frame
+     */
+    public static byte[] encodeClientMessage(String message) {
+        int colon = message.indexOf(':');
+        String command = colon < 0 ? message : message.substring(0, colon);
+        String data = colon < 0 ? "" : message.substring(colon + 1);
+        int next = data.indexOf(':');
+        try {
+            switch (command) {
+                case "CONNECT":
+                    return new Writer(CONNECT).utf8(data).finish();
+                case "GET_GAMES":
+                    return new Writer(GET_GAMES).finish();
+                case "CREATE_GAME": {
+                    int last = data.lastIndexOf(':');
+                    if (last >= 0) {
+                        int players = Integer.parseInt(data.substring(last + 1).trim());
+                        if (players >= 0 && players <= 255) {
+                            return new Writer(CREATE_GAME).u8(players).utf8(data.substring(0, last)).finish();
+                        }
+                    }
+                    break;
+                }
+                case "JOIN_GAME":
+                    if (gameId(data.trim()) >= 0) {
+                        return new Writer(JOIN_GAME).i64(gameId(data.trim())).finish();
+                    }
+                    break;
+                case "LEAVE_GAME":
+                    if (gameId(data.trim()) >= 0) {
+                        return new Writer(LEAVE_GAME).i64(gameId(data.trim())).finish();
+                    }
+                    break;
+                case "GUESS":
+                    if (next >= 0 && gameId(data.substring(0, next).trim()) >= 0) {
+                        int code = CodeSpace.STANDARD.encode(data.substring(next + 1).trim());
+                        if (code != CodeSpace.INVALID) {
+                            return new Writer(GUESS).i64(gameId(data.substring(0, next).trim()))
+                                    .varint(code).finish();
+                        }
+                    }
+                    break;
+                case "CHAT":
+                    if (next >= 0 && gameId(data.substring(0, next).trim()) >= 0) {
+                        return new Writer(CHAT).i64(gameId(data.substring(0, next).trim()))
+                                .utf8(data.substring(next + 1)).finish();
+                    }
+                    break;
+                case "DISCONNECT":
+                    return new Writer(DISCONNECT).finish();
+                default:
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            // Let the server report the error
+        }
+        return new Writer(TEXT).utf8(message).finish();
+    }
+
+    /**
+     * Wraps each line of an encoded text frame (one or more '\n'-terminated
+     * version 1 lines) in a frame of its own, or in several if it is longer
+     * than a frame
+     *
+     * @param text UTF-8 lines
+     * @return The frames, back to back
+     */
+    public static byte[] framesFromText(byte[] text) {
+        Writer out = new Writer();
+        int start = 0;
+        for (int i = 0; i < text.length; i++) {
+            if (text[i] == '\n') {
+                out.text(text, start, i - start);
+                start = i + 1;
+            }
+        }
+        if (start < text.length) {
+            out.text(text, start, text.length - start);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Builds frames in a growable buffer
+     */
+    public static class Writer {
+        private byte[] buf = new byte[64];
+        private int size = 0;
+        // Start of the frame being built, its length is filled in by finish()
+        private int frameStart = -1;
+
+        Writer() {
+        }
+
+        /**
+         * Starts a single frame with the given opcode
+         */
+        public Writer(byte opcode) {
+            begin(opcode);
+        }
+
+        private void begin(byte opcode) {
+            frameStart = size;
+            // Room for a three-byte length, moved up by finish() if shorter
+            size += 3;
+            u8(opcode);
+        }
+
+        public Writer u8(int value) {
+            ensure(1);
+            buf[size++] = (byte) value;
+            return this;
+        }
+
+        public Writer i64(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[size++] = (byte) (value >>> shift);
+            }
+            return this;
+        }
+
+        public Writer varint(int value) {
+            while ((value & ~0x7F) != 0) {
+                u8((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            return u8(value);
+        }
+
+        public Writer utf8(String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            return bytes(bytes, 0, bytes.length);
+        }
+
+        public Writer bytes(byte[] src, int off, int len) {
+            ensure(len);
+            System.arraycopy(src, off, buf, size, len);
+            size += len;
+            return this;
+        }
+
+        /**
+         * Ends the frame started by the constructor
+         *
+         * @return The complete frame
+         */
+        public byte[] finish() {
+            end();
+            return toByteArray();
+        }
+
+        void frame(byte opcode, byte[] src, int off, int len) {
+            begin(opcode);
+            bytes(src, off, len);
+            end();
+        }
+
+        /**
+         * Frames one version 1 line: TEXT_MORE frames as long as it does
+         * not fit, then TEXT
+         */
+        void text(byte[] src, int off, int len) {
+            int part = MAX_FRAME_LENGTH - 1;
+            while (len > part) {
+                frame(TEXT_MORE, src, off, part);
+                off += part;
+                len -= part;
+            }
+            frame(TEXT, src, off, len);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        private void end() {
+            int length = size - frameStart - 3;
+            if (length > MAX_FRAME_LENGTH) {
+                throw new IllegalArgumentException("frame too long: " + length);
+            }
+            int headerLength = length < 0x80 ? 1 : length < 0x4000 ? 2 : 3;
+            int shift = 3 - headerLength;
+            if (shift > 0) {
+                System.arraycopy(buf, frameStart + 3, buf, frameStart + headerLength, length);
+                size -= shift;
+            }
+            int pos = frameStart;
+            int value = length;
+            for (int i = 0; i < headerLength; i++) {
+                int b = value & 0x7F;
+                value >>>= 7;
+                buf[pos++] = (byte) (i < headerLength - 1 ? b | 0x80 : b);
+            }
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * Reads the fields of one frame body
+     */
+    public static class Reader {
+        private final byte[] buf;
+        private final int end;
+        private int pos;
+
+        public Reader(byte[] buf, int off, int end) {
+            this.buf = buf;
+            this.pos = off;
+            this.end = end;
+        }
+
+        public int u8() {
+            check(1);
+            return buf[pos++] & 0xFF;
+        }
+
+        public long i64() {
+            check(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buf[pos++] & 0xFF);
+            }
+            return value;
+        }
+
+        public int varint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = u8();
+                value |= (b & 0x7F) << shift;
+                if (b < 0x80) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("varint too long");
+        }
+
+        public String utf8(int length) {
+            check(length);
+            String text = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return text;
+        }
+
+        public String utf8Rest() {
+            return utf8(end - pos);
+        }
+
+        /**
+         * @return Offset of the next unread byte
+         */
+        public int position() {
+            return pos;
+        }
+
+        public int end() {
+            return end;
+        }
+
+        private void check(int length) {
+            if (length < 0 || pos + length > end) {
+                throw new IllegalArgumentException("truncated frame");
+            }
+        }
+    }
+}
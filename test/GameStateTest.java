@@ -51,6 +51,8 @@ public class GameStateTest {
         testComplexDuplicates();
         testAllSameColor();
         testEdgeCases();
+        testPackedScoring();
+        testFeedbackTable();
     }
 
     /**
@@ -351,6 +353,106 @@ public class GameStateTest {
         assertResult("Test: Additional edge cases", result, result[0], result[1]);
     }
 
+    /**
+     * Packed scoring must agree with the character comparison for every
+     * (secret, guess) pair on the standard board, and codes must survive an
+     * encode/decode round trip.
+     */
+    private static void testPackedScoring() {
+        System.out.println("Test: Packed scoring matches string scoring");
+
+        CodeSpace space = CodeSpace.STANDARD;
+        int mismatches = 0;
+        int badRoundTrips = 0;
+        for (int secret = 0; secret < space.size(); secret++) {
+            String secretText = space.decode(secret);
+            if (space.encode(secretText) != secret) {
+                badRoundTrips++;
+            }
+            for (int guess = 0; guess < space.size(); guess++) {
+                int[] expected = referenceScore(secretText, space.decode(guess));
+                int score = space.score(secret, guess);
+                if (CodeSpace.blacks(score) != expected[0] || CodeSpace.whites(score) != expected[1]) {
+                    mismatches++;
+                }
+            }
+        }
+        assertResult("Packed Scoring (mismatches, bad round trips)",
+                new int[]{mismatches, badRoundTrips}, 0, 0);
+
+        GameState currentState = new GameState("BBRR");
+        int score = currentState.evaluate(space.encode("RBBR"));
+        assertResult("Packed Scoring (BBRR vs RBBR)",
+                new int[]{CodeSpace.blacks(score), CodeSpace.whites(score)}, 2, 2);
+        assertResult("Packed Scoring (invalid code)",
+                new int[]{space.encode("BGRX"), space.encode("BGR")}, CodeSpace.INVALID, CodeSpace.INVALID);
+    }
+
+    /**
+     * The precomputed table must give the same scores as the packed scorer,
+     * including after a write/read round trip.
+     */
+    private static void testFeedbackTable() {
+        System.out.println("Test: Feedback table matches packed scoring");
+
+        CodeSpace space = CodeSpace.STANDARD;
+        FeedbackTable table = FeedbackTable.build(space);
+        FeedbackTable reloaded;
+        try {
+            java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+            table.write(bytes);
+            reloaded = FeedbackTable.read(space, new java.io.ByteArrayInputStream(bytes.toByteArray()));
+        } catch (java.io.IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        int mismatches = 0;
+        int reloadMismatches = 0;
+        for (int secret = 0; secret < space.size(); secret++) {
+            for (int guess = 0; guess < space.size(); guess++) {
+                int expected = space.score(secret, guess);
+                if (table.score(secret, guess) != expected) {
+                    mismatches++;
+                }
+                if (reloaded.score(secret, guess) != expected) {
+                    reloadMismatches++;
+                }
+            }
+        }
+        assertResult("Feedback Table (mismatches, reload mismatches)",
+                new int[]{mismatches, reloadMismatches}, 0, 0);
+    }
+
+    /**
+     * Straightforward two-pass scorer used as the reference for packed scoring
+     */
+    private static int[] referenceScore(String code, String guess) {
+        int black = 0;
+        int white = 0;
+        boolean[] codeMatched = new boolean[code.length()];
+        boolean[] guessMatched = new boolean[guess.length()];
+        for (int i = 0; i < guess.length(); i++) {
+            if (guess.charAt(i) == code.charAt(i)) {
+                black++;
+                codeMatched[i] = true;
+                guessMatched[i] = true;
+            }
+        }
+        for (int i = 0; i < guess.length(); i++) {
+            if (guessMatched[i]) {
+                continue;
+            }
+            for (int j = 0; j < code.length(); j++) {
+                if (!codeMatched[j] && guess.charAt(i) == code.charAt(j)) {
+                    white++;
+                    codeMatched[j] = true;
+                    break;
+                }
+            }
+        }
+        return new int[]{black, white};
+    }
+
     /**
      * Helper method to assert test results
      */
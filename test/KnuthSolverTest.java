@@ -0,0 +1,127 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * Unit Tests
+ * 
+ * This file contains unit tests for the KnuthSolver class.
+ * 
+ * To run tests: ./run-tests.sh
+ */
+
+public class KnuthSolverTest {
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) {
+        System.out.println("========================================");
+        System.out.println("   KnuthSolver Unit Tests");
+        System.out.println("========================================\n");
+
+        runAllTests();
+
+        System.out.println("\n========================================");
+        System.out.println("   Test Results");
+        System.out.println("========================================");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        System.out.println("Total Tests:  " + (testsPassed + testsFailed));
+        
+        if (testsFailed == 0) {
+            System.out.println("\n✓ All tests passed!");
+        } else {
+            System.out.println("\n✗ Some tests failed.");
+            System.exit(1);
+        }
+    }
+
+    private static void runAllTests() {
+        testFirstGuess();
+        testSolvesEverySecret();
+        testSmallerBoard();
+        testParallelMatchesSerial();
+    }
+
+    /**
+     * Knuth's opening for 4 pegs / 6 colors is "1122", which is BBGG here
+     */
+    private static void testFirstGuess() {
+        System.out.println("Test: Standard first guess");
+        KnuthSolver solver = new KnuthSolver(CodeSpace.STANDARD);
+        assertTrue("First guess is BBGG",
+                CodeSpace.STANDARD.decode(solver.firstGuess()).equals("BBGG"));
+    }
+
+    /**
+     * Every secret must be found in at most five guesses, and the last guess
+     * played must be the secret itself
+     */
+    private static void testSolvesEverySecret() {
+        System.out.println("Test: Every secret solved in at most five guesses");
+        CodeSpace space = CodeSpace.STANDARD;
+        KnuthSolver solver = new KnuthSolver(space);
+        int tooLong = 0;
+        int wrongEnding = 0;
+        long totalGuesses = 0;
+        for (int secret = 0; secret < space.size(); secret++) {
+            int[] guesses = solver.solve(secret).getGuesses();
+            if (guesses.length > 5) {
+                tooLong++;
+            }
+            if (guesses[guesses.length - 1] != secret) {
+                wrongEnding++;
+            }
+            totalGuesses += guesses.length;
+        }
+        assertTrue("No game longer than five guesses", tooLong == 0);
+        assertTrue("Every game ends on the secret", wrongEnding == 0);
+        // Knuth's strategy needs 5801 guesses over all 1296 secrets
+        assertTrue("Total guesses match Knuth (5801)", totalGuesses == 5801);
+    }
+
+    /**
+     * The solver works without a feedback table on a non-standard board
+     */
+    private static void testSmallerBoard() {
+        System.out.println("Test: Non-standard board (3 pegs, 4 colors)");
+        CodeSpace space = new CodeSpace(3, 4);
+        KnuthSolver solver = new KnuthSolver(space);
+        int wrongEnding = 0;
+        for (int secret = 0; secret < space.size(); secret++) {
+            int[] guesses = solver.solve(secret).getGuesses();
+            if (guesses[guesses.length - 1] != secret) {
+                wrongEnding++;
+            }
+        }
+        assertTrue("Every game ends on the secret", wrongEnding == 0);
+    }
+
+    /**
+     * Splitting guess selection across workers must not change the guesses
+     */
+    private static void testParallelMatchesSerial() {
+        System.out.println("Test: Parallel solver plays the same guesses");
+        CodeSpace space = CodeSpace.STANDARD;
+        KnuthSolver serial = new KnuthSolver(space);
+        int differences = 0;
+        try (ParallelKnuthSolver parallel = new ParallelKnuthSolver(space, 4)) {
+            for (int secret = 0; secret < space.size(); secret += 7) {
+                if (!java.util.Arrays.equals(serial.solve(secret).getGuesses(),
+                        parallel.solve(secret).getGuesses())) {
+                    differences++;
+                }
+            }
+        }
+        assertTrue("Same guesses as the serial solver", differences == 0);
+    }
+
+    /**
+     * Helper method to assert test results
+     */
+    private static void assertTrue(String testName, boolean condition) {
+        if (condition) {
+            System.out.println("  ✓ PASS: " + testName + "\n");
+            testsPassed++;
+        } else {
+            System.out.println("  ✗ FAIL: " + testName + "\n");
+            testsFailed++;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * Unit Tests
+ *
+ * This file contains unit tests for the server's counters and latency
+ * histograms (LatencyHistogram, ServerMetrics, InstrumentedLock).
+ *
+ * To run tests: ./run-tests.sh
+ */
+
+import java.util.List;
+
+public class MetricsTest {
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) {
+        System.out.println("========================================");
+        System.out.println("   Metrics Unit Tests");
+        System.out.println("========================================\n");
+
+        runAllTests();
+
+        System.out.println("\n========================================");
+        System.out.println("   Test Results");
+        System.out.println("========================================");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        System.out.println("Total Tests:  " + (testsPassed + testsFailed));
+
+        if (testsFailed == 0) {
+            System.out.println("\n✓ All tests passed!");
+        } else {
+            System.out.println("\n✗ Some tests failed.");
+            System.exit(1);
+        }
+    }
+
+    private static void runAllTests() {
+        testBuckets();
+        testPercentiles();
+        testConcurrentRecord();
+        testReport();
+        testInstrumentedLock();
+    }
+
+    /**
+     * Every value falls in a bucket whose top is within 1/16 above it
+     */
+    private static void testBuckets() {
+        System.out.println("Test: Histogram buckets");
+        boolean within = true;
+        int last = -1;
+        boolean ordered = true;
+        for (long v = 0; v < 1_000_000; v += 1 + v / 100) {
+            int bucket = LatencyHistogram.bucket(v);
+            long top = LatencyHistogram.highestInBucket(bucket);
+            within &= top >= v && top - v <= v / 16;
+            ordered &= bucket >= last;
+            last = bucket;
+        }
+        assertTrue("Bucket tops close above values", within);
+        assertTrue("Buckets grow with values", ordered);
+        assertTrue("Huge values in last bucket",
+                LatencyHistogram.bucket(Long.MAX_VALUE) == LatencyHistogram.bucket(1L << 50));
+    }
+
+    /**
+     * Percentiles of 1..10000 come back within the bucket precision
+     */
+    private static void testPercentiles() {
+        System.out.println("Test: Histogram percentiles");
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertTrue("Empty histogram reads 0", histogram.getPercentile(99) == 0);
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i);
+        }
+        long p50 = histogram.getPercentile(50);
+        long p99 = histogram.getPercentile(99);
+        assertTrue("Count and max", histogram.getCount() == 10_000 && histogram.getMax() == 10_000);
+        assertTrue("p50 near 5000", p50 >= 5000 && p50 <= 5000 + 5000 / 16);
+        assertTrue("p99 near 9900", p99 >= 9900 && p99 <= 10_000);
+        assertTrue("Mean", Math.abs(histogram.getMean() - 5000.5) < 0.01);
+    }
+
+    /**
+     * Threads recording at once lose nothing
+     */
+    private static void testConcurrentRecord() {
+        System.out.println("Test: Concurrent recording");
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    histogram.record(i & 1023);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        assertTrue("All values counted", histogram.getCount() == 400_000
+                && histogram.getPercentile(100) == 1023);
+    }
+
+    /**
+     * The report lists counters and only the commands that were seen
+     */
+    private static void testReport() {
+        System.out.println("Test: Metrics report");
+        ServerMetrics metrics = new ServerMetrics();
+        metrics.connectionOpened();
+        metrics.messageIn(10);
+        metrics.messageOut(20);
+        metrics.commandHandled(ProtocolCommand.GUESS, 5_000);
+        metrics.broadcast(3);
+        List<String> report = metrics.report();
+        assertTrue("Counters line", report.get(0).equals(
+                "connections=1 messagesIn=1 bytesIn=10 messagesOut=1 bytesOut=20"));
+        assertTrue("Seen commands only", report.size() == 3 && report.get(1).startsWith("GUESS us count=1")
+                && report.get(2).startsWith("fanOut count=1"));
+    }
+
+    /**
+     * One outermost hold is recorded once, under the method that took it,
+     * however often it was reentered
+     */
+    private static void testInstrumentedLock() {
+        System.out.println("Test: Instrumented lock");
+        InstrumentedLock lock = new InstrumentedLock("test");
+        lock.lock();
+        try {
+            lock.lock();
+            lock.unlock();
+        } finally {
+            lock.unlock();
+        }
+        assertTrue("One wait and one hold", lock.getWaits().getCount() == 1 && lock.getHolds().getCount() == 1
+                && !lock.isLocked());
+        boolean found = false;
+        for (String line : InstrumentedLock.report()) {
+            found |= line.startsWith("lock MetricsTest.testInstrumentedLock hold us count=1");
+        }
+        assertTrue("Owner method reported", found);
+    }
+
+    /**
+     * Helper method to assert test results
+     */
+    private static void assertTrue(String testName, boolean condition) {
+        if (condition) {
+            System.out.println("  ✓ PASS: " + testName + "\n");
+            testsPassed++;
+        } else {
+            System.out.println("  ✗ FAIL: " + testName + "\n");
+            testsFailed++;
+        }
+    }
+}
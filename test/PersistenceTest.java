@@ -0,0 +1,333 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * Unit Tests
+ *
+ * This file contains unit tests for keeping games across restarts
+ * (GameEventLog, LogCompactor, GameSnapshotter and recovery in
+ * GameLobbyManager).
+ *
+ * To run tests: ./run-tests.sh
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class PersistenceTest {
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) {
+        System.out.println("========================================");
+        System.out.println("   Persistence Unit Tests");
+        System.out.println("========================================\n");
+
+        try {
+            runAllTests();
+        } catch (IOException e) {
+            System.out.println("  ✗ FAIL: I/O error " + e + "\n");
+            testsFailed++;
+        }
+
+        System.out.println("\n========================================");
+        System.out.println("   Test Results");
+        System.out.println("========================================");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        System.out.println("Total Tests:  " + (testsPassed + testsFailed));
+
+        if (testsFailed == 0) {
+            System.out.println("\n✓ All tests passed!");
+        } else {
+            System.out.println("\n✗ Some tests failed.");
+            System.exit(1);
+        }
+    }
+
+    private static void runAllTests() throws IOException {
+        testLogRoundTrip();
+        testTornRecord();
+        testSegmentRoll();
+        testCompaction();
+        testRecoverGame();
+        testSnapshotRecovery();
+        testCandidateSetChecks();
+    }
+
+    /**
+     * Events come back in order with their fields
+     */
+    private static void testLogRoundTrip() throws IOException {
+        System.out.println("Test: Event log round trip");
+        Path dir = Files.createTempDirectory("events");
+        try (GameEventLog log = new GameEventLog(dir, 0)) {
+            log.append(GameEventLog.gameCreated(1, 2, "first game"));
+            log.append(GameEventLog.playerJoined(1, 7, 77, "ann"));
+            log.append(GameEventLog.guessScored(1, 7, 123, CodeSpace.packScore(2, 1)));
+        }
+        List<String> seen = new ArrayList<>();
+        int count = GameEventLog.replay(dir, (type, gameId, fields) -> {
+            switch (type) {
+                case GameEventLog.GAME_CREATED:
+                    seen.add("created " + gameId + " " + fields.u8() + " " + fields.utf8Rest());
+                    break;
+                case GameEventLog.PLAYER_JOINED:
+                    seen.add("joined " + fields.i64() + " " + fields.i64() + " " + fields.utf8Rest());
+                    break;
+                case GameEventLog.GUESS_SCORED:
+                    seen.add("guess " + fields.i64() + " " + fields.varint() + " " + fields.u8());
+                    break;
+                default:
+                    seen.add("other");
+            }
+        });
+        assertTrue("All events read", count == 3);
+        assertTrue("Fields intact", seen.toString().equals(
+                "[created 1 2 first game, joined 7 77 ann, guess 7 123 " + CodeSpace.packScore(2, 1) + "]"));
+        deleteAll(dir);
+    }
+
+    /**
+     * A record the OS only partly wrote fails its checksum; replay stops
+     * before it and the next writer overwrites it
+     */
+    private static void testTornRecord() throws IOException {
+        System.out.println("Test: Torn record");
+        Path dir = Files.createTempDirectory("events");
+        byte[] whole = GameEventLog.gameCreated(1, 2, "x");
+        try (GameEventLog log = new GameEventLog(dir, 0)) {
+            log.append(whole);
+            log.append(GameEventLog.playerJoined(1, 7, 77, "ann"));
+        }
+        Path segment = GameEventLog.segments(dir).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // Last byte of the second event's name
+            int torn = 2 * GameEventLog.RECORD_HEADER + whole.length + GameEventLog.playerJoined(1, 7, 77, "ann").length - 1;
+            channel.write(ByteBuffer.wrap(new byte[] {'x'}), torn);
+        }
+        int count = GameEventLog.replay(dir, (type, gameId, fields) -> { });
+        assertTrue("Stops before torn record", count == 1);
+
+        try (GameEventLog log = new GameEventLog(dir, 0)) {
+            log.append(GameEventLog.gameRemoved(1));
+        }
+        List<Integer> types = new ArrayList<>();
+        GameEventLog.replay(dir, (type, gameId, fields) -> types.add(type));
+        assertTrue("Torn record overwritten", types.toString().equals(
+                "[" + GameEventLog.GAME_CREATED + ", " + GameEventLog.GAME_REMOVED + "]"));
+        deleteAll(dir);
+    }
+
+    /**
+     * A full segment is sealed and writing goes on in a new one; replay
+     * reads them all in order
+     */
+    private static void testSegmentRoll() throws IOException {
+        System.out.println("Test: Segment roll");
+        Path dir = Files.createTempDirectory("events");
+        int count = 3000;
+        try (GameEventLog log = new GameEventLog(dir, 0, 0)) {
+            for (int i = 1; i <= count; i++) {
+                log.append(GameEventLog.gameCreated(i, 2, "a game with a fairly long name " + i));
+            }
+            assertTrue("Rolled to new segments", log.getActiveSequence() > 1);
+        }
+        long[] last = new long[1];
+        boolean[] ordered = {true};
+        int read = GameEventLog.replay(dir, (type, gameId, fields) -> {
+            ordered[0] &= gameId == last[0] + 1;
+            last[0] = gameId;
+        });
+        assertTrue("All events read in order", read == count && ordered[0]
+                && GameEventLog.segments(dir).size() > 1);
+        deleteAll(dir);
+    }
+
+    /**
+     * Games that are over in sealed segments are summarized and dropped;
+     * live games and the active segment are left alone
+     */
+    private static void testCompaction() throws IOException {
+        System.out.println("Test: Compaction");
+        Path dir = Files.createTempDirectory("events");
+        GameEventLog log = new GameEventLog(dir, 0, 0);
+        try {
+            log.append(GameEventLog.gameCreated(1, 1, "won"));
+            log.append(GameEventLog.gameCreated(2, 2, "live"));
+            log.append(GameEventLog.playerJoined(1, 1, 11, "ann"));
+            log.append(GameEventLog.guessScored(1, 1, 5, CodeSpace.packScore(4, 0)));
+            log.append(GameEventLog.gameFinished(1, true));
+            log.append(GameEventLog.gameCreated(3, 2, "left"));
+            log.append(GameEventLog.gameRemoved(3));
+            // Seal those segments
+            for (int i = 0; i < 3000; i++) {
+                log.append(GameEventLog.playerJoined(2, 9, 99, "spectator with a fairly long name"));
+            }
+            log.append(GameEventLog.gameCreated(4, 2, "active"));
+            log.append(GameEventLog.gameFinished(4, false));
+        } finally {
+            log.close();
+        }
+        assertTrue("Games over summarized", new LogCompactor(log, 0).compact() == 2);
+        List<String> stats = Files.readAllLines(dir.resolve(LogCompactor.STATS_FILE));
+        assertTrue("Stats lines", stats.size() == 3
+                && stats.contains("g00000001\twon\t1\t1\t1\twon")
+                && stats.contains("g00000003\tleft\t2\t0\t0\tabandoned"));
+
+        List<Long> games = new ArrayList<>();
+        int count = GameEventLog.replay(dir, (type, gameId, fields) -> {
+            if (!games.contains(gameId)) {
+                games.add(gameId);
+            }
+        });
+        assertTrue("Only live and active games left", games.toString().equals("[2, 4]") && count == 3003);
+        assertTrue("Compacted ids remembered", LogCompactor.highestGameId(dir) == 3);
+        deleteAll(dir);
+    }
+
+    /**
+     * A started game comes back with its guesses and turn, and its players'
+     * seats wait for them; an unstarted game comes back empty
+     */
+    private static void testRecoverGame() throws IOException {
+        System.out.println("Test: Recover games");
+        Path dir = Files.createTempDirectory("events");
+        int secret = CodeSpace.STANDARD.encode("BGRP");
+        int guess = CodeSpace.STANDARD.encode("BBGG");
+        try (GameEventLog log = new GameEventLog(dir, 0)) {
+            log.append(GameEventLog.gameCreated(1, 2, "running"));
+            log.append(GameEventLog.playerJoined(1, 1, 11, "ann"));
+            log.append(GameEventLog.playerJoined(1, 2, 22, "bob"));
+            log.append(GameEventLog.gameStarted(1, secret));
+            log.append(GameEventLog.guessScored(1, 1, guess, CodeSpace.STANDARD.score(secret, guess)));
+            log.append(GameEventLog.turnAdvanced(1, 1));
+            log.append(GameEventLog.gameCreated(2, 3, "waiting"));
+            log.append(GameEventLog.playerJoined(2, 3, 33, "cy"));
+            log.append(GameEventLog.gameCreated(3, 2, "gone"));
+            log.append(GameEventLog.gameRemoved(3));
+        }
+
+        GameLobbyManager lobby = new GameLobbyManager();
+        int games = lobby.recover(dir);
+        GameSession running = lobby.getSession("g00000001");
+        GameSession waiting = lobby.getSession("g00000002");
+        assertTrue("Live games recovered", games == 2 && lobby.getSession("g00000003") == null);
+        assertTrue("Turn and seats restored", running != null && running.isStarted()
+                && "p2".equals(running.getCurrentPlayer()) && running.isVacant("p1", 11)
+                && !running.isVacant("p1", 22)
+                && running.getRemainingCodes("p1") < CodeSpace.STANDARD.size());
+        assertTrue("Unstarted game emptied", waiting != null && waiting.getSeats().isEmpty());
+        assertTrue("New ids above recovered ones", lobby.newPlayerId().equals("p4"));
+        lobby.shutdown();
+        deleteAll(dir);
+    }
+
+    /**
+     * A restart loads the snapshot, skips each game's events up to its mark
+     * and replays the ones after it
+     */
+    private static void testSnapshotRecovery() throws IOException {
+        System.out.println("Test: Recover from snapshot");
+        Path dir = Files.createTempDirectory("events");
+        int secret = CodeSpace.STANDARD.encode("BGRP");
+        int guess = CodeSpace.STANDARD.encode("BBGG");
+        try (GameEventLog log = new GameEventLog(dir, 0)) {
+            log.append(GameEventLog.gameCreated(1, 2, "running"));
+            log.append(GameEventLog.playerJoined(1, 1, 11, "ann"));
+            log.append(GameEventLog.playerJoined(1, 2, 22, "bob"));
+            log.append(GameEventLog.gameStarted(1, secret));
+            log.append(GameEventLog.guessScored(1, 1, guess, CodeSpace.STANDARD.score(secret, guess)));
+            log.append(GameEventLog.turnAdvanced(1, 1));
+            log.append(GameEventLog.gameCreated(2, 3, "waiting"));
+        }
+
+        GameLobbyManager before = new GameLobbyManager();
+        before.startEventLog(dir, 0);
+        int remaining = before.getSession(1).getRemainingCodes("p1");
+        int written = new GameSnapshotter(before, before.getEventLog(), null, 0).snapshot();
+        // After the snapshot, so only the replay can bring it back
+        before.getEventLog().append(GameEventLog.turnAdvanced(1, 0));
+        before.shutdown();
+
+        GameSnapshotter.Snapshot snapshot = GameSnapshotter.load(dir);
+        assertTrue("Live games written", written == 2 && snapshot != null && snapshot.size() == 2);
+        GameLobbyManager after = new GameLobbyManager();
+        int games = after.recover(dir);
+        GameSession running = after.getSession(1);
+        assertTrue("Snapshot and tail applied once", games == 2 && running != null
+                && running.getSeats().equals(Arrays.asList("p1", "p2"))
+                && "p1".equals(running.getCurrentPlayer())
+                && running.getRemainingCodes("p1") == remaining
+                && running.getRemainingCodes("p2") == CodeSpace.STANDARD.size());
+        assertTrue("Resume tokens kept", running.isVacant("p2", 22) && !running.isVacant("p2", 11));
+        assertTrue("Ids kept", after.newPlayerId().equals("p3"));
+        after.shutdown();
+        deleteAll(dir);
+    }
+
+    /**
+     * A snapshot's candidate set is counted from its bits, whatever the
+     * file says
+     */
+    private static void testCandidateSetChecks() {
+        System.out.println("Test: Candidate sets read from a snapshot");
+        CodeSpace space = CodeSpace.STANDARD;
+        WireProtocol.Writer list = new WireProtocol.Writer((byte) 1).u8(1).varint(3).varint(5).varint(5).varint(7);
+        CandidateSet repeated = CandidateSet.readFrom(space, body(list.finish()));
+        assertTrue("Repeated code counted once", repeated.count() == 2 && repeated.contains(5) && repeated.contains(7));
+
+        WireProtocol.Writer words = new WireProtocol.Writer((byte) 1).u8(2);
+        int wordCount = (space.size() + 63) >>> 6;
+        for (int w = 0; w < wordCount; w++) {
+            words.i64(w == wordCount - 1 ? -1L : 0L);
+        }
+        CandidateSet masked = CandidateSet.readFrom(space, body(words.finish()));
+        assertTrue("Bits past the last code ignored", masked.count() == space.size() - (wordCount - 1) * 64
+                && masked.next(0) == (wordCount - 1) * 64);
+
+        boolean rejected = false;
+        try {
+            CandidateSet.readFrom(space, body(new WireProtocol.Writer((byte) 1).u8(1).varint(1)
+                    .varint(space.size()).finish()));
+        } catch (IllegalArgumentException e) {
+            rejected = true;
+        }
+        assertTrue("Code out of range rejected", rejected);
+    }
+
+    /**
+     * @return A reader over a frame's payload, after its opcode
+     */
+    private static WireProtocol.Reader body(byte[] frame) {
+        int start = (int) (WireProtocol.header(frame, 0, frame.length) >>> 32);
+        return new WireProtocol.Reader(frame, start + 1, frame.length);
+    }
+
+    private static void deleteAll(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * Helper method to assert test results
+     */
+    private static void assertTrue(String testName, boolean condition) {
+        if (condition) {
+            System.out.println("  ✓ PASS: " + testName + "\n");
+            testsPassed++;
+        } else {
+            System.out.println("  ✗ FAIL: " + testName + "\n");
+            testsFailed++;
+        }
+    }
+}
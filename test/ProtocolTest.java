@@ -0,0 +1,367 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * Unit Tests
+ *
+ * This file contains unit tests for the protocol parsing classes
+ * (LineReader, ProtocolCommand, WireProtocol) and the id classes
+ * (IdAllocator, ConcurrentLongMap), GameListSnapshot and EncodedMessage.
+ *
+ * To run tests: ./run-tests.sh
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ProtocolTest {
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) {
+        System.out.println("========================================");
+        System.out.println("   Protocol Unit Tests");
+        System.out.println("========================================\n");
+
+        runAllTests();
+
+        System.out.println("\n========================================");
+        System.out.println("   Test Results");
+        System.out.println("========================================");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        System.out.println("Total Tests:  " + (testsPassed + testsFailed));
+
+        if (testsFailed == 0) {
+            System.out.println("\n✓ All tests passed!");
+        } else {
+            System.out.println("\n✗ Some tests failed.");
+            System.exit(1);
+        }
+    }
+
+    private static void runAllTests() {
+        testCommandLookup();
+        testLineFraming();
+        testLinesAcrossReads();
+        testLongLine();
+        testEncodeBytes();
+        testServerFramesRoundTrip();
+        testClientFrames();
+        testLongTextFrames();
+        testIds();
+        testLongMap();
+        testGameListSnapshot();
+        testEncodedMessage();
+    }
+
+    /**
+     * Every command is found by its own name and nothing else
+     */
+    private static void testCommandLookup() {
+        System.out.println("Test: Command table lookup");
+        boolean allFound = true;
+        for (ProtocolCommand command : ProtocolCommand.values()) {
+            byte[] token = ("x" + command.name() + ":data").getBytes(StandardCharsets.US_ASCII);
+            allFound &= ProtocolCommand.lookup(token, 1, command.name().length()) == command;
+        }
+        assertTrue("Every command found", allFound);
+
+        String[] unknown = {"", "GUES", "GUESSES", "guess", "HELLO_", "XHAT", "LEAVE_GAMES"};
+        boolean noneFound = true;
+        for (String name : unknown) {
+            byte[] token = name.getBytes(StandardCharsets.US_ASCII);
+            noneFound &= ProtocolCommand.lookup(token, 0, token.length) == null;
+        }
+        assertTrue("Unknown tokens rejected", noneFound);
+    }
+
+    /**
+     * CRLF and LF endings, empty lines and a last line without a terminator
+     */
+    private static void testLineFraming() {
+        System.out.println("Test: Line framing");
+        String input = "HELLO:1\r\nCONNECT:Ann\n\nGUESS:g1:BGRP";
+        String[] expected = {"HELLO:1", "CONNECT:Ann", "", "GUESS:g1:BGRP"};
+        assertTrue("Lines split correctly",
+                matches(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), 8, expected));
+    }
+
+    /**
+     * Lines split across reads and longer than the starting buffer
+     */
+    private static void testLinesAcrossReads() {
+        System.out.println("Test: Lines across reads");
+        StringBuilder input = new StringBuilder();
+        String[] expected = new String[50];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = "CHAT:g1:" + "m".repeat(i * 3);
+            input.append(expected[i]).append('\n');
+        }
+        InputStream trickle = new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                // At most 5 bytes per read
+                return super.read(b, off, Math.min(len, 5));
+            }
+        };
+        assertTrue("Lines reassembled", matches(trickle, 4, expected));
+    }
+
+    /**
+     * A line over the limit is an error instead of unbounded growth
+     */
+    private static void testLongLine() {
+        System.out.println("Test: Line length limit");
+        byte[] input = ("CHAT:" + "x".repeat(100) + "\n").getBytes(StandardCharsets.US_ASCII);
+        LineReader reader = new LineReader(new ByteArrayInputStream(input), 16, 64);
+        boolean failed = false;
+        try {
+            reader.next();
+        } catch (IOException e) {
+            failed = true;
+        }
+        assertTrue("Long line rejected", failed);
+    }
+
+    /**
+     * Packing from bytes agrees with packing from a string
+     */
+    private static void testEncodeBytes() {
+        System.out.println("Test: Encode code from bytes");
+        byte[] buf = "GUESS:g1:BGRP".getBytes(StandardCharsets.US_ASCII);
+        CodeSpace space = CodeSpace.STANDARD;
+        assertTrue("Same as string encode", space.encode(buf, 9, 4) == space.encode("BGRP"));
+        assertTrue("Wrong length invalid", space.encode(buf, 9, 3) == CodeSpace.INVALID);
+        assertTrue("Bad color invalid", space.encode(buf, 6, 4) == CodeSpace.INVALID);
+    }
+
+    /**
+     * Every server message decodes back to the same text, whether it got an
+     * opcode of its own or went as TEXT
+     */
+    private static void testServerFramesRoundTrip() {
+        System.out.println("Test: Server frames round trip");
+        byte[] chat = "hi: there \u00e9".getBytes(StandardCharsets.UTF_8);
+        String[] messages = {
+                "CONNECTED:p1792285112035",
+                "GAME_CREATED:g0a1b2c3d",
+                "GUESS_RESULT:g8e3c1720:al:ice:3:2:1",
+                "TURN_UPDATE:g8e3c1720:p17",
+                "CODES_REMAINING:g8e3c1720:114",
+                "CHAT_MESSAGE:g8e3c1720:bob:hi: there \u00e9",
+                "GAME_SNAPSHOT:4:[]",
+                "CONNECTED:not-an-id",
+        };
+        byte[][] frames = {
+                WireProtocol.connected(1792285112035L),
+                WireProtocol.gameCreated(0x0a1b2c3dL),
+                WireProtocol.guessResult(0x8e3c1720L, "al:ice", 3, 2, 1),
+                WireProtocol.turnUpdate(0x8e3c1720L, 17),
+                WireProtocol.codesRemaining(0x8e3c1720L, 114),
+                WireProtocol.chatMessage(0x8e3c1720L, "bob".getBytes(StandardCharsets.UTF_8), chat, 0, chat.length),
+                WireProtocol.encodeServerMessage(messages[6]),
+                WireProtocol.encodeServerMessage(messages[7]),
+        };
+        boolean same = true;
+        for (int i = 0; i < messages.length; i++) {
+            byte[] frame = frames[i];
+            long header = WireProtocol.header(frame, 0, frame.length);
+            int start = (int) (header >>> 32);
+            same &= start + (int) header == frame.length
+                    && messages[i].equals(WireProtocol.decodeServerFrame(frame, start, (int) header));
+        }
+        assertTrue("Messages survive encoding", same);
+        assertTrue("Text sent as TEXT", frames[7][1] == WireProtocol.TEXT);
+
+        byte[] guess = WireProtocol.guessResult(0x8e3c1720L, "bob", 3, 2, 1);
+        assertTrue("Binary frame is smaller", guess.length < "GUESS_RESULT:g8e3c1720:bob:3:2:1\n".length());
+        byte[] longName = new byte[WireProtocol.MAX_FRAME_LENGTH];
+        assertTrue("Too long for a frame", WireProtocol.chatMessage(1, longName, chat, 0, chat.length) == null);
+    }
+
+    /**
+     * Hot commands get numeric fields, anything else falls back to TEXT
+     */
+    private static void testClientFrames() {
+        System.out.println("Test: Client frames");
+        byte[] guess = WireProtocol.encodeClientMessage("GUESS:g8e3c1720:BGRP");
+        WireProtocol.Reader r = new WireProtocol.Reader(guess, 2, guess.length);
+        assertTrue("GUESS opcode", guess[1] == WireProtocol.GUESS);
+        assertTrue("GUESS fields", r.i64() == 0x8e3c1720L && r.varint() == CodeSpace.STANDARD.encode("BGRP"));
+
+        byte[] bad = WireProtocol.encodeClientMessage("GUESS:g8e3c1720:XXXX");
+        assertTrue("Invalid guess sent as text", bad[1] == WireProtocol.TEXT);
+
+        byte[] frames = WireProtocol.framesFromText("A:1\nB:2\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue("One frame per line", frames.length == 2 * (1 + 1 + 3));
+    }
+
+    /**
+     * A line longer than a frame goes out as TEXT_MORE parts and a last
+     * TEXT frame whose payloads join back into the line
+     */
+    private static void testLongTextFrames() {
+        System.out.println("Test: Long lines split over frames");
+        StringBuilder list = new StringBuilder("GAME_LIST:[");
+        for (int i = 1; i <= 3000; i++) {
+            list.append(i > 1 ? "," : "").append("{\"id\":\"").append(IdAllocator.formatGameId(i))
+                    .append("\",\"name\":\"game ").append(i).append("\",\"players\":0,\"maxPlayers\":2}");
+        }
+        String line = list.append(']').toString();
+        byte[] text = (line + "\nEND\n").getBytes(StandardCharsets.UTF_8);
+        assertTrue("Line longer than a frame", text.length > 2 * WireProtocol.MAX_FRAME_LENGTH);
+        int expectedParts = (line.length() - 1) / (WireProtocol.MAX_FRAME_LENGTH - 1);
+
+        byte[][] encoded = { WireProtocol.framesFromText(text), WireProtocol.encodeServerMessage(line) };
+        for (byte[] frames : encoded) {
+            List<String> lines = new ArrayList<>();
+            StringBuilder joined = new StringBuilder();
+            int parts = 0;
+            for (int pos = 0; pos < frames.length; ) {
+                long header = WireProtocol.header(frames, pos, frames.length);
+                int body = pos + (int) (header >>> 32);
+                int length = (int) header;
+                joined.append(new String(frames, body + 1, length - 1, StandardCharsets.UTF_8));
+                if (frames[body] == WireProtocol.TEXT) {
+                    lines.add(joined.toString());
+                    joined.setLength(0);
+                } else if (frames[body] == WireProtocol.TEXT_MORE) {
+                    parts++;
+                }
+                pos = body + length;
+            }
+            assertTrue("Split into parts", parts == expectedParts && parts >= 2);
+            assertTrue("Parts join back", lines.get(0).equals(line)
+                    && lines.size() == (frames == encoded[0] ? 2 : 1));
+        }
+    }
+
+    /**
+     * Ids survive formatting and parsing, from strings and from bytes
+     */
+    private static void testIds() {
+        System.out.println("Test: Id allocation and parsing");
+        IdAllocator ids = new IdAllocator();
+        long first = ids.nextPlayerId();
+        assertTrue("Ids are unique", ids.nextPlayerId() != first);
+
+        long game = 0x8e3c1720L;
+        String text = IdAllocator.formatGameId(game);
+        byte[] bytes = ("JOIN_GAME:" + text).getBytes(StandardCharsets.US_ASCII);
+        assertTrue("Game id round trip", IdAllocator.parseGameId(text) == game
+                && IdAllocator.parseGameId(bytes, 10, bytes.length) == game
+                && IdAllocator.formatGameId(1).equals("g00000001"));
+        assertTrue("Player id round trip",
+                IdAllocator.parsePlayerId(IdAllocator.formatPlayerId(first)) == first);
+
+        String[] bad = {"", "g", "g1", "gxyz12345", "p", "p12a", "x00000001"};
+        boolean rejected = true;
+        for (String id : bad) {
+            rejected &= IdAllocator.parseGameId(id) == IdAllocator.INVALID
+                    && (id.startsWith("g") || IdAllocator.parsePlayerId(id) == IdAllocator.INVALID);
+        }
+        assertTrue("Malformed ids rejected", rejected);
+    }
+
+    /**
+     * Puts, removes and regrowth after many tombstones
+     */
+    private static void testLongMap() {
+        System.out.println("Test: Long-keyed map");
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+        boolean ok = true;
+        for (long round = 0; round < 20; round++) {
+            for (long k = 0; k < 500; k++) {
+                ok &= map.put(round * 1000 + k, "v" + k) == null;
+            }
+            for (long k = 0; k < 500; k++) {
+                ok &= ("v" + k).equals(map.remove(round * 1000 + k));
+            }
+        }
+        assertTrue("Put and remove", ok && map.isEmpty());
+
+        map.put(1, "a");
+        map.put(2, "b");
+        assertTrue("putIfAbsent keeps value", "a".equals(map.putIfAbsent(1, "c")) && "a".equals(map.get(1)));
+        assertTrue("Conditional remove", !map.remove(1, "c") && map.remove(1, "a"));
+        assertTrue("removeIf", map.removeIf("b"::equals) == 1 && map.size() == 0);
+    }
+
+    /**
+     * Fragments are joined into the list and the GAME_LIST line once
+     */
+    private static void testGameListSnapshot() {
+        System.out.println("Test: Game list snapshot");
+        byte[][] fragments = {
+                "{\"id\":\"g00000001\"}".getBytes(StandardCharsets.UTF_8),
+                "{\"id\":\"g00000002\"}".getBytes(StandardCharsets.UTF_8),
+        };
+        GameListSnapshot snapshot = new GameListSnapshot(7, new String[] {"g00000001", "g00000002"}, fragments);
+        assertTrue("List joined", snapshot.toJsonString().equals("[{\"id\":\"g00000001\"},{\"id\":\"g00000002\"}]"));
+        assertTrue("GAME_LIST line", new String(snapshot.getGameListLine(), StandardCharsets.UTF_8)
+                .equals("GAME_LIST:" + snapshot.toJsonString() + "\n"));
+        assertTrue("Fragments shared", snapshot.getFragment(1) == fragments[1] && snapshot.getVersion() == 7);
+
+        GameListSnapshot empty = new GameListSnapshot(0, new String[0], new byte[0][]);
+        assertTrue("Empty list", empty.toJsonString().equals("[]"));
+    }
+
+    private static boolean matches(InputStream in, int bufferSize, String[] expected) {
+        LineReader reader = new LineReader(in, bufferSize, 1024);
+        try {
+            for (String line : expected) {
+                if (!reader.next()) {
+                    return false;
+                }
+                String actual = new String(reader.buffer(), reader.lineStart(), reader.lineLength(),
+                        StandardCharsets.UTF_8);
+                if (!actual.equals(line)) {
+                    return false;
+                }
+            }
+            return !reader.next();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * A broadcast is encoded once per protocol and the same bytes are shared
+     */
+    private static void testEncodedMessage() {
+        System.out.println("Test: Encoded message");
+        String guess = "GUESS_RESULT:g8e3c1720:bob:3:2:1";
+        int[] built = new int[1];
+        EncodedMessage message = EncodedMessage.of(guess, () -> {
+            built[0]++;
+            return WireProtocol.guessResult(0x8e3c1720L, "bob", 3, 2, 1);
+        });
+        assertTrue("Line encoded", new String(message.lines(), StandardCharsets.UTF_8).equals(guess + "\n"));
+        assertTrue("Frame built from values", message.frames()[1] == WireProtocol.GUESS_RESULT);
+        assertTrue("Text only without one", Arrays.equals(EncodedMessage.of(guess).frames(),
+                WireProtocol.encodeServerMessage(guess)));
+        assertTrue("Encoded once", message.lines() == message.lines() && message.frames() == message.frames()
+                && built[0] == 1);
+
+        byte[] lines = "A:1\nB:2\n".getBytes(StandardCharsets.UTF_8);
+        EncodedMessage shared = EncodedMessage.ofLines(lines);
+        assertTrue("Lines kept", shared.lines() == lines
+                && Arrays.equals(shared.frames(), WireProtocol.framesFromText(lines)));
+    }
+
+    /**
+     * Helper method to assert test results
+     */
+    private static void assertTrue(String testName, boolean condition) {
+        if (condition) {
+            System.out.println("  ✓ PASS: " + testName + "\n");
+            testsPassed++;
+        } else {
+            System.out.println("  ✗ FAIL: " + testName + "\n");
+            testsFailed++;
+        }
+    }
+}
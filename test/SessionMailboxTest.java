@@ -0,0 +1,262 @@
+/* ECE422C Mastermind Multiplayer Lab
+ * Unit Tests
+ *
+ * This file contains unit tests for running game commands off the network
+ * threads (SessionMailbox, SessionScheduler) and for games changing at once
+ * while the lobby is published (LobbyPublisher).
+ *
+ * To run tests: ./run-tests.sh
+ */
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SessionMailboxTest {
+    private static int testsPassed = 0;
+    private static int testsFailed = 0;
+
+    public static void main(String[] args) {
+        System.out.println("========================================");
+        System.out.println("   Session Mailbox Unit Tests");
+        System.out.println("========================================\n");
+
+        runAllTests();
+
+        System.out.println("\n========================================");
+        System.out.println("   Test Results");
+        System.out.println("========================================");
+        System.out.println("Tests Passed: " + testsPassed);
+        System.out.println("Tests Failed: " + testsFailed);
+        System.out.println("Total Tests:  " + (testsPassed + testsFailed));
+
+        if (testsFailed == 0) {
+            System.out.println("\n✓ All tests passed!");
+        } else {
+            System.out.println("\n✗ Some tests failed.");
+            System.exit(1);
+        }
+    }
+
+    private static void runAllTests() {
+        testOrderOnPool();
+        testMoveKeepsOrder();
+        testRebalance();
+        testConcurrentListChanges();
+    }
+
+    /**
+     * Commands from one thread run in order and never two at once, even on
+     * a pool with many threads
+     */
+    private static void testOrderOnPool() {
+        System.out.println("Test: Order on a shared pool");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        SessionMailbox mailbox = new SessionMailbox(pool);
+        List<Integer> seen = new ArrayList<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        int count = 10_000;
+        for (int i = 0; i < count; i++) {
+            int n = i;
+            mailbox.execute(() -> {
+                if (running.incrementAndGet() != 1) {
+                    overlaps.incrementAndGet();
+                }
+                seen.add(n);
+                running.decrementAndGet();
+                if (n == count - 1) {
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue("All commands ran", await(done));
+        assertTrue("In order, one at a time", overlaps.get() == 0 && inOrder(seen, count));
+        pool.shutdownNow();
+    }
+
+    /**
+     * Moving a game between shards while commands are queued keeps them
+     * ordered
+     */
+    private static void testMoveKeepsOrder() {
+        System.out.println("Test: Move between shards");
+        SessionScheduler scheduler = new SessionScheduler(4, 0);
+        SessionMailbox mailbox = scheduler.register(7);
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        int count = 5_000;
+        for (int i = 0; i < count; i++) {
+            int n = i;
+            mailbox.execute(() -> {
+                seen.add(n);
+                if (n == count - 1) {
+                    done.countDown();
+                }
+            });
+            if (i % 500 == 0) {
+                scheduler.move(7, (i / 500) % 4);
+            }
+        }
+        assertTrue("All commands ran", await(done));
+        assertTrue("Still in order", inOrder(seen, count));
+
+        int games = 0;
+        for (SessionScheduler.ShardStats stats : scheduler.getStats()) {
+            games += stats.games;
+        }
+        scheduler.unregister(7);
+        int after = 0;
+        for (SessionScheduler.ShardStats stats : scheduler.getStats()) {
+            after += stats.games;
+        }
+        assertTrue("Game counted once", games == 1 && after == 0);
+        scheduler.shutdown();
+    }
+
+    /**
+     * The busier of two games leaves a shard that does all the work
+     */
+    private static void testRebalance() {
+        System.out.println("Test: Rebalance hot shard");
+        SessionScheduler scheduler = new SessionScheduler(2, 0);
+        // Two games on the same shard
+        long first = 1;
+        long second = 2;
+        while (scheduler.shardOf(first) != scheduler.shardOf(second)) {
+            second++;
+        }
+        SessionMailbox busy = scheduler.register(first);
+        SessionMailbox lighter = scheduler.register(second);
+        int hot = scheduler.shardOf(first);
+
+        CountDownLatch done = new CountDownLatch(2);
+        busy.execute(() -> spin(20, done));
+        lighter.execute(() -> spin(10, done));
+        await(done);
+        // The shard thread adds its busy time just after the command returns
+        sleep(50);
+        assertTrue("Busy game moved", scheduler.rebalance() && scheduler.shardOf(first) != hot);
+        assertTrue("Lighter game stays", scheduler.shardOf(second) == hot);
+        assertTrue("Nothing to do when idle", !scheduler.rebalance());
+        scheduler.shutdown();
+    }
+
+    /**
+     * Two games changing at once, each under its own lock, with a publish
+     * window of 0 that rebuilds the other game's list entry
+     */
+    private static void testConcurrentListChanges() {
+        System.out.println("Test: Concurrent list changes, window 0");
+        GameLobbyManager lobby = new GameLobbyManager(0);
+        CountDownLatch done = new CountDownLatch(2);
+        for (int game = 0; game < 2; game++) {
+            ClientHandler host = connect(lobby, "host" + game);
+            ClientHandler guest = connect(lobby, "guest" + game);
+            String gameId = lobby.createGame("game" + game, 4, host.getPlayerId());
+            lobby.joinGame(gameId, host.getPlayerId());
+            Thread changer = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    lobby.joinGame(gameId, guest.getPlayerId());
+                    lobby.leaveGame(guest.getPlayerId(), gameId);
+                }
+                done.countDown();
+            });
+            changer.setDaemon(true);
+            changer.start();
+        }
+        boolean finished = await(done);
+        assertTrue("No deadlock", finished);
+        if (!finished) {
+            // The stuck threads still hold game locks
+            return;
+        }
+        sleep(50);
+        assertTrue("Both games listed", lobby.getGameListSnapshot().size() == 2);
+        lobby.shutdown();
+    }
+
+    /**
+     * A connected player whose messages are read and discarded
+     */
+    private static ClientHandler connect(GameLobbyManager lobby, String name) {
+        ClientHandler[] handler = new ClientHandler[1];
+        handler[0] = new ClientHandler(lobby, new ClientTransport() {
+            private final byte[][] batch = new byte[64][];
+
+            @Override
+            public synchronized void outboundReady() {
+                while (handler[0].drainOutbound(batch) > 0) {
+                    // Discarded
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public void abort() {
+            }
+        });
+        byte[] line = ("CONNECT:" + name).getBytes(StandardCharsets.UTF_8);
+        handler[0].handleLine(line, 0, line.length);
+        return handler[0];
+    }
+
+    private static void spin(long millis, CountDownLatch done) {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+        done.countDown();
+    }
+
+    private static boolean inOrder(List<Integer> seen, int count) {
+        if (seen.size() != count) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (seen.get(i) != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Helper method to assert test results
+     */
+    private static void assertTrue(String testName, boolean condition) {
+        if (condition) {
+            System.out.println("  ✓ PASS: " + testName + "\n");
+            testsPassed++;
+        } else {
+            System.out.println("  ✗ FAIL: " + testName + "\n");
+            testsFailed++;
+        }
+    }
+}